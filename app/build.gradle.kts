@@ -29,6 +29,20 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        unitTests.isIncludeAndroidResources = true
+    }
+}
+
+// Benchmarks da camada DAO (ignorados por omissão). Exemplo:
+// ./gradlew testDebugUnitTest --tests "*BenchmarkDAOTest" -Pquickbudget.benchmark.linhas=10000,100000,1000000
+tasks.withType<Test>().configureEach {
+    systemProperty("quickbudget.benchmark.linhas", project.findProperty("quickbudget.benchmark.linhas") ?: "")
+    systemProperty(
+        "quickbudget.benchmark.saida",
+        project.findProperty("quickbudget.benchmark.saida")
+            ?: layout.buildDirectory.file("benchmarks/dao.json").get().asFile.path
+    )
 }
 
 dependencies {
@@ -42,7 +56,10 @@ dependencies {
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
+    implementation(libs.work.runtime)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.test.core)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
@@ -0,0 +1,257 @@
+package com.example.quickbudget;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes às migrações do esquema definidas no DBHelper.
+ * Cada teste parte de uma base de dados em memória com o esquema da versão 1.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DBHelperMigracoesTest {
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        DBHelper.criarEsquemaInicial(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void cadaPassoAplicaSeIsoladamente() {
+        for (int versao = 2; versao <= DBHelper.DATABASE_VERSION; versao++) {
+            DBHelper.aplicarMigracoes(db, versao - 1, versao);
+        }
+    }
+
+    @Test
+    public void migracaoPreservaDados() {
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Café', 'Alimentação', 1.5, 'Nenhuma', 1700000000000)");
+        db.execSQL("INSERT INTO budget (start_of_week, valor) VALUES (1699830000000, 100.0)");
+
+        DBHelper.aplicarMigracoes(db, 1, DBHelper.DATABASE_VERSION);
+
+        assertEquals(1, contar("SELECT COUNT(*) FROM despesas"));
+        assertEquals(1, contar("SELECT COUNT(*) FROM budget"));
+    }
+
+    @Test
+    public void v2CriaIndicesNasColunasConsultadas() {
+        DBHelper.aplicarMigracoes(db, 1, 2);
+
+        assertTrue(existeIndice(DBHelper.INDEX_DESPESAS_TIMESTAMP));
+        assertTrue(existeIndice(DBHelper.INDEX_DESPESAS_CATEGORIA_TIMESTAMP));
+        assertTrue(existeIndice(DBHelper.INDEX_DESPESAS_RECORRENCIA));
+    }
+
+    @Test
+    public void v3PreencheTotaisSemanaisComDespesasExistentes() {
+        long instante = 1700000000000L;
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Café', 'Alimentação', 1.5, 'Nenhuma', " + instante + ")");
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Pão', 'Alimentação', 2.0, 'Nenhuma', " + (instante + 1000) + ")");
+
+        DBHelper.aplicarMigracoes(db, 1, 3);
+
+        long semana = DateUtils.getWeekStartMillis(instante);
+        try (Cursor c = db.rawQuery("SELECT total, quantidade FROM weekly_category_totals " +
+                "WHERE week_start = ? AND categoria = 'Alimentação'", new String[]{String.valueOf(semana)})) {
+            assertTrue(c.moveToFirst());
+            assertEquals(3.5, c.getDouble(0), 0.0001);
+            assertEquals(2, c.getInt(1));
+        }
+    }
+
+    @Test
+    public void v4AgrupaCopiasRecorrentesNumSoModelo() {
+        long semana = DateUtils.getWeekStartMillis(1700000000000L);
+        long semanaSeguinte = DateUtils.getNextWeekStartMillis(semana);
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Ginásio', 'Saúde', 10.0, 'Semanal', " + semana + ")");
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Ginásio', 'Saúde', 10.0, 'Semanal', " + semanaSeguinte + ")");
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Café', 'Alimentação', 1.5, 'Nenhuma', " + semana + ")");
+
+        DBHelper.aplicarMigracoes(db, 1, 4);
+
+        assertTrue(existeIndice(DBHelper.INDEX_RECORRENCIAS_PROXIMA));
+        try (Cursor c = db.rawQuery("SELECT despesa_id, next_due FROM recurrence_schedule", null)) {
+            assertEquals(1, c.getCount());
+            assertTrue(c.moveToFirst());
+            assertEquals(1, c.getInt(0));
+            assertEquals(DateUtils.getNextWeekStartMillis(semanaSeguinte), c.getLong(1));
+        }
+    }
+
+    @Test
+    public void v5PassaCategoriasParaTabelaPropria() {
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Café', 'Alimentação', 1.5, 'Nenhuma', 1700000000000)");
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Prenda', 'Presentes', 20.0, 'Nenhuma', 1700000000000)");
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Sem categoria', NULL, 3.0, 'Nenhuma', 1700000000000)");
+
+        DBHelper.aplicarMigracoes(db, 1, 5);
+
+        Categorias categorias = Categorias.carregar(db);
+        assertEquals(DBHelper.NOMES_CATEGORIAS_INICIAIS.length + 1, contar("SELECT COUNT(*) FROM categorias"));
+        int alimentacao = categorias.idDe("Alimentação");
+        int presentes = categorias.idDe("Presentes");
+        int outro = categorias.idDe(Categorias.CATEGORIA_OMISSAO);
+        assertEquals(DBHelper.COR_CATEGORIA_OMISSAO, categorias.cor(presentes));
+
+        assertEquals(alimentacao, contar("SELECT categoria_id FROM despesas WHERE descricao = 'Café'"));
+        assertEquals(presentes, contar("SELECT categoria_id FROM despesas WHERE descricao = 'Prenda'"));
+        assertEquals(outro, contar("SELECT categoria_id FROM despesas WHERE descricao = 'Sem categoria'"));
+        assertEquals(3, contar("SELECT COUNT(*) FROM weekly_category_totals"));
+        assertTrue(existeIndice(DBHelper.INDEX_DESPESAS_CATEGORIA_TIMESTAMP));
+    }
+
+    @Test
+    public void v6ConverteValoresParaCentimos() {
+        long instante = 1700000000000L;
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Café', 'Alimentação', 1.1, 'Nenhuma', " + instante + ")");
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Pão', 'Alimentação', 2.2, 'Nenhuma', " + instante + ")");
+        db.execSQL("INSERT INTO budget (start_of_week, valor) VALUES (1699830000000, 100.5)");
+
+        DBHelper.aplicarMigracoes(db, 1, 6);
+
+        assertEquals(110, contar("SELECT valor_cents FROM despesas WHERE descricao = 'Café'"));
+        assertEquals(10050, contar("SELECT valor_cents FROM budget"));
+        assertEquals(330, contar("SELECT total_cents FROM weekly_category_totals"));
+    }
+
+    @Test
+    public void v7IndexaDescricoesEAcompanhaAlteracoes() {
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Café da manhã', 'Alimentação', 1.1, 'Nenhuma', 1700000000000)");
+
+        DBHelper.aplicarMigracoes(db, 1, 7);
+        assertEquals(1, contarPesquisa("cafe manh"));
+
+        db.execSQL("INSERT INTO despesas (descricao, categoria_id, valor_cents, recorrencia, timestamp) " +
+                "VALUES ('Cafetaria', 1, 250, 'Nenhuma', 1700000000001)");
+        assertEquals(2, contarPesquisa("caf"));
+
+        db.execSQL("UPDATE despesas SET descricao = 'Jantar' WHERE descricao = 'Cafetaria'");
+        assertEquals(1, contarPesquisa("caf"));
+        assertEquals(1, contarPesquisa("jan"));
+
+        db.execSQL("DELETE FROM despesas WHERE descricao = 'Jantar'");
+        assertEquals(0, contarPesquisa("jan"));
+    }
+
+    @Test
+    public void v8AtribuiUidsERegistaAlteracoes() {
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Café', 'Alimentação', 1.1, 'Nenhuma', 1700000000000)");
+        db.execSQL("INSERT INTO budget (start_of_week, valor) VALUES (1699830000000, 50)");
+
+        DBHelper.aplicarMigracoes(db, 1, 8);
+        assertEquals(0, contar("SELECT COUNT(*) FROM despesas WHERE uid IS NULL"));
+        assertEquals(2, contar("SELECT COUNT(*) FROM change_log")); // dados existentes ficam por enviar
+
+        db.execSQL("DELETE FROM change_log");
+        db.execSQL("INSERT INTO despesas (descricao, categoria_id, valor_cents, recorrencia, timestamp) " +
+                "VALUES ('Jantar', 1, 900, 'Nenhuma', 1700000000001)");
+        db.execSQL("UPDATE despesas SET valor_cents = 950 WHERE descricao = 'Jantar'");
+        assertEquals(0, contar("SELECT COUNT(*) FROM despesas WHERE uid IS NULL"));
+        assertEquals(1, contar("SELECT COUNT(*) FROM change_log WHERE apagado = 0"));
+
+        db.execSQL("DELETE FROM despesas WHERE descricao = 'Jantar'");
+        assertEquals(1, contar("SELECT COUNT(*) FROM change_log WHERE apagado = 1"));
+
+        // Alterações aplicadas a partir do remoto não são registadas
+        db.execSQL("INSERT INTO sync_state (chave) VALUES ('" + DBHelper.SYNC_A_APLICAR_REMOTO + "')");
+        db.execSQL("UPDATE despesas SET valor_cents = 120 WHERE descricao = 'Café'");
+        assertEquals(1, contar("SELECT COUNT(*) FROM change_log"));
+    }
+
+    @Test
+    public void v9ImpedeExtratosRepetidosMasNaoDespesasManuais() {
+        DBHelper.aplicarMigracoes(db, 1, 9);
+        assertTrue(existeIndice(DBHelper.INDEX_DESPESAS_HASH));
+
+        String manual = "INSERT INTO despesas (descricao, categoria_id, valor_cents, recorrencia, timestamp) " +
+                "VALUES ('Café', 1, 110, 'Nenhuma', 1700000000000)";
+        db.execSQL(manual);
+        db.execSQL(manual); // sem hash: podem repetir-se
+        String importada = "INSERT OR IGNORE INTO despesas (descricao, categoria_id, valor_cents, recorrencia, " +
+                "timestamp, hash_conteudo) VALUES ('Café', 1, 110, 'Nenhuma', 1700000000000, 'abc')";
+        db.execSQL(importada);
+        db.execSQL(importada);
+        assertEquals(3, contar("SELECT COUNT(*) FROM despesas"));
+    }
+
+    @Test
+    public void v10IndexaSemanasSemRegistarAlteracoes() {
+        long instante = 1700000000000L;
+        long semana = DateUtils.getWeekStartMillis(instante);
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Café', 'Alimentação', 1.1, 'Nenhuma', " + instante + ")");
+        db.execSQL("INSERT INTO despesas (descricao, categoria, valor, recorrencia, timestamp) " +
+                "VALUES ('Pão', 'Alimentação', 2.2, 'Nenhuma', " + (instante + 1000) + ")");
+        db.execSQL("INSERT INTO budget (start_of_week, valor) VALUES (" + semana + ", 50)");
+
+        DBHelper.aplicarMigracoes(db, 1, 9);
+        db.execSQL("DELETE FROM change_log");
+        DBHelper.aplicarMigracoes(db, 9, 10);
+
+        int indice = DateUtils.semanaDe(instante);
+        assertEquals(DateUtils.diaDe(instante), contar("SELECT day_index FROM despesas WHERE descricao = 'Café'"));
+        assertEquals(0, contar("SELECT COUNT(*) FROM despesas WHERE week_index != " + indice));
+        assertEquals(330, contar("SELECT total_cents FROM weekly_category_totals WHERE week_index = " + indice));
+        assertEquals(5000, contar("SELECT valor_cents FROM budget WHERE week_index = " + indice));
+        assertEquals(0, contar("SELECT COUNT(*) FROM change_log")); // o preenchimento não é enviado
+        assertTrue(existeIndice(DBHelper.INDEX_DESPESAS_SEMANA));
+
+        // Alterações a budgets continuam a ser registadas pela chave start_of_week
+        db.execSQL("UPDATE budget SET valor_cents = 6000 WHERE week_index = " + indice);
+        assertEquals(semana, contar("SELECT CAST(chave AS INTEGER) FROM change_log"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void versaoDesconhecidaFalha() {
+        DBHelper.aplicarMigracoes(db, 1, DBHelper.DATABASE_VERSION + 1);
+    }
+
+    private boolean existeIndice(String nome) {
+        return contar("SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = '" + nome + "'") == 1;
+    }
+
+    private long contarPesquisa(String texto) {
+        try (Cursor c = db.rawQuery("SELECT COUNT(*) FROM despesas_fts WHERE despesas_fts MATCH ?",
+                new String[]{DespesaDAO.expressaoPesquisa(texto)})) {
+            c.moveToFirst();
+            return c.getLong(0);
+        }
+    }
+
+    private long contar(String sql) {
+        try (Cursor c = db.rawQuery(sql, null)) {
+            c.moveToFirst();
+            return c.getLong(0);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import androidx.fragment.app.Fragment;
  * Fragment responsável por adicionar novas despesas ao sistema.
  * Permite inserir descrição, valor, categoria e tipo de recorrência,
  * validando os dados antes de gravar na base de dados local (SQLite).
+ * A gravação usa o registo rápido do repositório: o formulário é confirmado sem
+ * esperar pela base de dados.
  */
 public class AddDespesaFragment extends Fragment {
 
@@ -93,9 +95,9 @@ public class AddDespesaFragment extends Fragment {
             }
 
             // Converte valor para número
-            double valor;
+            long valor;
             try {
-                valor = Double.parseDouble(valorStr.replace(",", "."));
+                valor = Dinheiro.parse(valorStr);
             } catch (NumberFormatException e) {
                 editValor.setError("Valor inválido");
                 return;
@@ -124,23 +126,35 @@ public class AddDespesaFragment extends Fragment {
                     recorrencia
             );
 
-            // Insere a despesa na base de dados através do DAO
-            DespesaDAO dao = new DespesaDAO(requireContext());
-            long idInserido = dao.inserir(nova);
-            dao.fechar();
-
-            // Mostra o resultado da operação
-            if (idInserido != -1) {
-                Toast.makeText(requireContext(), "Despesa guardada com sucesso!", Toast.LENGTH_SHORT).show();
-
-                // Limpa o formulário após guardar
-                editDescricao.setText("");
-                editValor.setText("");
-                spinnerCategoria.setSelection(0);
-                spinnerRecorrencia.setSelection(0);
-            } else {
-                Toast.makeText(requireContext(), "Erro ao guardar despesa!", Toast.LENGTH_SHORT).show();
+            // Registo rápido: a despesa fica no diário e segue para a base de dados em segundo plano
+            QuickBudgetRepository repository = QuickBudgetRepository.getInstance(requireContext());
+            if (repository.registarRapido(nova)) {
+                despesaGuardada();
+                return;
             }
+
+            // Sem diário (ex: erro ao escrever o ficheiro): insere e espera pela base de dados
+            buttonGuardar.setEnabled(false);
+            repository.inserir(nova)
+                    .observe(getViewLifecycleOwner(), idInserido -> {
+                        buttonGuardar.setEnabled(true);
+
+                        // Mostra o resultado da operação
+                        if (idInserido != null && idInserido != -1) {
+                            despesaGuardada();
+                        } else {
+                            Toast.makeText(requireContext(), "Erro ao guardar despesa!", Toast.LENGTH_SHORT).show();
+                        }
+                    });
         });
     }
+
+    // Confirma o registo e limpa o formulário
+    private void despesaGuardada() {
+        Toast.makeText(requireContext(), "Despesa guardada com sucesso!", Toast.LENGTH_SHORT).show();
+        editDescricao.setText("");
+        editValor.setText("");
+        spinnerCategoria.setSelection(0);
+        spinnerRecorrencia.setSelection(0);
+    }
 }
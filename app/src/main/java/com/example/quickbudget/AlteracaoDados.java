@@ -0,0 +1,70 @@
+package com.example.quickbudget;
+
+/**
+ * AlteracaoDados
+ * ---------------
+ * Evento publicado depois de cada alteração confirmada (commit) às despesas.
+ * Uma alteração individual leva a linha antiga e/ou a nova, para que quem mantém
+ * totais em memória os possa ajustar sem voltar a ler a base de dados.
+ * Uma alteração em lote só indica a tabela e o intervalo de datas afetado:
+ * quem mostra dados desse intervalo deve recarregá-los.
+ *
+ * As despesas do evento são cópias e podem ser lidas a partir de qualquer thread.
+ */
+public final class AlteracaoDados {
+
+    public enum Tipo { INSERCAO, ATUALIZACAO, ELIMINACAO, LOTE }
+
+    // Recebe as alterações (na thread principal, quando registado no repositório)
+    public interface Observador {
+        void onAlteracao(AlteracaoDados alteracao);
+    }
+
+    public final String tabela;
+    public final Tipo tipo;
+    public final Despesa antiga; // null em INSERCAO e LOTE
+    public final Despesa nova;   // null em ELIMINACAO e LOTE
+    public final long inicio;    // intervalo de timestamps afetado [inicio, fim]
+    public final long fim;
+
+    private AlteracaoDados(String tabela, Tipo tipo, Despesa antiga, Despesa nova, long inicio, long fim) {
+        this.tabela = tabela;
+        this.tipo = tipo;
+        this.antiga = antiga;
+        this.nova = nova;
+        this.inicio = inicio;
+        this.fim = fim;
+    }
+
+    static AlteracaoDados insercao(Despesa nova) {
+        return new AlteracaoDados(DBHelper.TABLE_DESPESAS, Tipo.INSERCAO, null, nova,
+                nova.getTimestamp(), nova.getTimestamp());
+    }
+
+    static AlteracaoDados atualizacao(Despesa antiga, Despesa nova) {
+        return new AlteracaoDados(DBHelper.TABLE_DESPESAS, Tipo.ATUALIZACAO, antiga, nova,
+                Math.min(antiga.getTimestamp(), nova.getTimestamp()),
+                Math.max(antiga.getTimestamp(), nova.getTimestamp()));
+    }
+
+    static AlteracaoDados eliminacao(Despesa antiga) {
+        return new AlteracaoDados(DBHelper.TABLE_DESPESAS, Tipo.ELIMINACAO, antiga, null,
+                antiga.getTimestamp(), antiga.getTimestamp());
+    }
+
+    static AlteracaoDados lote(String tabela, long inicio, long fim) {
+        return new AlteracaoDados(tabela, Tipo.LOTE, null, null, inicio, fim);
+    }
+
+    /**
+     * Indica se a alteração pode mudar dados da tabela indicada no intervalo [inicio, fim].
+     */
+    public boolean afeta(String tabela, long inicio, long fim) {
+        return this.tabela.equals(tabela) && this.inicio <= fim && this.fim >= inicio;
+    }
+
+    // Indica se a despesa (antiga ou nova) tem timestamp no intervalo [inicio, fim]
+    public static boolean dentro(Despesa d, long inicio, long fim) {
+        return d != null && d.getTimestamp() >= inicio && d.getTimestamp() <= fim;
+    }
+}
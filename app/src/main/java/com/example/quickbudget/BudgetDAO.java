@@ -4,98 +4,198 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * BudgetDAO
  * ----------
  * Classe responsável por gerir as operações relacionadas com o orçamento semanal.
  * Permite guardar, ler e recuperar o valor do orçamento da base de dados local (SQLite),
- * assegurando que cada semana tem o seu próprio registo.
+ * assegurando que cada semana tem o seu próprio registo (chave: índice da semana, ver DateUtils).
+ * Os valores são em cêntimos (ver Dinheiro).
+ * As leituras passam pelo cache partilhado {@link CacheBudgets}: uma semana (ou um intervalo
+ * de semanas) é lida da base de dados uma vez e as escritas atualizam o cache.
+ * As alterações ficam registadas em CHANGE_LOG (por triggers) para a sincronização.
  */
 public class BudgetDAO {
+    private final DatabaseManager dbManager;
     private final SQLiteDatabase db;
+    private final CacheBudgets cache; // partilhado por todos os BudgetDAO (ver CacheBudgets)
+    private boolean fechado = false;
+
+    private static final String SQL_GUARDAR =
+            "INSERT OR REPLACE INTO " + DBHelper.TABLE_BUDGET + " (" + DBHelper.COLUMN_BUDGET_SEMANA + ", " +
+                    DBHelper.COLUMN_WEEK_START + ", " + DBHelper.COLUMN_BUDGET_CENTIMOS + ") VALUES (?, ?, ?)";
 
-    // Abre ligação à base de dados
+    // Orçamentos de um intervalo de semanas, mais o último definido antes do intervalo
+    private static final String SQL_CARREGAR_INTERVALO =
+            "SELECT " + DBHelper.COLUMN_BUDGET_SEMANA + ", " + DBHelper.COLUMN_BUDGET_CENTIMOS +
+                    " FROM " + DBHelper.TABLE_BUDGET +
+                    " WHERE " + DBHelper.COLUMN_BUDGET_SEMANA + " BETWEEN ? AND ?" +
+                    " UNION ALL SELECT * FROM (" +
+                    "SELECT " + DBHelper.COLUMN_BUDGET_SEMANA + ", " + DBHelper.COLUMN_BUDGET_CENTIMOS +
+                    " FROM " + DBHelper.TABLE_BUDGET +
+                    " WHERE " + DBHelper.COLUMN_BUDGET_SEMANA + " < ?" +
+                    " ORDER BY " + DBHelper.COLUMN_BUDGET_SEMANA + " DESC LIMIT 1)";
+
+    // Obtém uma referência à ligação partilhada (e ao cache de orçamentos)
     public BudgetDAO(Context ctx) {
-        DBHelper helper = new DBHelper(ctx);
-        db = helper.getWritableDatabase();
+        dbManager = DatabaseManager.getInstance(ctx);
+        db = dbManager.abrir();
+        cache = dbManager.getCacheBudgets();
     }
 
     // Guarda ou substitui o orçamento da semana atual
-    public void setBudget(double valor, long ignoredStartOfWeek) {
-        long startOfWeek = DateUtils.getWeekStartMillis(); // início real da semana
+    public void setBudget(long valor, long ignoredStartOfWeek) {
+        guardar(DateUtils.semanaAtual(), valor); // semana real
+    }
 
+    // Guarda ou substitui o orçamento de uma semana (índice, ver DateUtils)
+    private void guardar(int semana, long valor) {
+        long t0 = MetricasDAO.inicio();
         ContentValues values = new ContentValues();
-        values.put(DBHelper.COLUMN_WEEK_START, startOfWeek);
-        values.put(DBHelper.COLUMN_BUDGET_VALUE, valor);
+        values.put(DBHelper.COLUMN_BUDGET_SEMANA, semana);
+        values.put(DBHelper.COLUMN_WEEK_START, DateUtils.inicioSemana(semana));
+        values.put(DBHelper.COLUMN_BUDGET_CENTIMOS, valor);
 
         // Substitui caso já exista registo para essa semana
-        db.insertWithOnConflict(DBHelper.TABLE_BUDGET, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        if (db.insertWithOnConflict(DBHelper.TABLE_BUDGET, null, values, SQLiteDatabase.CONFLICT_REPLACE) != -1) {
+            cache.guardar(semana, valor);
+        }
+        MetricasDAO.registar("BudgetDAO.setBudget", t0, 1, SQL_GUARDAR, values);
     }
 
-    // Obtém o orçamento da semana atual ou cria se ainda não existir
-    public double getOrCreateBudgetAtual(long startOfWeek) {
-        Double existente = getBudgetValor(startOfWeek);
-        if (existente != null) return existente;
-
-        // Se não existir, tenta recuperar o da semana anterior
-        Double anterior = getUltimoBudgetAntes(startOfWeek);
-        if (anterior != null) {
-            setBudget(anterior, startOfWeek);
-            return anterior;
+    /**
+     * Obtém o orçamento da semana indicada ou cria-o se ainda não existir: com o valor
+     * da última semana que tenha orçamento, ou 0€ se não houver nenhuma.
+     * Com a semana em cache, no máximo uma escrita e nenhuma leitura.
+     */
+    public long getOrCreateBudgetAtual(int semana) {
+        long t0 = MetricasDAO.inicio();
+        garantirEmCache(semana, semana);
+        Long valor = cache.exato(semana);
+        if (valor == null) {
+            valor = cache.comTransporte(semana);
+            guardar(semana, valor);
         }
+        MetricasDAO.registar("BudgetDAO.getOrCreateBudgetAtual", t0, 1, SQL_CARREGAR_INTERVALO, semana);
+        return valor;
+    }
 
-        // Caso contrário, define 0€ como valor inicial
-        setBudget(0.0, startOfWeek);
-        return 0.0;
+    // Lê o orçamento definido para uma semana específica (sem criar novo); 0 se não existir
+    public long getBudgetPorSemana(int semana) {
+        long t0 = MetricasDAO.inicio();
+        garantirEmCache(semana, semana);
+        Long existente = cache.exato(semana);
+        MetricasDAO.registar("BudgetDAO.getBudgetPorSemana", t0, existente != null ? 1 : 0,
+                SQL_CARREGAR_INTERVALO, semana);
+        return existente != null ? existente : 0;
     }
 
-    // Lê o orçamento definido para uma semana específica (sem criar novo)
-    public double getBudgetPorSemana(long startOfWeek) {
-        Double existente = getBudgetValor(startOfWeek);
-        return existente != null ? existente : 0.0;
+    /**
+     * Orçamento de semanas consecutivas (ex: gráfico do histórico), com uma consulta no máximo.
+     * As semanas sem orçamento ficam com o da última semana anterior que tenha um,
+     * tal como getOrCreateBudgetAtual o teria criado.
+     *
+     * @param primeira índice da primeira semana
+     * @param budgets  recebe o orçamento de cada semana (budgets[i] = semana primeira + i)
+     */
+    public void carregarBudgets(int primeira, long[] budgets) {
+        if (budgets.length == 0) return;
+        long t0 = MetricasDAO.inicio();
+        garantirEmCache(primeira, primeira + budgets.length - 1);
+        for (int i = 0; i < budgets.length; i++) budgets[i] = cache.comTransporte(primeira + i);
+        MetricasDAO.registar("BudgetDAO.carregarBudgets", t0, budgets.length, SQL_CARREGAR_INTERVALO, null);
     }
 
-    // Busca o valor do orçamento armazenado para a semana indicada
-    private Double getBudgetValor(long startOfWeek) {
-        Cursor c = db.query(
-                DBHelper.TABLE_BUDGET,
-                new String[]{DBHelper.COLUMN_BUDGET_VALUE},
-                DBHelper.COLUMN_WEEK_START + "=?",
-                new String[]{String.valueOf(startOfWeek)},
-                null, null, null
-        );
-
-        Double valor = null;
-        if (c.moveToFirst()) {
-            valor = c.getDouble(c.getColumnIndexOrThrow(DBHelper.COLUMN_BUDGET_VALUE));
+    /*
+     * Garante que as semanas [de, ate] estão em cache, carregando-as (com as semanas já
+     * conhecidas, para o intervalo em cache continuar contínuo) numa só consulta.
+     * Se uma escrita acontecer durante a leitura, a leitura é repetida.
+     */
+    private void garantirEmCache(long de, long ate) {
+        while (!cache.cobre(de, ate)) {
+            long geracao = cache.geracao();
+            long[] intervalo = cache.intervaloAlargado(de, ate);
+            String[] args = {String.valueOf(intervalo[0]), String.valueOf(intervalo[1]), String.valueOf(intervalo[0])};
+
+            long t0 = MetricasDAO.inicio();
+            Map<Long, Long> linhas = new HashMap<>();
+            try (Cursor c = db.rawQuery(SQL_CARREGAR_INTERVALO, args)) {
+                while (c.moveToNext()) linhas.put(c.getLong(0), c.getLong(1));
+            }
+            MetricasDAO.registar("BudgetDAO.carregarIntervalo", t0, linhas.size(), SQL_CARREGAR_INTERVALO, args);
+            cache.juntar(intervalo[0], intervalo[1], linhas, geracao);
         }
-        c.close();
-        return valor;
     }
 
-    // Busca o orçamento mais recente registado antes da semana atual
-    private Double getUltimoBudgetAntes(long startOfWeek) {
-        Cursor c = db.query(
-                DBHelper.TABLE_BUDGET,
-                new String[]{DBHelper.COLUMN_BUDGET_VALUE},
-                DBHelper.COLUMN_WEEK_START + " < ?",
-                new String[]{String.valueOf(startOfWeek)},
-                null, null,
-                DBHelper.COLUMN_WEEK_START + " DESC",
-                "1"
-        );
-
-        Double valor = null;
-        if (c.moveToFirst()) {
-            valor = c.getDouble(c.getColumnIndexOrThrow(DBHelper.COLUMN_BUDGET_VALUE));
+    /**
+     * Guarda vários orçamentos numa só transação (ex: ao importar uma cópia de segurança),
+     * substituindo os que já existam para as mesmas semanas.
+     *
+     * @param inicios inícios das semanas (como nas cópias de segurança)
+     * @param valores orçamento de cada semana, em cêntimos
+     * @param n       número de posições usadas dos arrays
+     */
+    public void importarLote(long[] inicios, long[] valores, int n) {
+        long t0 = MetricasDAO.inicio();
+        int[] semanas = new int[n];
+        db.beginTransaction();
+        try (SQLiteStatement guardar = db.compileStatement(SQL_GUARDAR)) {
+            for (int i = 0; i < n; i++) {
+                semanas[i] = DateUtils.semanaDe(inicios[i]);
+                guardar.bindLong(1, semanas[i]);
+                guardar.bindLong(2, inicios[i]);
+                guardar.bindLong(3, valores[i]);
+                guardar.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        c.close();
-        return valor;
+        for (int i = 0; i < n; i++) cache.guardar(semanas[i], valores[i]);
+        MetricasDAO.registar("BudgetDAO.importarLote", t0, n, SQL_GUARDAR, null);
+    }
+
+    /**
+     * Aplica orçamentos recebidos do remoto (a chave é o início da semana, convertido
+     * para a semana local: um orçamento criado noutro fuso cai na mesma semana).
+     * Deve ser chamado dentro da transação de {@link DespesaDAO#aplicarRemotas},
+     * para que as alterações não sejam registadas para envio; depois do commit
+     * é preciso chamar {@link #invalidarCache()}.
+     */
+    void aplicarRemotos(List<RegistoSync> registos) {
+        long t0 = MetricasDAO.inicio();
+        for (RegistoSync r : registos) {
+            long inicio = Long.parseLong(r.chave);
+            int semana = DateUtils.semanaDe(inicio);
+            if (r.apagado) {
+                db.delete(DBHelper.TABLE_BUDGET, DBHelper.COLUMN_BUDGET_SEMANA + " = ?",
+                        new String[]{String.valueOf(semana)});
+            } else {
+                ContentValues values = new ContentValues();
+                values.put(DBHelper.COLUMN_BUDGET_SEMANA, semana);
+                values.put(DBHelper.COLUMN_WEEK_START, inicio);
+                values.put(DBHelper.COLUMN_BUDGET_CENTIMOS, r.valorCentimos);
+                db.insertWithOnConflict(DBHelper.TABLE_BUDGET, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        }
+        MetricasDAO.registar("BudgetDAO.aplicarRemotos", t0, registos.size(), SQL_GUARDAR, null);
+    }
+
+    // Esquece os orçamentos em cache (ex: depois de aplicar alterações remotas confirmadas)
+    void invalidarCache() {
+        cache.invalidar();
     }
 
-    // Fecha ligação à base de dados
+    // Liberta a referência à ligação partilhada
     public void fechar() {
-        db.close();
+        if (fechado) return;
+        fechado = true;
+        dbManager.libertar();
     }
 }
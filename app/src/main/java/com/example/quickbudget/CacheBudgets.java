@@ -0,0 +1,89 @@
+package com.example.quickbudget;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * CacheBudgets
+ * -------------
+ * Cópia em memória da tabela BUDGET (índice da semana → orçamento em cêntimos), partilhada
+ * por todos os BudgetDAO do processo (vive enquanto a ligação do DatabaseManager estiver aberta).
+ *
+ * O cache conhece um intervalo contínuo de semanas [carregadoDe, carregadoAte]: todas as linhas
+ * desse intervalo estão em memória, e também a última linha anterior a ele. Assim, dentro do
+ * intervalo, tanto o valor exato de uma semana como o valor transportado da semana anterior
+ * (a regra de getOrCreateBudgetAtual) são leituras em memória. Fora dele, o BudgetDAO carrega
+ * o intervalo alargado com uma só consulta ({@link #juntar}).
+ *
+ * As escritas do BudgetDAO atualizam o cache depois de confirmadas (write-through).
+ * Cada escrita muda a geração: um carregamento lido antes de uma escrita já não é junto,
+ * para não repor um valor antigo.
+ */
+final class CacheBudgets {
+
+    private final TreeMap<Long, Long> valores = new TreeMap<>();
+    private long carregadoDe = Long.MAX_VALUE;
+    private long carregadoAte = Long.MIN_VALUE;
+    private long geracao = 0;
+
+    // Verdadeiro se todas as semanas de [de, ate] (e a linha anterior) estão em memória
+    synchronized boolean cobre(long de, long ate) {
+        return de >= carregadoDe && ate <= carregadoAte;
+    }
+
+    /**
+     * Intervalo a carregar para passar a cobrir [de, ate]: a união com o que já está carregado,
+     * para que o intervalo conhecido continue contínuo.
+     */
+    synchronized long[] intervaloAlargado(long de, long ate) {
+        if (carregadoDe > carregadoAte) return new long[]{de, ate};
+        return new long[]{Math.min(de, carregadoDe), Math.max(ate, carregadoAte)};
+    }
+
+    synchronized long geracao() {
+        return geracao;
+    }
+
+    /**
+     * Junta as linhas lidas de [de, ate] (mais a última anterior a de), se não houve escritas
+     * desde {@code geracaoLida}. Caso contrário o carregamento é descartado.
+     */
+    synchronized void juntar(long de, long ate, Map<Long, Long> linhas, long geracaoLida) {
+        if (geracaoLida != geracao) return;
+        valores.subMap(de, true, ate, true).clear();
+        valores.putAll(linhas);
+        carregadoDe = Math.min(carregadoDe, de);
+        carregadoAte = Math.max(carregadoAte, ate);
+    }
+
+    /**
+     * Orçamento definido para a semana (null se não houver linha).
+     * Só é válido se a semana estiver coberta.
+     */
+    synchronized Long exato(long semana) {
+        return valores.get(semana);
+    }
+
+    /**
+     * Orçamento da semana, ou o da última semana anterior que tenha um (0 se nenhuma).
+     * Só é válido se a semana estiver coberta.
+     */
+    synchronized long comTransporte(long semana) {
+        Map.Entry<Long, Long> e = valores.floorEntry(semana);
+        return e != null ? e.getValue() : 0;
+    }
+
+    // Write-through: chamado depois de a linha ser gravada
+    synchronized void guardar(long semana, long valor) {
+        valores.put(semana, valor);
+        geracao++;
+    }
+
+    // Esquece tudo (ex: depois de aplicar alterações remotas, que podem eliminar linhas)
+    synchronized void invalidar() {
+        valores.clear();
+        carregadoDe = Long.MAX_VALUE;
+        carregadoAte = Long.MIN_VALUE;
+        geracao++;
+    }
+}
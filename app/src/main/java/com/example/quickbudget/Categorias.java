@@ -0,0 +1,87 @@
+package com.example.quickbudget;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Categorias
+ * -----------
+ * Registo em memória da tabela de categorias: resolve o id de uma categoria
+ * no seu nome e cor (e o nome no id) em tempo constante, através de arrays
+ * indexados pelo próprio id.
+ *
+ * É imutável; quando é criada uma categoria nova, o DespesaDAO carrega um registo novo.
+ */
+public final class Categorias {
+
+    // Nome usado para despesas sem categoria
+    static final String CATEGORIA_OMISSAO = "Outro";
+
+    private final String[] nomes; // id → nome (null se o id não existir)
+    private final int[] cores;    // id → cor (ARGB)
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    Categorias(String[] nomes, int[] cores) {
+        this.nomes = nomes;
+        this.cores = cores;
+        for (int id = 0; id < nomes.length; id++) {
+            if (nomes[id] != null) ids.put(nomes[id], id);
+        }
+    }
+
+    // Lê todas as categorias da base de dados
+    static Categorias carregar(SQLiteDatabase db) {
+        try (Cursor c = db.query(
+                DBHelper.TABLE_CATEGORIAS,
+                new String[]{DBHelper.COLUMN_CAT_ID, DBHelper.COLUMN_CAT_NOME, DBHelper.COLUMN_CAT_COR},
+                null, null, null, null,
+                DBHelper.COLUMN_CAT_ID + " ASC"
+        )) {
+            int maiorId = 0;
+            int n = c.getCount();
+            int[] idsLidos = new int[n];
+            String[] nomesLidos = new String[n];
+            int[] coresLidas = new int[n];
+            for (int i = 0; c.moveToNext() && i < n; i++) {
+                idsLidos[i] = c.getInt(0);
+                nomesLidos[i] = c.getString(1);
+                coresLidas[i] = c.getInt(2);
+                maiorId = Math.max(maiorId, idsLidos[i]);
+            }
+
+            String[] nomes = new String[maiorId + 1];
+            int[] cores = new int[maiorId + 1];
+            for (int i = 0; i < n; i++) {
+                nomes[idsLidos[i]] = nomesLidos[i];
+                cores[idsLidos[i]] = coresLidas[i];
+            }
+            return new Categorias(nomes, cores);
+        }
+    }
+
+    // Maior id + 1: tamanho necessário para um array indexado por id de categoria
+    public int tamanho() {
+        return nomes.length;
+    }
+
+    public String nome(int id) {
+        return existe(id) ? nomes[id] : "";
+    }
+
+    public int cor(int id) {
+        return existe(id) ? cores[id] : DBHelper.COR_CATEGORIA_OMISSAO;
+    }
+
+    // Id da categoria com este nome, ou -1 se não existir
+    public int idDe(String nome) {
+        Integer id = ids.get(nome);
+        return id != null ? id : -1;
+    }
+
+    private boolean existe(int id) {
+        return id >= 0 && id < nomes.length && nomes[id] != null;
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.quickbudget;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CopiaSeguranca
+ * ---------------
+ * Exportação e importação de todas as despesas e orçamentos, em JSON ou CSV.
+ *
+ * Ambos os sentidos funcionam em streaming: a exportação percorre um Cursor e escreve
+ * cada linha diretamente no JsonWriter / CSV; a importação lê um registo de cada vez e
+ * insere-os em blocos de {@link #TAMANHO_BLOCO}, cada bloco numa transação. A memória
+ * usada não depende do número de despesas do ficheiro.
+ *
+ * Cada despesa leva o seu uid: importar uma cópia numa base de dados que já tem essas
+ * despesas não as duplica, e uma importação interrompida pode ser repetida.
+ * Os modelos de recorrência levam a próxima ocorrência, para continuarem no mesmo ponto.
+ *
+ * Formato JSON:
+ * <pre>
+ * {"formato": "quickbudget", "versao": 1, "exportadoEm": ...,
+ *  "budgets": [{"semana": ..., "valorCentimos": ...}, ...],
+ *  "despesas": [{"uid", "descricao", "categoria", "valorCentimos", "timestamp",
+ *                "recorrencia", "proximaOcorrencia"}, ...]}
+ * </pre>
+ * Formato CSV (uma linha por registo, orçamentos com tipo "budget"):
+ * tipo,uid,descricao,categoria,valor_cents,timestamp,recorrencia,proxima_ocorrencia
+ */
+public final class CopiaSeguranca {
+
+    static final String FORMATO = "quickbudget";
+    static final int VERSAO_FORMATO = 1;
+    static final int TAMANHO_BLOCO = 1_000;
+
+    private static final String TIPO_DESPESA = "despesa";
+    private static final String TIPO_BUDGET = "budget";
+    private static final String[] COLUNAS_CSV = {
+            "tipo", "uid", "descricao", "categoria", "valor_cents", "timestamp", "recorrencia", "proxima_ocorrencia"
+    };
+
+    // Despesas com a próxima ocorrência, se forem modelos de recorrência (por ordem de id)
+    private static final String SQL_DESPESAS =
+            "SELECT d." + DBHelper.COLUMN_UID + ", d." + DBHelper.COLUMN_DESCRICAO + ", d." + DBHelper.COLUMN_CATEGORIA_ID +
+                    ", d." + DBHelper.COLUMN_VALOR_CENTIMOS + ", d." + DBHelper.COLUMN_TIMESTAMP + ", d." + DBHelper.COLUMN_RECORRENCIA +
+                    ", r." + DBHelper.COLUMN_REC_PROXIMA +
+                    " FROM " + DBHelper.TABLE_DESPESAS + " d" +
+                    " LEFT JOIN " + DBHelper.TABLE_RECORRENCIAS + " r ON r." + DBHelper.COLUMN_REC_DESPESA_ID + " = d." + DBHelper.COLUMN_ID +
+                    " ORDER BY d." + DBHelper.COLUMN_ID;
+
+    private static final String SQL_BUDGETS =
+            "SELECT " + DBHelper.COLUMN_WEEK_START + ", " + DBHelper.COLUMN_BUDGET_CENTIMOS +
+                    " FROM " + DBHelper.TABLE_BUDGET + " ORDER BY " + DBHelper.COLUMN_WEEK_START;
+
+    // Resultado de uma importação
+    public static final class Resultado {
+        public final int despesasLidas;
+        public final int despesasInseridas; // as restantes já existiam (mesmo uid)
+        public final int budgets;
+
+        Resultado(int despesasLidas, int despesasInseridas, int budgets) {
+            this.despesasLidas = despesasLidas;
+            this.despesasInseridas = despesasInseridas;
+            this.budgets = budgets;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final SQLiteDatabase db;
+    private boolean fechado = false;
+    private final DespesaDAO despesas;
+    private final BudgetDAO budgets;
+
+    public CopiaSeguranca(Context context, DespesaDAO despesas, BudgetDAO budgets) {
+        this.dbManager = DatabaseManager.getInstance(context);
+        this.db = dbManager.abrir();
+        this.despesas = despesas;
+        this.budgets = budgets;
+    }
+
+    // ======== EXPORTAÇÃO ========
+
+    /**
+     * Escreve a cópia em JSON (UTF-8). Não fecha o stream.
+     */
+    public void exportarJson(OutputStream destino) throws IOException {
+        Categorias categorias = despesas.getCategorias();
+        JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8)));
+        json.beginObject();
+        json.name("formato").value(FORMATO);
+        json.name("versao").value(VERSAO_FORMATO);
+        json.name("exportadoEm").value(System.currentTimeMillis());
+
+        json.name("budgets").beginArray();
+        try (Cursor c = db.rawQuery(SQL_BUDGETS, null)) {
+            while (c.moveToNext()) {
+                json.beginObject();
+                json.name("semana").value(c.getLong(0));
+                json.name("valorCentimos").value(c.getLong(1));
+                json.endObject();
+            }
+        }
+        json.endArray();
+
+        json.name("despesas").beginArray();
+        try (Cursor c = db.rawQuery(SQL_DESPESAS, null)) {
+            while (c.moveToNext()) {
+                json.beginObject();
+                json.name("uid").value(c.getString(0));
+                json.name("descricao").value(c.getString(1));
+                json.name("categoria").value(categorias.nome(c.getInt(2)));
+                json.name("valorCentimos").value(c.getLong(3));
+                json.name("timestamp").value(c.getLong(4));
+                json.name("recorrencia").value(c.getString(5));
+                if (!c.isNull(6)) json.name("proximaOcorrencia").value(c.getLong(6));
+                json.endObject();
+            }
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * Escreve a cópia em CSV (UTF-8, separador vírgula, com cabeçalho). Não fecha o stream.
+     */
+    public void exportarCsv(OutputStream destino) throws IOException {
+        Categorias categorias = despesas.getCategorias();
+        Writer out = new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8));
+        Csv.Escritor csv = new Csv.Escritor(out, ',');
+        for (String coluna : COLUNAS_CSV) csv.campo(coluna);
+        csv.fimLinha();
+
+        try (Cursor c = db.rawQuery(SQL_BUDGETS, null)) {
+            while (c.moveToNext()) {
+                csv.campo(TIPO_BUDGET).campo(null).campo(null).campo(null)
+                        .campo(c.getLong(1)).campo(c.getLong(0)).campo(null).campo(null);
+                csv.fimLinha();
+            }
+        }
+        try (Cursor c = db.rawQuery(SQL_DESPESAS, null)) {
+            while (c.moveToNext()) {
+                csv.campo(TIPO_DESPESA).campo(c.getString(0)).campo(c.getString(1))
+                        .campo(categorias.nome(c.getInt(2))).campo(c.getLong(3)).campo(c.getLong(4))
+                        .campo(c.getString(5));
+                if (c.isNull(6)) csv.campo(null); else csv.campo(c.getLong(6));
+                csv.fimLinha();
+            }
+        }
+        out.flush();
+    }
+
+    // ======== IMPORTAÇÃO ========
+
+    /**
+     * Importa uma cópia em JSON ou CSV (o formato é detetado pelo primeiro carácter).
+     * Os blocos já inseridos ficam guardados se o ficheiro tiver um erro mais à frente.
+     *
+     * @throws IOException se o ficheiro não for uma cópia válida
+     */
+    public Resultado importar(InputStream origem) throws IOException {
+        PushbackReader in = new PushbackReader(
+                new BufferedReader(new InputStreamReader(origem, StandardCharsets.UTF_8)), 1);
+        int primeiro = in.read();
+        if (primeiro == '\uFEFF') primeiro = in.read(); // BOM
+        while (primeiro != -1 && Character.isWhitespace(primeiro)) primeiro = in.read();
+        if (primeiro == -1) throw new IOException("Ficheiro vazio");
+        in.unread(primeiro);
+
+        Blocos blocos = new Blocos();
+        try {
+            if (primeiro == '{') importarJson(in, blocos); else importarCsv(in, blocos);
+        } catch (IllegalStateException | NumberFormatException e) {
+            // Valores com o tipo errado (ex: texto onde se esperava um número)
+            throw new IOException("Cópia de segurança inválida: " + e.getMessage(), e);
+        } finally {
+            blocos.guardar();
+        }
+        return new Resultado(blocos.despesasLidas, blocos.despesasInseridas, blocos.budgetsLidos);
+    }
+
+    private void importarJson(Reader in, Blocos blocos) throws IOException {
+        JsonReader json = new JsonReader(in);
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "formato":
+                    if (!FORMATO.equals(json.nextString())) throw new IOException("Não é uma cópia do QuickBudget");
+                    break;
+                case "versao":
+                    if (json.nextInt() > VERSAO_FORMATO) throw new IOException("Versão da cópia não suportada");
+                    break;
+                case "budgets":
+                    json.beginArray();
+                    while (json.hasNext()) lerBudgetJson(json, blocos);
+                    json.endArray();
+                    break;
+                case "despesas":
+                    json.beginArray();
+                    while (json.hasNext()) lerDespesaJson(json, blocos);
+                    json.endArray();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private static void lerBudgetJson(JsonReader json, Blocos blocos) throws IOException {
+        long semana = 0, valor = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "semana": semana = json.nextLong(); break;
+                case "valorCentimos": valor = json.nextLong(); break;
+                default: json.skipValue();
+            }
+        }
+        json.endObject();
+        blocos.budget(semana, valor);
+    }
+
+    private static void lerDespesaJson(JsonReader json, Blocos blocos) throws IOException {
+        String uid = null, descricao = "", categoria = null, recorrencia = null;
+        long valor = 0, timestamp = 0, proxima = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            String nome = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                continue;
+            }
+            switch (nome) {
+                case "uid": uid = json.nextString(); break;
+                case "descricao": descricao = json.nextString(); break;
+                case "categoria": categoria = json.nextString(); break;
+                case "valorCentimos": valor = json.nextLong(); break;
+                case "timestamp": timestamp = json.nextLong(); break;
+                case "recorrencia": recorrencia = json.nextString(); break;
+                case "proximaOcorrencia": proxima = json.nextLong(); break;
+                default: json.skipValue();
+            }
+        }
+        json.endObject();
+        blocos.despesa(uid, descricao, categoria, valor, timestamp, recorrencia, proxima);
+    }
+
+    private static void importarCsv(Reader in, Blocos blocos) throws IOException {
+        Csv.Leitor csv = new Csv.Leitor(in, ',');
+        List<String> campos = new ArrayList<>(COLUNAS_CSV.length);
+        if (!csv.proximo(campos) || campos.size() < COLUNAS_CSV.length || !COLUNAS_CSV[0].equals(campos.get(0))) {
+            throw new IOException("Cabeçalho CSV inválido");
+        }
+
+        while (csv.proximo(campos)) {
+            if (campos.size() == 1 && campos.get(0).isEmpty()) continue; // linha vazia
+            if (campos.size() < COLUNAS_CSV.length) {
+                throw new IOException("Linha " + csv.getLinha() + ": esperados " + COLUNAS_CSV.length + " campos");
+            }
+            String tipo = campos.get(0);
+            if (TIPO_BUDGET.equals(tipo)) {
+                blocos.budget(Long.parseLong(campos.get(5)), Long.parseLong(campos.get(4)));
+            } else if (TIPO_DESPESA.equals(tipo)) {
+                String proxima = campos.get(7);
+                blocos.despesa(vazioParaNull(campos.get(1)), campos.get(2), vazioParaNull(campos.get(3)),
+                        Long.parseLong(campos.get(4)), Long.parseLong(campos.get(5)),
+                        vazioParaNull(campos.get(6)), proxima.isEmpty() ? 0 : Long.parseLong(proxima));
+            } else {
+                throw new IOException("Linha " + csv.getLinha() + ": tipo desconhecido \"" + tipo + "\"");
+            }
+        }
+    }
+
+    private static String vazioParaNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    /*
+     * Acumula os registos lidos e grava-os em blocos de TAMANHO_BLOCO (uma transação por bloco).
+     * Os arrays são reutilizados entre blocos.
+     */
+    private final class Blocos {
+        final List<Despesa> despesasBloco = new ArrayList<>(TAMANHO_BLOCO);
+        final long[] proximas = new long[TAMANHO_BLOCO];
+        final long[] semanas = new long[TAMANHO_BLOCO];
+        final long[] valores = new long[TAMANHO_BLOCO];
+        int numBudgets = 0;
+        int despesasLidas = 0, despesasInseridas = 0, budgetsLidos = 0;
+
+        void despesa(String uid, String descricao, String categoria, long valor, long timestamp,
+                     String recorrencia, long proxima) {
+            Despesa d = new Despesa(descricao, categoria, valor, timestamp, recorrencia);
+            d.setUid(uid);
+            proximas[despesasBloco.size()] = proxima;
+            despesasBloco.add(d);
+            despesasLidas++;
+            if (despesasBloco.size() == TAMANHO_BLOCO) guardarDespesas();
+        }
+
+        void budget(long semana, long valor) {
+            semanas[numBudgets] = semana;
+            valores[numBudgets] = valor;
+            numBudgets++;
+            budgetsLidos++;
+            if (numBudgets == TAMANHO_BLOCO) guardarBudgets();
+        }
+
+        void guardar() {
+            guardarDespesas();
+            guardarBudgets();
+        }
+
+        private void guardarDespesas() {
+            if (despesasBloco.isEmpty()) return;
+            despesasInseridas += despesas.importarLote(despesasBloco, proximas);
+            despesasBloco.clear();
+        }
+
+        private void guardarBudgets() {
+            if (numBudgets == 0) return;
+            budgets.importarLote(semanas, valores, numBudgets);
+            numBudgets = 0;
+        }
+    }
+
+    // Liberta a referência à ligação partilhada
+    public void fechar() {
+        if (fechado) return;
+        fechado = true;
+        dbManager.libertar();
+    }
+}
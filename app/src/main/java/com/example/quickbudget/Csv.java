@@ -0,0 +1,158 @@
+package com.example.quickbudget;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Csv
+ * ----
+ * Leitura e escrita de CSV (RFC 4180) em streaming: uma linha de cada vez,
+ * sem carregar o ficheiro em memória.
+ *
+ * Os campos com separador, aspas ou mudanças de linha são escritos entre aspas
+ * (com as aspas duplicadas). Na leitura, um campo entre aspas pode ocupar várias linhas.
+ */
+public final class Csv {
+
+    private Csv() {}
+
+    /**
+     * Escreve uma linha campo a campo, reutilizando o mesmo Writer.
+     */
+    public static final class Escritor {
+        private final Writer out;
+        private final char separador;
+        private boolean inicioLinha = true;
+
+        public Escritor(Writer out, char separador) {
+            this.out = out;
+            this.separador = separador;
+        }
+
+        // Campo de texto (null é escrito como campo vazio)
+        public Escritor campo(String valor) throws IOException {
+            separar();
+            if (valor == null) return this;
+            if (precisaAspas(valor)) {
+                out.write('"');
+                for (int i = 0; i < valor.length(); i++) {
+                    char ch = valor.charAt(i);
+                    if (ch == '"') out.write('"');
+                    out.write(ch);
+                }
+                out.write('"');
+            } else {
+                out.write(valor);
+            }
+            return this;
+        }
+
+        public Escritor campo(long valor) throws IOException {
+            separar();
+            out.write(Long.toString(valor));
+            return this;
+        }
+
+        public void fimLinha() throws IOException {
+            out.write("\r\n");
+            inicioLinha = true;
+        }
+
+        private void separar() throws IOException {
+            if (!inicioLinha) out.write(separador);
+            inicioLinha = false;
+        }
+
+        private boolean precisaAspas(String valor) {
+            for (int i = 0; i < valor.length(); i++) {
+                char ch = valor.charAt(i);
+                if (ch == separador || ch == '"' || ch == '\n' || ch == '\r') return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Lê um registo (linha lógica) de cada vez. O Reader deve ter buffer próprio.
+     */
+    public static final class Leitor {
+        private final Reader in;
+        private final char separador;
+        private final StringBuilder campo = new StringBuilder();
+        private int linha = 0; // linha física atual (para mensagens de erro)
+        private int seguinte = -2; // carácter lido a mais (-2: nenhum)
+
+        public Leitor(Reader in, char separador) {
+            this.in = in;
+            this.separador = separador;
+        }
+
+        /**
+         * Lê o registo seguinte para {@code campos} (que é limpa antes).
+         *
+         * @return false no fim do ficheiro
+         * @throws IOException se houver aspas por fechar no fim do ficheiro
+         */
+        public boolean proximo(List<String> campos) throws IOException {
+            campos.clear();
+            int ch = ler();
+            if (ch == -1) return false;
+            linha++;
+
+            campo.setLength(0);
+            boolean entreAspas = false;
+            boolean comAspas = false;
+            while (true) {
+                if (entreAspas) {
+                    if (ch == -1) throw new IOException("Aspas por fechar na linha " + linha);
+                    if (ch == '"') {
+                        int a = ler();
+                        if (a == '"') {
+                            campo.append('"');
+                        } else {
+                            entreAspas = false;
+                            ch = a;
+                            continue;
+                        }
+                    } else {
+                        if (ch == '\n') linha++;
+                        campo.append((char) ch);
+                    }
+                } else if (ch == '"' && campo.length() == 0 && !comAspas) {
+                    entreAspas = true;
+                    comAspas = true;
+                } else if (ch == separador) {
+                    campos.add(campo.toString());
+                    campo.setLength(0);
+                    comAspas = false;
+                } else if (ch == '\n' || ch == '\r' || ch == -1) {
+                    if (ch == '\r') {
+                        int a = ler();
+                        if (a != '\n') seguinte = a;
+                    }
+                    campos.add(campo.toString());
+                    return true;
+                } else {
+                    campo.append((char) ch);
+                }
+                ch = ler();
+            }
+        }
+
+        // Número da última linha lida (começa em 1)
+        public int getLinha() {
+            return linha;
+        }
+
+        private int ler() throws IOException {
+            if (seguinte != -2) {
+                int ch = seguinte;
+                seguinte = -2;
+                return ch;
+            }
+            return in.read();
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package com.example.quickbudget;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * DBHelper
@@ -10,29 +16,137 @@ import android.database.sqlite.SQLiteOpenHelper;
  * Classe responsável pela criação e gestão da base de dados local (SQLite).
  * Contém a definição das tabelas:
  *  - DESPESAS: armazena as despesas individuais registadas pelo utilizador.
- *  - BUDGET: guarda o valor do orçamento semanal por data de início da semana.
+ *    Os valores monetários (despesas, orçamento e totais) são guardados em cêntimos.
+ *  - CATEGORIAS: nome e cor de cada categoria; as despesas referem-na pelo id.
+ *  - BUDGET: guarda o valor do orçamento semanal por semana (índice inteiro, ver DateUtils).
+ *  - WEEKLY_CATEGORY_TOTALS: totais gastos por semana (índice) e categoria, mantidos
+ *    pelo DespesaDAO na mesma transação de cada alteração às despesas.
+ *  - RECURRENCE_SCHEDULE: uma linha por despesa recorrente (modelo), com a data
+ *    da próxima ocorrência, para gerar apenas as recorrências que já venceram.
+ *  - DESPESAS_FTS: índice de texto (FTS4) das descrições, mantido por triggers,
+ *    para a pesquisa no histórico.
+ *  - CHANGE_LOG: despesas e orçamentos alterados localmente e ainda não enviados
+ *    para o remoto (uma linha por registo, com a alteração mais recente).
+ *  - SYNC_STATE: estado da sincronização (id do dispositivo, marca da última receção).
  *
- * Gere automaticamente a criação e atualização do esquema da base de dados.
+ * O esquema evolui através de migrações incrementais (uma por versão),
+ * aplicadas por ordem sem apagar os dados existentes.
  */
 public class DBHelper extends SQLiteOpenHelper {
 
-    // Nome e versão da base de dados
+    /**
+     * Um passo de migração do esquema: leva a base de dados da versão N-1 para a versão N.
+     */
+    interface Migracao {
+        void aplicar(SQLiteDatabase db);
+    }
+
+    /**
+     * Migrações registadas, por ordem.
+     * A posição i contém o passo que leva o esquema da versão i+1 para a versão i+2.
+     * Para alterar o esquema basta acrescentar um novo passo no fim da lista.
+     */
+    static final Migracao[] MIGRACOES = {
+            DBHelper::migrarParaV2, // v2: índices nas colunas mais consultadas
+            DBHelper::migrarParaV3, // v3: tabela de totais semanais por categoria
+            DBHelper::migrarParaV4, // v4: calendário das despesas recorrentes
+            DBHelper::migrarParaV5, // v5: tabela de categorias (despesas passam a guardar o id)
+            DBHelper::migrarParaV6, // v6: valores em cêntimos (INTEGER) em vez de REAL
+            DBHelper::migrarParaV7, // v7: índice de texto (FTS4) das descrições
+            DBHelper::migrarParaV8, // v8: sincronização (uid das despesas, registo de alterações)
+            DBHelper::migrarParaV9, // v9: hash de conteúdo das despesas importadas de extratos
+            DBHelper::migrarParaV10, // v10: índices de dia e semana (inteiros) nas despesas, totais e orçamento
+    };
+
+    // Nome e versão da base de dados (a versão acompanha o número de migrações)
     private static final String DATABASE_NAME = "quickbudget.db";
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 1 + MIGRACOES.length;
 
     // ======== TABELA DESPESAS ========
     public static final String TABLE_DESPESAS = "despesas";
     public static final String COLUMN_ID = "id";
     public static final String COLUMN_DESCRICAO = "descricao";
-    public static final String COLUMN_CATEGORIA = "categoria";
-    public static final String COLUMN_VALOR = "valor";
+    public static final String COLUMN_CATEGORIA = "categoria";       // Nome da categoria (até à v4)
+    public static final String COLUMN_CATEGORIA_ID = "categoria_id"; // Id em CATEGORIAS (desde a v5)
+    public static final String COLUMN_VALOR = "valor";                // Euros, REAL (até à v5)
+    public static final String COLUMN_VALOR_CENTIMOS = "valor_cents"; // Cêntimos, INTEGER (desde a v6)
     public static final String COLUMN_RECORRENCIA = "recorrencia";
     public static final String COLUMN_TIMESTAMP = "timestamp"; // Data/hora da despesa
+    public static final String COLUMN_UID = "uid";             // Id global, igual em todos os dispositivos (desde a v8)
+    public static final String COLUMN_HASH_CONTEUDO = "hash_conteudo"; // Só nas importadas de extratos (desde a v9)
+    public static final String COLUMN_DIA = "day_index";       // Dia local do timestamp (DateUtils.diaDe, desde a v10)
+    public static final String COLUMN_SEMANA = "week_index";   // Semana local do timestamp (DateUtils.semanaDe, desde a v10)
 
     // ======== TABELA BUDGET ========
     public static final String TABLE_BUDGET = "budget";
-    public static final String COLUMN_WEEK_START = "start_of_week"; // Segunda-feira (00:00)
-    public static final String COLUMN_BUDGET_VALUE = "valor";       // Valor do orçamento semanal
+    public static final String COLUMN_BUDGET_SEMANA = "week_index";  // Chave: índice da semana (desde a v10)
+    public static final String COLUMN_WEEK_START = "start_of_week"; // Segunda-feira (00:00); chave na sincronização e cópias
+    public static final String COLUMN_BUDGET_VALUE = "valor";          // Valor do orçamento semanal (até à v5)
+    public static final String COLUMN_BUDGET_CENTIMOS = "valor_cents"; // Valor em cêntimos (desde a v6)
+
+    // ======== TABELA CATEGORIAS ========
+    public static final String TABLE_CATEGORIAS = "categorias";
+    public static final String COLUMN_CAT_ID = "id";
+    public static final String COLUMN_CAT_NOME = "nome";
+    public static final String COLUMN_CAT_COR = "cor"; // Cor (ARGB) usada nos gráficos
+
+    // Categorias criadas na instalação (as mesmas de categorias_array) e respetivas cores
+    static final String[] NOMES_CATEGORIAS_INICIAIS = {
+            "Alimentação", "Transporte", "Lazer", "Saúde", "Casa",
+            "Educação", "Supermercado", "Subscrição", Categorias.CATEGORIA_OMISSAO
+    };
+    static final int[] CORES_CATEGORIAS_INICIAIS = {
+            0xFFE53935, 0xFF1E88E5, 0xFF8E24AA, 0xFF43A047, 0xFF6D4C41,
+            0xFFFFA726, 0xFFFDD835, 0xFF00ACC1, 0xFF9E9E9E
+    };
+    static final int COR_CATEGORIA_OMISSAO = 0xFF00897B; // categorias criadas depois
+
+    // ======== TABELA WEEKLY_CATEGORY_TOTALS ========
+    public static final String TABLE_TOTAIS_SEMANAIS = "weekly_category_totals";
+    public static final String COLUMN_TOTAL_SEMANA = "week_start";     // Segunda-feira (00:00, até à v9)
+    public static final String COLUMN_TOTAL_SEMANA_INDICE = "week_index"; // Índice da semana (desde a v10)
+    public static final String COLUMN_TOTAL_CATEGORIA = "categoria";       // Nome (até à v4)
+    public static final String COLUMN_TOTAL_CATEGORIA_ID = "categoria_id"; // Id em CATEGORIAS (desde a v5)
+    public static final String COLUMN_TOTAL_VALOR = "total";           // Soma dos valores (REAL, até à v5)
+    public static final String COLUMN_TOTAL_CENTIMOS = "total_cents";  // Soma em cêntimos (desde a v6)
+    public static final String COLUMN_TOTAL_QUANTIDADE = "quantidade"; // Número de despesas
+
+    // ======== TABELA RECURRENCE_SCHEDULE ========
+    public static final String TABLE_RECORRENCIAS = "recurrence_schedule";
+    public static final String COLUMN_REC_DESPESA_ID = "despesa_id";   // Despesa modelo (id em DESPESAS)
+    public static final String COLUMN_REC_RECORRENCIA = "recorrencia"; // Semanal ou Mensal
+    public static final String COLUMN_REC_PROXIMA = "next_due";        // Próxima ocorrência (00:00)
+
+    // Valores possíveis da recorrência que geram novas despesas
+    public static final String RECORRENCIA_SEMANAL = "Semanal";
+    public static final String RECORRENCIA_MENSAL = "Mensal";
+
+    // ======== TABELA DESPESAS_FTS ========
+    // Tabela virtual FTS4 sem conteúdo próprio (lê o texto de DESPESAS); docid = id da despesa
+    public static final String TABLE_DESPESAS_FTS = "despesas_fts";
+
+    // ======== TABELA CHANGE_LOG ========
+    public static final String TABLE_CHANGE_LOG = "change_log";
+    public static final String COLUMN_LOG_SEQ = "seq";              // Ordem das alterações
+    public static final String COLUMN_LOG_TABELA = "tabela";        // TABLE_DESPESAS ou TABLE_BUDGET
+    public static final String COLUMN_LOG_CHAVE = "chave";          // uid da despesa ou início da semana
+    public static final String COLUMN_LOG_APAGADO = "apagado";      // 1 se o registo foi eliminado
+    public static final String COLUMN_LOG_ALTERADO_EM = "alterado_em";
+
+    // ======== TABELA SYNC_STATE ========
+    public static final String TABLE_SYNC_ESTADO = "sync_state";
+    public static final String COLUMN_SYNC_CHAVE = "chave";
+    public static final String COLUMN_SYNC_VALOR = "valor";
+
+    // ======== ÍNDICES ========
+    static final String INDEX_DESPESAS_TIMESTAMP = "idx_despesas_timestamp";
+    static final String INDEX_DESPESAS_CATEGORIA_TIMESTAMP = "idx_despesas_categoria_timestamp";
+    static final String INDEX_DESPESAS_RECORRENCIA = "idx_despesas_recorrencia";
+    static final String INDEX_RECORRENCIAS_PROXIMA = "idx_recurrence_next_due";
+    static final String INDEX_DESPESAS_UID = "idx_despesas_uid";
+    static final String INDEX_DESPESAS_HASH = "idx_despesas_hash_conteudo";
+    static final String INDEX_DESPESAS_SEMANA = "idx_despesas_week_index";
+    static final String INDEX_DESPESAS_DIA = "idx_despesas_day_index";
 
     /**
      * Construtor do DBHelper.
@@ -42,12 +156,35 @@ public class DBHelper extends SQLiteOpenHelper {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    // Ativa a verificação das chaves estrangeiras (despesas → categorias)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
     /**
      * Executado na primeira vez que a base de dados é criada.
-     * Responsável por definir o esquema inicial (tabelas e colunas).
+     * Cria o esquema inicial (versão 1) e aplica todas as migrações,
+     * para que uma instalação nova fique igual a uma base de dados atualizada.
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
+        criarEsquemaInicial(db);
+        aplicarMigracoes(db, 1, DATABASE_VERSION);
+    }
+
+    /**
+     * Chamado automaticamente quando há uma atualização de versão da base de dados.
+     * Aplica, por ordem, os passos de migração entre a versão antiga e a nova,
+     * preservando os dados do utilizador.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        aplicarMigracoes(db, oldVersion, newVersion);
+    }
+
+    // Cria as tabelas tal como existiam na versão 1 do esquema
+    static void criarEsquemaInicial(SQLiteDatabase db) {
         // Criação da tabela DESPESAS
         db.execSQL("CREATE TABLE " + TABLE_DESPESAS + " (" +
                 COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -64,13 +201,473 @@ public class DBHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Chamado automaticamente quando há uma atualização de versão da base de dados.
-     * Elimina as tabelas antigas e recria-as (útil em alterações estruturais).
+     * Aplica os passos de migração necessários para passar da versão {@code de}
+     * para a versão {@code para}. O SQLiteOpenHelper já executa este método
+     * dentro de uma transação, pelo que uma falha não deixa o esquema a meio.
      */
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_DESPESAS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BUDGET);
-        onCreate(db);
+    static void aplicarMigracoes(SQLiteDatabase db, int de, int para) {
+        if (de < 1 || para > DATABASE_VERSION) {
+            throw new IllegalStateException("Migração não suportada: v" + de + " → v" + para);
+        }
+        for (int versao = de + 1; versao <= para; versao++) {
+            MIGRACOES[versao - 2].aplicar(db);
+        }
+    }
+
+    // v2: índices para as pesquisas por intervalo de datas, categoria e recorrência
+    private static void migrarParaV2(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_DESPESAS_TIMESTAMP +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_DESPESAS_CATEGORIA_TIMESTAMP +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_CATEGORIA + ", " + COLUMN_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_DESPESAS_RECORRENCIA +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_RECORRENCIA + ")");
+    }
+
+    // v3: totais semanais por categoria, preenchidos a partir das despesas existentes
+    private static void migrarParaV3(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_TOTAIS_SEMANAIS + " (" +
+                COLUMN_TOTAL_SEMANA + " INTEGER NOT NULL, " +
+                COLUMN_TOTAL_CATEGORIA + " TEXT NOT NULL, " +
+                COLUMN_TOTAL_VALOR + " REAL NOT NULL DEFAULT 0, " +
+                COLUMN_TOTAL_QUANTIDADE + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (" + COLUMN_TOTAL_SEMANA + ", " + COLUMN_TOTAL_CATEGORIA + "))");
+        reconstruirTotaisSemanais(db, COLUMN_CATEGORIA, COLUMN_VALOR, COLUMN_TOTAL_CATEGORIA, COLUMN_TOTAL_VALOR);
+    }
+
+    /**
+     * v4: calendário de recorrências.
+     * Até aqui cada cópia gerada herdava a recorrência e era tratada como um novo modelo.
+     * As despesas recorrentes iguais (descrição, categoria, valor e recorrência) passam a
+     * formar uma só série: o modelo é a mais antiga e a próxima ocorrência é calculada
+     * a partir da mais recente.
+     */
+    private static void migrarParaV4(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_RECORRENCIAS + " (" +
+                COLUMN_REC_DESPESA_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_REC_RECORRENCIA + " TEXT NOT NULL, " +
+                COLUMN_REC_PROXIMA + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_RECORRENCIAS_PROXIMA +
+                " ON " + TABLE_RECORRENCIAS + " (" + COLUMN_REC_PROXIMA + ")");
+
+        try (Cursor c = db.rawQuery(
+                "SELECT MIN(" + COLUMN_ID + "), " + COLUMN_RECORRENCIA + ", MAX(" + COLUMN_TIMESTAMP + ")" +
+                        " FROM " + TABLE_DESPESAS +
+                        " WHERE " + COLUMN_RECORRENCIA + " IN (?, ?)" +
+                        " GROUP BY " + COLUMN_DESCRICAO + ", " + COLUMN_CATEGORIA + ", " +
+                        COLUMN_VALOR + ", " + COLUMN_RECORRENCIA,
+                new String[]{RECORRENCIA_SEMANAL, RECORRENCIA_MENSAL})) {
+            while (c.moveToNext()) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_REC_DESPESA_ID, c.getLong(0));
+                values.put(COLUMN_REC_RECORRENCIA, c.getString(1));
+                values.put(COLUMN_REC_PROXIMA, proximaOcorrencia(c.getString(1), c.getLong(2)));
+                db.insert(TABLE_RECORRENCIAS, null, values);
+            }
+        }
+    }
+
+    /**
+     * v5: categorias numa tabela própria.
+     * Cria a tabela com as categorias iniciais (e as que já existam nas despesas)
+     * e reconstrói a tabela de despesas com categoria_id em vez do nome.
+     * Despesas sem categoria ficam em "Outro". Os totais semanais passam a ser por id.
+     */
+    private static void migrarParaV5(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_CATEGORIAS + " (" +
+                COLUMN_CAT_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_CAT_NOME + " TEXT NOT NULL UNIQUE, " +
+                COLUMN_CAT_COR + " INTEGER NOT NULL)");
+        for (int i = 0; i < NOMES_CATEGORIAS_INICIAIS.length; i++) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_CAT_NOME, NOMES_CATEGORIAS_INICIAIS[i]);
+            values.put(COLUMN_CAT_COR, CORES_CATEGORIAS_INICIAIS[i]);
+            db.insert(TABLE_CATEGORIAS, null, values);
+        }
+        db.execSQL("INSERT INTO " + TABLE_CATEGORIAS + " (" + COLUMN_CAT_NOME + ", " + COLUMN_CAT_COR + ")" +
+                " SELECT DISTINCT " + COLUMN_CATEGORIA + ", " + COR_CATEGORIA_OMISSAO + " FROM " + TABLE_DESPESAS +
+                " WHERE " + COLUMN_CATEGORIA + " <> ''" +
+                " AND " + COLUMN_CATEGORIA + " NOT IN (SELECT " + COLUMN_CAT_NOME + " FROM " + TABLE_CATEGORIAS + ")");
+
+        // Reconstrução da tabela (o SQLite não permite alterar o tipo nem acrescentar FKs a colunas)
+        db.execSQL("CREATE TABLE despesas_v5 (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_DESCRICAO + " TEXT NOT NULL, " +
+                COLUMN_CATEGORIA_ID + " INTEGER NOT NULL REFERENCES " + TABLE_CATEGORIAS + "(" + COLUMN_CAT_ID + "), " +
+                COLUMN_VALOR + " REAL, " +
+                COLUMN_RECORRENCIA + " TEXT, " +
+                COLUMN_TIMESTAMP + " INTEGER)");
+        db.execSQL("INSERT INTO despesas_v5 (" + COLUMN_ID + ", " + COLUMN_DESCRICAO + ", " + COLUMN_CATEGORIA_ID + ", " +
+                COLUMN_VALOR + ", " + COLUMN_RECORRENCIA + ", " + COLUMN_TIMESTAMP + ")" +
+                " SELECT d." + COLUMN_ID + ", d." + COLUMN_DESCRICAO + ", " +
+                "COALESCE(c." + COLUMN_CAT_ID + ", (SELECT " + COLUMN_CAT_ID + " FROM " + TABLE_CATEGORIAS +
+                " WHERE " + COLUMN_CAT_NOME + " = ?)), " +
+                "d." + COLUMN_VALOR + ", d." + COLUMN_RECORRENCIA + ", d." + COLUMN_TIMESTAMP +
+                " FROM " + TABLE_DESPESAS + " d LEFT JOIN " + TABLE_CATEGORIAS + " c ON c." + COLUMN_CAT_NOME + " = d." + COLUMN_CATEGORIA,
+                new Object[]{Categorias.CATEGORIA_OMISSAO});
+        db.execSQL("DROP TABLE " + TABLE_DESPESAS);
+        db.execSQL("ALTER TABLE despesas_v5 RENAME TO " + TABLE_DESPESAS);
+
+        criarIndicesDespesas(db);
+
+        // Totais semanais agrupados pelo id da categoria
+        db.execSQL("DROP TABLE " + TABLE_TOTAIS_SEMANAIS);
+        db.execSQL("CREATE TABLE " + TABLE_TOTAIS_SEMANAIS + " (" +
+                COLUMN_TOTAL_SEMANA + " INTEGER NOT NULL, " +
+                COLUMN_TOTAL_CATEGORIA_ID + " INTEGER NOT NULL, " +
+                COLUMN_TOTAL_VALOR + " REAL NOT NULL DEFAULT 0, " +
+                COLUMN_TOTAL_QUANTIDADE + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (" + COLUMN_TOTAL_SEMANA + ", " + COLUMN_TOTAL_CATEGORIA_ID + "))");
+        reconstruirTotaisSemanais(db, COLUMN_CATEGORIA_ID, COLUMN_VALOR, COLUMN_TOTAL_CATEGORIA_ID, COLUMN_TOTAL_VALOR);
+    }
+
+    /**
+     * v6: valores monetários em cêntimos inteiros.
+     * As despesas e o orçamento são reconstruídos com colunas INTEGER (arredondando ao cêntimo)
+     * e os totais semanais são recalculados a partir dos novos valores, já sem erros de arredondamento.
+     */
+    private static void migrarParaV6(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE despesas_v6 (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_DESCRICAO + " TEXT NOT NULL, " +
+                COLUMN_CATEGORIA_ID + " INTEGER NOT NULL REFERENCES " + TABLE_CATEGORIAS + "(" + COLUMN_CAT_ID + "), " +
+                COLUMN_VALOR_CENTIMOS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_RECORRENCIA + " TEXT, " +
+                COLUMN_TIMESTAMP + " INTEGER)");
+        db.execSQL("INSERT INTO despesas_v6 (" + COLUMN_ID + ", " + COLUMN_DESCRICAO + ", " + COLUMN_CATEGORIA_ID + ", " +
+                COLUMN_VALOR_CENTIMOS + ", " + COLUMN_RECORRENCIA + ", " + COLUMN_TIMESTAMP + ")" +
+                " SELECT " + COLUMN_ID + ", " + COLUMN_DESCRICAO + ", " + COLUMN_CATEGORIA_ID + ", " +
+                paraCentimos(COLUMN_VALOR) + ", " + COLUMN_RECORRENCIA + ", " + COLUMN_TIMESTAMP +
+                " FROM " + TABLE_DESPESAS);
+        db.execSQL("DROP TABLE " + TABLE_DESPESAS);
+        db.execSQL("ALTER TABLE despesas_v6 RENAME TO " + TABLE_DESPESAS);
+        criarIndicesDespesas(db);
+
+        db.execSQL("CREATE TABLE budget_v6 (" +
+                COLUMN_WEEK_START + " INTEGER PRIMARY KEY, " +
+                COLUMN_BUDGET_CENTIMOS + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("INSERT INTO budget_v6 (" + COLUMN_WEEK_START + ", " + COLUMN_BUDGET_CENTIMOS + ")" +
+                " SELECT " + COLUMN_WEEK_START + ", " + paraCentimos(COLUMN_BUDGET_VALUE) + " FROM " + TABLE_BUDGET);
+        db.execSQL("DROP TABLE " + TABLE_BUDGET);
+        db.execSQL("ALTER TABLE budget_v6 RENAME TO " + TABLE_BUDGET);
+
+        db.execSQL("DROP TABLE " + TABLE_TOTAIS_SEMANAIS);
+        db.execSQL("CREATE TABLE " + TABLE_TOTAIS_SEMANAIS + " (" +
+                COLUMN_TOTAL_SEMANA + " INTEGER NOT NULL, " +
+                COLUMN_TOTAL_CATEGORIA_ID + " INTEGER NOT NULL, " +
+                COLUMN_TOTAL_CENTIMOS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_TOTAL_QUANTIDADE + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (" + COLUMN_TOTAL_SEMANA + ", " + COLUMN_TOTAL_CATEGORIA_ID + "))");
+        reconstruirTotaisSemanais(db, COLUMN_CATEGORIA_ID, COLUMN_VALOR_CENTIMOS,
+                COLUMN_TOTAL_CATEGORIA_ID, COLUMN_TOTAL_CENTIMOS);
+    }
+
+    /**
+     * v7: pesquisa de texto nas descrições.
+     * Cria a tabela FTS4 (tokenizer unicode61 sem acentos, para "cafe" encontrar "Café")
+     * com o conteúdo na própria tabela de despesas, os triggers que a mantêm sincronizada
+     * e indexa as despesas existentes.
+     */
+    private static void migrarParaV7(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_DESPESAS_FTS + " USING fts4(" +
+                "content=\"" + TABLE_DESPESAS + "\", " +
+                COLUMN_DESCRICAO + ", " +
+                "tokenize=unicode61 \"remove_diacritics=1\")");
+        criarTriggersPesquisa(db);
+        db.execSQL("INSERT INTO " + TABLE_DESPESAS_FTS + "(" + TABLE_DESPESAS_FTS + ") VALUES ('rebuild')");
+    }
+
+    /*
+     * Triggers que mantêm o índice de texto igual às descrições. Numa tabela FTS4 com
+     * conteúdo externo, a entrada antiga tem de ser removida antes de a linha mudar
+     * (enquanto o texto antigo ainda pode ser lido) e a nova inserida depois.
+     * Se a tabela de despesas voltar a ser reconstruída, os triggers têm de ser recriados.
+     */
+    private static void criarTriggersPesquisa(SQLiteDatabase db) {
+        String apagarAntiga = "DELETE FROM " + TABLE_DESPESAS_FTS + " WHERE docid = old." + COLUMN_ID + "; ";
+        String inserirNova = "INSERT INTO " + TABLE_DESPESAS_FTS + " (docid, " + COLUMN_DESCRICAO + ")" +
+                " VALUES (new." + COLUMN_ID + ", new." + COLUMN_DESCRICAO + "); ";
+
+        db.execSQL("CREATE TRIGGER despesas_fts_bu BEFORE UPDATE OF " + COLUMN_DESCRICAO +
+                " ON " + TABLE_DESPESAS + " BEGIN " + apagarAntiga + "END");
+        db.execSQL("CREATE TRIGGER despesas_fts_bd BEFORE DELETE ON " + TABLE_DESPESAS +
+                " BEGIN " + apagarAntiga + "END");
+        db.execSQL("CREATE TRIGGER despesas_fts_au AFTER UPDATE OF " + COLUMN_DESCRICAO +
+                " ON " + TABLE_DESPESAS + " BEGIN " + inserirNova + "END");
+        db.execSQL("CREATE TRIGGER despesas_fts_ai AFTER INSERT ON " + TABLE_DESPESAS +
+                " BEGIN " + inserirNova + "END");
+    }
+
+    /**
+     * v8: sincronização com o remoto.
+     * Cada despesa passa a ter um uid aleatório (atribuído por trigger às despesas inseridas
+     * sem uid), que a identifica em todos os dispositivos. O registo de alterações guarda
+     * só a alteração mais recente de cada despesa/orçamento (chave única), pelo que o envio
+     * depende do número de registos alterados e não do tamanho da base de dados.
+     * É preenchido por triggers, na mesma transação que altera os dados, para todas as
+     * operações dos DAOs (individuais, em lote e recorrências).
+     */
+    private static void migrarParaV8(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_DESPESAS + " ADD COLUMN " + COLUMN_UID + " TEXT");
+        db.execSQL("UPDATE " + TABLE_DESPESAS + " SET " + COLUMN_UID + " = " + NOVO_UID);
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_DESPESAS_UID +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_UID + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_CHANGE_LOG + " (" +
+                COLUMN_LOG_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_LOG_TABELA + " TEXT NOT NULL, " +
+                COLUMN_LOG_CHAVE + " TEXT NOT NULL, " +
+                COLUMN_LOG_APAGADO + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_LOG_ALTERADO_EM + " INTEGER NOT NULL, " +
+                "UNIQUE (" + COLUMN_LOG_TABELA + ", " + COLUMN_LOG_CHAVE + "))");
+
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_ESTADO + " (" +
+                COLUMN_SYNC_CHAVE + " TEXT PRIMARY KEY, " +
+                COLUMN_SYNC_VALOR + " TEXT)");
+
+        criarTriggersSync(db);
+
+        // Os dados que já existem ainda não estão no remoto: ficam todos por enviar
+        db.execSQL("INSERT INTO " + TABLE_CHANGE_LOG + " (" + COLUMN_LOG_TABELA + ", " + COLUMN_LOG_CHAVE + ", " +
+                COLUMN_LOG_APAGADO + ", " + COLUMN_LOG_ALTERADO_EM + ")" +
+                " SELECT '" + TABLE_DESPESAS + "', " + COLUMN_UID + ", 0, " + COLUMN_TIMESTAMP + " FROM " + TABLE_DESPESAS);
+        db.execSQL("INSERT INTO " + TABLE_CHANGE_LOG + " (" + COLUMN_LOG_TABELA + ", " + COLUMN_LOG_CHAVE + ", " +
+                COLUMN_LOG_APAGADO + ", " + COLUMN_LOG_ALTERADO_EM + ")" +
+                " SELECT '" + TABLE_BUDGET + "', " + COLUMN_WEEK_START + ", 0, " + COLUMN_WEEK_START + " FROM " + TABLE_BUDGET);
+    }
+
+    /**
+     * v9: hash do conteúdo (dia, valor, descrição) das despesas importadas de extratos bancários,
+     * com índice único: voltar a importar o mesmo movimento é ignorado pelo próprio INSERT OR IGNORE.
+     * As despesas introduzidas à mão ficam com NULL (o índice único admite vários NULL).
+     */
+    private static void migrarParaV9(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_DESPESAS + " ADD COLUMN " + COLUMN_HASH_CONTEUDO + " TEXT");
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_DESPESAS_HASH +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_HASH_CONTEUDO + ")");
+    }
+
+    /**
+     * v10: dia e semana como inteiros (ver DateUtils), calculados em java.time no fuso local.
+     * As despesas ganham day_index e week_index (indexados), preenchidos a partir do timestamp;
+     * os totais semanais e o orçamento passam a ter o índice da semana como chave, pelo que
+     * as consultas semanais deixam de depender de limites em milissegundos (que mudam com a
+     * hora de verão e com o fuso). O orçamento mantém start_of_week, que continua a ser a chave
+     * na sincronização e nas cópias de segurança.
+     *
+     * O preenchimento não é registado em CHANGE_LOG (o conteúdo das despesas não muda).
+     */
+    private static void migrarParaV10(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_DESPESAS + " ADD COLUMN " + COLUMN_DIA + " INTEGER");
+        db.execSQL("ALTER TABLE " + TABLE_DESPESAS + " ADD COLUMN " + COLUMN_SEMANA + " INTEGER");
+
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_SYNC_ESTADO + " (" + COLUMN_SYNC_CHAVE + ")" +
+                " VALUES ('" + SYNC_A_APLICAR_REMOTO + "')");
+        try (Cursor c = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_TIMESTAMP + " FROM " + TABLE_DESPESAS +
+                " ORDER BY " + COLUMN_TIMESTAMP, null);
+             SQLiteStatement indices = db.compileStatement("UPDATE " + TABLE_DESPESAS +
+                     " SET " + COLUMN_DIA + " = ?, " + COLUMN_SEMANA + " = ? WHERE " + COLUMN_ID + " = ?")) {
+            while (c.moveToNext()) {
+                int dia = DateUtils.diaDe(c.getLong(1));
+                indices.bindLong(1, dia);
+                indices.bindLong(2, DateUtils.semanaDoDia(dia));
+                indices.bindLong(3, c.getLong(0));
+                indices.executeUpdateDelete();
+            }
+        }
+        db.delete(TABLE_SYNC_ESTADO, COLUMN_SYNC_CHAVE + " = ?", new String[]{SYNC_A_APLICAR_REMOTO});
+
+        // (semana, timestamp): a lista de uma semana sai do índice já ordenada
+        db.execSQL("CREATE INDEX " + INDEX_DESPESAS_SEMANA +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_SEMANA + ", " + COLUMN_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX " + INDEX_DESPESAS_DIA +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_DIA + ")");
+
+        db.execSQL("DROP TABLE " + TABLE_TOTAIS_SEMANAIS);
+        db.execSQL("CREATE TABLE " + TABLE_TOTAIS_SEMANAIS + " (" +
+                COLUMN_TOTAL_SEMANA_INDICE + " INTEGER NOT NULL, " +
+                COLUMN_TOTAL_CATEGORIA_ID + " INTEGER NOT NULL, " +
+                COLUMN_TOTAL_CENTIMOS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_TOTAL_QUANTIDADE + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (" + COLUMN_TOTAL_SEMANA_INDICE + ", " + COLUMN_TOTAL_CATEGORIA_ID + "))");
+        reconstruirTotaisSemanais(db);
+
+        // Orçamento: orçamentos criados noutro fuso podem cair na mesma semana; fica o mais recente
+        db.execSQL("CREATE TABLE budget_v10 (" +
+                COLUMN_BUDGET_SEMANA + " INTEGER PRIMARY KEY, " +
+                COLUMN_WEEK_START + " INTEGER NOT NULL, " +
+                COLUMN_BUDGET_CENTIMOS + " INTEGER NOT NULL DEFAULT 0)");
+        try (Cursor c = db.rawQuery("SELECT " + COLUMN_WEEK_START + ", " + COLUMN_BUDGET_CENTIMOS +
+                " FROM " + TABLE_BUDGET + " ORDER BY " + COLUMN_WEEK_START, null);
+             SQLiteStatement inserir = db.compileStatement("INSERT OR REPLACE INTO budget_v10 (" +
+                     COLUMN_BUDGET_SEMANA + ", " + COLUMN_WEEK_START + ", " + COLUMN_BUDGET_CENTIMOS + ") VALUES (?, ?, ?)")) {
+            while (c.moveToNext()) {
+                inserir.bindLong(1, DateUtils.semanaDe(c.getLong(0)));
+                inserir.bindLong(2, c.getLong(0));
+                inserir.bindLong(3, c.getLong(1));
+                inserir.executeInsert();
+            }
+        }
+        db.execSQL("DROP TABLE " + TABLE_BUDGET);
+        db.execSQL("ALTER TABLE budget_v10 RENAME TO " + TABLE_BUDGET);
+        criarTriggersSyncBudget(db); // os triggers saem com a tabela antiga
+    }
+
+    // Expressão SQL que gera um uid aleatório (128 bits em hexadecimal)
+    private static final String NOVO_UID = "lower(hex(randomblob(16)))";
+
+    /**
+     * Chave de SYNC_STATE presente apenas durante a transação que aplica alterações
+     * recebidas do remoto: enquanto existir, os triggers não registam alterações
+     * (para não voltar a enviar o que acabou de ser recebido).
+     */
+    static final String SYNC_A_APLICAR_REMOTO = "a_aplicar_remoto";
+
+    private static final String SEM_APLICACAO_REMOTA =
+            "NOT EXISTS (SELECT 1 FROM " + TABLE_SYNC_ESTADO +
+                    " WHERE " + COLUMN_SYNC_CHAVE + " = '" + SYNC_A_APLICAR_REMOTO + "')";
+
+    // Instante atual em milissegundos, em SQL
+    private static final String AGORA_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    // Início das instruções dos triggers que registam uma alteração em CHANGE_LOG
+    private static final String REGISTAR_ALTERACAO = "INSERT OR REPLACE INTO " + TABLE_CHANGE_LOG + " (" +
+            COLUMN_LOG_TABELA + ", " + COLUMN_LOG_CHAVE + ", " + COLUMN_LOG_APAGADO + ", " + COLUMN_LOG_ALTERADO_EM + ")";
+
+    // Triggers que atribuem o uid às despesas novas e registam as alterações em CHANGE_LOG
+    private static void criarTriggersSync(SQLiteDatabase db) {
+        // O uid é atribuído antes de registar a inserção (o UPDATE não volta a registar: old.uid é NULL)
+        db.execSQL("CREATE TRIGGER despesas_sync_ai AFTER INSERT ON " + TABLE_DESPESAS + " BEGIN" +
+                " UPDATE " + TABLE_DESPESAS + " SET " + COLUMN_UID + " = " + NOVO_UID +
+                " WHERE " + COLUMN_ID + " = new." + COLUMN_ID + " AND " + COLUMN_UID + " IS NULL;" +
+                " " + REGISTAR_ALTERACAO + " SELECT '" + TABLE_DESPESAS + "', " + COLUMN_UID + ", 0, " + AGORA_MILLIS +
+                " FROM " + TABLE_DESPESAS + " WHERE " + COLUMN_ID + " = new." + COLUMN_ID +
+                " AND " + SEM_APLICACAO_REMOTA + "; END");
+        db.execSQL("CREATE TRIGGER despesas_sync_au AFTER UPDATE ON " + TABLE_DESPESAS +
+                " WHEN old." + COLUMN_UID + " IS NOT NULL AND " + SEM_APLICACAO_REMOTA + " BEGIN " +
+                REGISTAR_ALTERACAO + " VALUES ('" + TABLE_DESPESAS + "', new." + COLUMN_UID + ", 0, " + AGORA_MILLIS + "); END");
+        db.execSQL("CREATE TRIGGER despesas_sync_ad AFTER DELETE ON " + TABLE_DESPESAS +
+                " WHEN old." + COLUMN_UID + " IS NOT NULL AND " + SEM_APLICACAO_REMOTA + " BEGIN " +
+                REGISTAR_ALTERACAO + " VALUES ('" + TABLE_DESPESAS + "', old." + COLUMN_UID + ", 1, " + AGORA_MILLIS + "); END");
+
+        criarTriggersSyncBudget(db);
+    }
+
+    // Orçamentos: a chave é o início da semana (o REPLACE do BudgetDAO chega como inserção)
+    private static void criarTriggersSyncBudget(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER budget_sync_ai AFTER INSERT ON " + TABLE_BUDGET +
+                " WHEN " + SEM_APLICACAO_REMOTA + " BEGIN " +
+                REGISTAR_ALTERACAO + " VALUES ('" + TABLE_BUDGET + "', CAST(new." + COLUMN_WEEK_START + " AS TEXT), 0, " + AGORA_MILLIS + "); END");
+        db.execSQL("CREATE TRIGGER budget_sync_au AFTER UPDATE ON " + TABLE_BUDGET +
+                " WHEN " + SEM_APLICACAO_REMOTA + " BEGIN " +
+                REGISTAR_ALTERACAO + " VALUES ('" + TABLE_BUDGET + "', CAST(new." + COLUMN_WEEK_START + " AS TEXT), 0, " + AGORA_MILLIS + "); END");
+        db.execSQL("CREATE TRIGGER budget_sync_ad AFTER DELETE ON " + TABLE_BUDGET +
+                " WHEN " + SEM_APLICACAO_REMOTA + " BEGIN " +
+                REGISTAR_ALTERACAO + " VALUES ('" + TABLE_BUDGET + "', CAST(old." + COLUMN_WEEK_START + " AS TEXT), 1, " + AGORA_MILLIS + "); END");
+    }
+
+    // Expressão SQL que converte uma coluna REAL em euros para cêntimos inteiros
+    private static String paraCentimos(String coluna) {
+        return "CAST(ROUND(COALESCE(" + coluna + ", 0) * 100) AS INTEGER)";
+    }
+
+    // Índices da tabela de despesas (recriados sempre que a tabela é reconstruída)
+    private static void criarIndicesDespesas(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_DESPESAS_TIMESTAMP +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX " + INDEX_DESPESAS_CATEGORIA_TIMESTAMP +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_CATEGORIA_ID + ", " + COLUMN_TIMESTAMP + ")");
+        db.execSQL("CREATE INDEX " + INDEX_DESPESAS_RECORRENCIA +
+                " ON " + TABLE_DESPESAS + " (" + COLUMN_RECORRENCIA + ")");
+    }
+
+    /**
+     * Indica se uma recorrência gera novas despesas (Semanal ou Mensal).
+     */
+    static boolean eRecorrente(String recorrencia) {
+        return RECORRENCIA_SEMANAL.equalsIgnoreCase(recorrencia)
+                || RECORRENCIA_MENSAL.equalsIgnoreCase(recorrencia);
+    }
+
+    /**
+     * Data da ocorrência seguinte a uma despesa registada no instante indicado:
+     * início da semana seguinte (Semanal) ou primeiro dia do mês seguinte (Mensal).
+     */
+    static long proximaOcorrencia(String recorrencia, long timestamp) {
+        if (RECORRENCIA_MENSAL.equalsIgnoreCase(recorrencia)) {
+            return DateUtils.getNextMonthStartMillis(timestamp);
+        }
+        return DateUtils.getNextWeekStartMillis(timestamp);
+    }
+
+    /**
+     * Recalcula por completo a tabela de totais semanais a partir das despesas.
+     * Como cada despesa já guarda a sua semana, basta agrupar numa só instrução.
+     */
+    static void reconstruirTotaisSemanais(SQLiteDatabase db) {
+        db.delete(TABLE_TOTAIS_SEMANAIS, null, null);
+        db.execSQL("INSERT INTO " + TABLE_TOTAIS_SEMANAIS + " (" + COLUMN_TOTAL_SEMANA_INDICE + ", " +
+                COLUMN_TOTAL_CATEGORIA_ID + ", " + COLUMN_TOTAL_CENTIMOS + ", " + COLUMN_TOTAL_QUANTIDADE + ")" +
+                " SELECT " + COLUMN_SEMANA + ", " + COLUMN_CATEGORIA_ID + ", SUM(" + COLUMN_VALOR_CENTIMOS + "), COUNT(*)" +
+                " FROM " + TABLE_DESPESAS + " GROUP BY " + COLUMN_SEMANA + ", " + COLUMN_CATEGORIA_ID);
+    }
+
+    /*
+     * Versão das migrações anteriores à v10 (totais pelo início da semana em milissegundos),
+     * com os nomes das colunas de categoria e valor (categoria pelo nome até à v4, valores REAL
+     * até à v5). As despesas são percorridas por ordem cronológica, pelo que só é preciso
+     * manter em memória as categorias de uma semana de cada vez. A chave é lida como texto
+     * e a soma como double (exata para cêntimos); numa coluna INTEGER o SQLite guarda ambas como inteiros.
+     */
+    private static void reconstruirTotaisSemanais(SQLiteDatabase db, String colunaCategoria, String colunaValor,
+                                                  String colunaTotalCategoria, String colunaTotalValor) {
+        db.delete(TABLE_TOTAIS_SEMANAIS, null, null);
+
+        Map<String, double[]> semanaAtual = new LinkedHashMap<>(); // categoria → {total, quantidade}
+        long inicioSemana = Long.MIN_VALUE;
+        long fimSemana = Long.MIN_VALUE; // exclusivo
+
+        try (Cursor c = db.query(
+                TABLE_DESPESAS,
+                new String[]{COLUMN_TIMESTAMP, colunaCategoria, colunaValor},
+                null, null, null, null,
+                COLUMN_TIMESTAMP + " ASC"
+        )) {
+            while (c.moveToNext()) {
+                long timestamp = c.getLong(0);
+                String categoria = c.isNull(1) ? "" : c.getString(1);
+                double valor = c.getDouble(2);
+
+                // Só recalcula os limites da semana quando a despesa sai da semana corrente
+                if (timestamp < inicioSemana || timestamp >= fimSemana) {
+                    guardarTotaisSemana(db, colunaTotalCategoria, colunaTotalValor, inicioSemana, semanaAtual);
+                    inicioSemana = DateUtils.getWeekStartMillis(timestamp);
+                    fimSemana = DateUtils.getWeekStartMillis(inicioSemana + 8L * 24 * 60 * 60 * 1000);
+                }
+
+                double[] acumulado = semanaAtual.get(categoria);
+                if (acumulado == null) {
+                    acumulado = new double[2];
+                    semanaAtual.put(categoria, acumulado);
+                }
+                acumulado[0] += valor;
+                acumulado[1] += 1;
+            }
+        }
+        guardarTotaisSemana(db, colunaTotalCategoria, colunaTotalValor, inicioSemana, semanaAtual);
+    }
+
+    // Grava os totais acumulados de uma semana e limpa o acumulador
+    private static void guardarTotaisSemana(SQLiteDatabase db, String colunaCategoria, String colunaValor,
+                                            long inicioSemana, Map<String, double[]> totais) {
+        for (Map.Entry<String, double[]> e : totais.entrySet()) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_TOTAL_SEMANA, inicioSemana);
+            values.put(colunaCategoria, e.getKey());
+            values.put(colunaValor, e.getValue()[0]);
+            values.put(COLUMN_TOTAL_QUANTIDADE, (long) e.getValue()[1]);
+            db.insert(TABLE_TOTAIS_SEMANAIS, null, values);
+        }
+        totais.clear();
     }
 }
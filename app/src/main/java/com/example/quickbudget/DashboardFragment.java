@@ -28,11 +28,9 @@ import com.github.mikephil.charting.data.PieData;
 import com.github.mikephil.charting.data.PieDataSet;
 import com.github.mikephil.charting.data.PieEntry;
 
-import java.text.Normalizer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -45,9 +43,11 @@ import java.util.Map;
  *  - Distribuição de gastos por categoria (gráfico de pizza)
  *  - Possibilidade de atualizar o valor do orçamento
  *
- * Atualiza automaticamente os dados após edições, exclusões ou inserções.
+ * Os dados da semana são lidos uma vez e depois mantidos em memória: cada inserção,
+ * edição ou eliminação chega como um {@link AlteracaoDados} e é aplicada como diferença
+ * aos totais, aos gastos por categoria e à lista de recentes, sem voltar a ler a semana.
  */
-public class DashboardFragment extends Fragment implements DetalheDespesaDialogFragment.OnDespesaAlteradaListener {
+public class DashboardFragment extends Fragment {
 
     // Elementos da interface
     private RecyclerView rvRecentExpenses;
@@ -59,12 +59,28 @@ public class DashboardFragment extends Fragment implements DetalheDespesaDialogF
     private EditText editNewBudget;
     private Button buttonUpdateBudget;
 
+    private QuickBudgetRepository repository;
+    private final Formatador formatador = new Formatador();
+
+    // Estado da semana em memória (ajustado por aplicarAlteracao)
+    private static final int NUM_RECENTES = 2;
+    private int semana;                   // índice da semana atual (ver DateUtils)
+    private long inicioSemana, fimSemana; // limites da semana, para filtrar as alterações publicadas
+    private long totalSemana, budgetSemana;
+    private final Map<Integer, Long> gastosPorCategoria = new LinkedHashMap<>();
+    private Categorias categorias;
+    private final List<Despesa> recentes = new ArrayList<>();
+    private int cargasPendentes = 0;               // leituras em segundo plano ainda por chegar
+    private boolean alteradoDuranteCarga = false;  // alteração chegou durante uma leitura (reler tudo)
+    private PieDataSet conjuntoGrafico;
+
     public DashboardFragment() {}
 
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_dashboard, container, false);
+        repository = QuickBudgetRepository.getInstance(requireContext());
 
         // Liga elementos do layout
         rvRecentExpenses = view.findViewById(R.id.recyclerViewRecentExpenses);
@@ -92,52 +108,57 @@ public class DashboardFragment extends Fragment implements DetalheDespesaDialogF
                 .setPositiveButton("Sim", (dialog, which) -> requireActivity().finishAffinity())
                 .show());
 
+        // Vista nova: o gráfico é montado de novo e as leituras da vista anterior já não chegam
+        conjuntoGrafico = null;
+        cargasPendentes = 0;
+
         // Inicializa componentes
         setupRecyclerView();
         setupPieChart();
         setupBudgetUpdate();
 
-        // Atualiza todos os dados iniciais
-        refreshAll();
-
         return view;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        // Alterações às despesas → diferenças aplicadas ao estado em memória
+        repository.observarAlteracoes(getViewLifecycleOwner(), this::aplicarAlteracao);
+
+        // Carrega os dados iniciais
+        refreshAll();
+    }
+
     // Configura o RecyclerView das despesas recentes
     private void setupRecyclerView() {
         rvRecentExpenses.setHasFixedSize(true);
         rvRecentExpenses.setLayoutManager(new LinearLayoutManager(getContext()));
     }
 
-    // Atualiza lista de despesas da semana atual (mostra as 2 mais recentes)
+    // Lê as despesas recentes da semana atual (as NUM_RECENTES mais recentes)
     private void atualizarDespesasRecentes() {
-        DespesaDAO dao = new DespesaDAO(requireContext());
-        long inicioSemana = DateUtils.getWeekStartMillis();
-        long fimSemana = DateUtils.getWeekEndMillis();
-
-        List<Despesa> todas = dao.listarTodas();
-        dao.fechar();
-
-        List<Despesa> semana = new ArrayList<>();
-        for (Despesa d : todas) {
-            if (d.getTimestamp() >= inicioSemana && d.getTimestamp() <= fimSemana) {
-                semana.add(d);
-            }
-        }
-
-        // Ordena por data decrescente e limita a 2 resultados
-        semana.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
-        List<Despesa> recentes = semana.size() > 2 ? semana.subList(0, 2) : semana;
+        // A ordenação e o limite são feitos na própria consulta (em segundo plano)
+        cargasPendentes++;
+        repository.listarRecentes(semana, NUM_RECENTES)
+                .observe(getViewLifecycleOwner(), lista -> {
+                    if (!terminarCarga() || lista == null) return;
+                    recentes.clear();
+                    recentes.addAll(lista);
+                    mostrarDespesasRecentes();
+                });
+    }
 
+    // Mostra as despesas recentes em memória
+    private void mostrarDespesasRecentes() {
         if (adapter == null) {
             adapter = new DespesaAdapter(recentes, despesa -> {
                 DetalheDespesaDialogFragment dialog = DetalheDespesaDialogFragment.nova(despesa.getId());
-                dialog.setOnDespesaAlteradaListener(this);
                 dialog.show(getParentFragmentManager(), "DetalheDespesa");
             });
         } else {
-            adapter.setItems(recentes);
-            adapter.notifyDataSetChanged();
+            adapter.setItems(recentes); // só as linhas alteradas são atualizadas
         }
 
         if (rvRecentExpenses.getAdapter() != adapter) rvRecentExpenses.setAdapter(adapter);
@@ -153,15 +174,21 @@ public class DashboardFragment extends Fragment implements DetalheDespesaDialogF
             }
 
             try {
-                double valor = Double.parseDouble(valueStr.replace(",", "."));
+                long valor = Dinheiro.parse(valueStr);
                 long inicioSemana = DateUtils.getWeekStartMillis();
 
-                BudgetDAO bdao = new BudgetDAO(requireContext());
-                bdao.setBudget(valor, inicioSemana);
-                bdao.fechar();
-
-                refreshAll(); // atualiza após guardar
-                editNewBudget.setText("");
+                buttonUpdateBudget.setEnabled(false);
+                repository.setBudget(valor, inicioSemana).observe(getViewLifecycleOwner(), ok -> {
+                    buttonUpdateBudget.setEnabled(true);
+                    if (ok == null) {
+                        editNewBudget.setError("Erro ao guardar o orçamento!");
+                        return;
+                    }
+                    // Só o orçamento mudou: não é preciso voltar a ler a semana
+                    budgetSemana = valor;
+                    mostrarTotais();
+                    editNewBudget.setText("");
+                });
             } catch (NumberFormatException ignored) {
                 editNewBudget.setError("Valor de orçamento inválido!");
             }
@@ -181,101 +208,205 @@ public class DashboardFragment extends Fragment implements DetalheDespesaDialogF
         legend.setDrawInside(false);
     }
 
-    // Atualiza todos os dados da semana (lista, totais, gráfico)
+    // Volta a ler todos os dados da semana (lista, totais, gráfico)
     public void refreshAll() {
-        DespesaDAO ddao = new DespesaDAO(requireContext());
-        List<Despesa> despesas = ddao.listarTodas();
-        ddao.fechar();
-
-        double total = 0.0;
-        Map<String, Double> gastosPorCategoria = new HashMap<>();
-
-        long inicioSemana = DateUtils.getWeekStartMillis();
-        long fimSemana = DateUtils.getWeekEndMillis();
-
-        // Filtra despesas da semana e soma valores
-        List<Despesa> semana = new ArrayList<>();
-        for (Despesa d : despesas) {
-            if (d.getTimestamp() >= inicioSemana && d.getTimestamp() <= fimSemana) {
-                semana.add(d);
-                total += d.getValor();
-                gastosPorCategoria.put(
-                        d.getCategoria(),
-                        gastosPorCategoria.getOrDefault(d.getCategoria(), 0.0) + d.getValor()
-                );
+        if (getView() == null) return; // vista já destruída
+
+        semana = DateUtils.semanaAtual();
+        inicioSemana = DateUtils.inicioSemana(semana);
+        fimSemana = DateUtils.inicioSemana(semana + 1) - 1;
+        alteradoDuranteCarga = false;
+
+        // Atualiza lista e resumo (lidos em segundo plano)
+        atualizarDespesasRecentes();
+        cargasPendentes++;
+        repository.carregarResumoSemana(semana)
+                .observe(getViewLifecycleOwner(), this::mostrarResumo);
+    }
+
+    /*
+     * Chamado quando chega o resultado de uma leitura. Uma alteração recebida enquanto havia
+     * leituras em curso pode não estar incluída nelas: nesse caso volta a ler tudo
+     * e devolve false (o resultado deve ser ignorado).
+     */
+    private boolean terminarCarga() {
+        cargasPendentes--;
+        if (cargasPendentes == 0 && alteradoDuranteCarga) {
+            refreshAll();
+            return false;
+        }
+        return true;
+    }
+
+    // Guarda o resumo lido e mostra totais e gráfico
+    private void mostrarResumo(QuickBudgetRepository.ResumoSemana resumo) {
+        if (!terminarCarga() || resumo == null) return;
+
+        totalSemana = resumo.total;
+        budgetSemana = resumo.budget;
+        categorias = resumo.categorias;
+        gastosPorCategoria.clear();
+        gastosPorCategoria.putAll(resumo.porCategoria);
+
+        mostrarTotais();
+        mostrarGrafico(true);
+    }
+
+    /**
+     * Aplica uma alteração às despesas ao estado em memória, em tempo constante:
+     * retira a linha antiga e soma a nova aos totais, à categoria e à lista de recentes.
+     * Lotes e categorias ainda desconhecidas levam a recarregar a semana,
+     * mas só se o intervalo alterado tocar na semana atual.
+     */
+    private void aplicarAlteracao(AlteracaoDados alteracao) {
+        if (!alteracao.afeta(DBHelper.TABLE_DESPESAS, inicioSemana, fimSemana)
+                && !alteracao.afeta(DBHelper.TABLE_BUDGET, inicioSemana, fimSemana)) return;
+
+        if (cargasPendentes > 0) {
+            alteradoDuranteCarga = true;
+            return;
+        }
+        if (alteracao.tipo == AlteracaoDados.Tipo.LOTE || categorias == null
+                || !categoriaConhecida(alteracao.antiga) || !categoriaConhecida(alteracao.nova)) {
+            refreshAll();
+            return;
+        }
+
+        if (AlteracaoDados.dentro(alteracao.antiga, inicioSemana, fimSemana)) {
+            somarGasto(alteracao.antiga, -1);
+        }
+        if (AlteracaoDados.dentro(alteracao.nova, inicioSemana, fimSemana)) {
+            somarGasto(alteracao.nova, 1);
+        }
+        atualizarRecentes(alteracao);
+
+        mostrarTotais();
+        mostrarGrafico(false);
+    }
+
+    private boolean categoriaConhecida(Despesa d) {
+        return d == null || categorias.idDe(d.getCategoria()) != -1;
+    }
+
+    // Soma (sinal 1) ou retira (sinal -1) o valor da despesa ao total e à sua categoria
+    private void somarGasto(Despesa d, int sinal) {
+        long valor = sinal * d.getValorCentimos();
+        int categoriaId = categorias.idDe(d.getCategoria());
+        totalSemana += valor;
+
+        Long atual = gastosPorCategoria.get(categoriaId);
+        long novo = (atual != null ? atual : 0) + valor;
+        if (novo == 0) gastosPorCategoria.remove(categoriaId);
+        else gastosPorCategoria.put(categoriaId, novo);
+    }
+
+    /*
+     * Atualiza a lista de recentes: retira a versão antiga e coloca a nova por ordem de data.
+     * Se a lista ficar com menos despesas do que devia (ex: eliminou-se uma das recentes),
+     * a despesa seguinte não está em memória e só a lista é lida de novo.
+     */
+    private void atualizarRecentes(AlteracaoDados alteracao) {
+        int id = alteracao.antiga != null ? alteracao.antiga.getId() : alteracao.nova.getId();
+        boolean estava = false;
+        for (int i = 0; i < recentes.size(); i++) {
+            if (recentes.get(i).getId() == id) {
+                recentes.remove(i);
+                estava = true;
+                break;
             }
         }
 
-        // Atualiza lista e orçamento
-        atualizarDespesasRecentes();
-        BudgetDAO bdao = new BudgetDAO(requireContext());
-        double budget = bdao.getBudgetPorSemana(inicioSemana);
-        bdao.fechar();
+        Despesa nova = alteracao.nova;
+        if (AlteracaoDados.dentro(nova, inicioSemana, fimSemana)) {
+            int pos = 0;
+            while (pos < recentes.size() && maisRecente(recentes.get(pos), nova)) pos++;
+            if (pos < NUM_RECENTES) recentes.add(pos, nova);
+            if (recentes.size() > NUM_RECENTES) recentes.remove(recentes.size() - 1);
+        }
 
-        double restante = budget - total;
-        double mediaPorDia = total / 7.0;
+        if (estava && recentes.size() < NUM_RECENTES) {
+            atualizarDespesasRecentes();
+        } else if (adapter != null) {
+            mostrarDespesasRecentes();
+        }
+    }
+
+    // Mesma ordem da consulta de recentes (timestamp decrescente)
+    private static boolean maisRecente(Despesa a, Despesa b) {
+        return a.getTimestamp() >= b.getTimestamp();
+    }
+
+    // Mostra totais, orçamento e progresso a partir do estado em memória
+    private void mostrarTotais() {
+        long total = totalSemana;
+        long budget = budgetSemana;
+
+        long restante = budget - total;
+        long mediaPorDia = Math.round(total / 7.0);
 
         // Atualiza textos e cores de estado
-        tvAvgDay.setText(String.format(Locale.getDefault(), "€%.2f", mediaPorDia));
-        tvWeeklyBudget.setText(String.format("Orçamento semanal atual: €%.2f", budget));
-        tvTotalSpent.setText(String.format("€%.2f", total));
-        tvBudgetRemaining.setText(String.format("€%.2f", restante));
+        formatador.mostrarMoeda(tvAvgDay, null, mediaPorDia);
+        formatador.mostrarMoeda(tvWeeklyBudget, "Orçamento semanal atual: ", budget);
+        formatador.mostrarMoeda(tvTotalSpent, null, total);
+        formatador.mostrarMoeda(tvBudgetRemaining, null, restante);
 
         if (restante < 0) {
             tvBudgetRemaining.setTextColor(Color.parseColor("#E74C3C"));
-            tvLeftOf.setText(String.format("Excedeu o orçamento de €%.2f", budget));
+            formatador.mostrarMoeda(tvLeftOf, "Excedeu o orçamento de ", budget);
         } else {
             tvBudgetRemaining.setTextColor(Color.parseColor("#3FA4CE"));
-            tvLeftOf.setText(String.format("Restante de €%.2f", budget));
+            formatador.mostrarMoeda(tvLeftOf, "Restante de ", budget);
         }
 
         // Atualiza barra de progresso com animação
-        double percent = (budget > 0) ? (total / budget) * 100.0 : 0.0;
+        double percent = (budget > 0) ? (total * 100.0) / budget : 0.0;
         int clampedProgress = (int) Math.min(percent, 100);
 
-        tvProgressDetail.setText(String.format(Locale.getDefault(), "%.0f%%", percent));
+        formatador.mostrarPercentagem(tvProgressDetail, percent);
         int corProgresso = percent > 100 ? Color.parseColor("#E74C3C") : Color.parseColor("#3FA4CE");
         int corFundo = Color.parseColor("#E0E0E0");
 
         progressBar.setProgressTintList(android.content.res.ColorStateList.valueOf(corProgresso));
         progressBar.setProgressBackgroundTintList(android.content.res.ColorStateList.valueOf(corFundo));
 
-        ObjectAnimator animation = ObjectAnimator.ofInt(progressBar, "progress", 0, clampedProgress);
+        ObjectAnimator animation = ObjectAnimator.ofInt(progressBar, "progress", progressBar.getProgress(), clampedProgress);
         animation.setDuration(800);
         animation.start();
+    }
 
-        // Monta gráfico de pizza
+    /*
+     * Desenha o gráfico de pizza a partir dos gastos por categoria em memória.
+     * O conjunto de dados e a configuração do gráfico são criados uma só vez;
+     * nas atualizações seguintes só as entradas (uma por categoria) são substituídas.
+     */
+    private void mostrarGrafico(boolean animar) {
         List<PieEntry> entries = new ArrayList<>();
         List<Integer> cores = new ArrayList<>();
 
-        for (Map.Entry<String, Double> e : gastosPorCategoria.entrySet()) {
-            entries.add(new PieEntry(e.getValue().floatValue(), e.getKey()));
-
-            String chave = Normalizer.normalize(e.getKey().toLowerCase(), Normalizer.Form.NFD)
-                    .replaceAll("[^\\p{ASCII}]", "");
-
-            // Define cor por categoria
-            switch (chave) {
-                case "alimentacao": cores.add(Color.parseColor("#E53935")); break;
-                case "transporte": cores.add(Color.parseColor("#1E88E5")); break;
-                case "lazer": cores.add(Color.parseColor("#8E24AA")); break;
-                case "saude": cores.add(Color.parseColor("#43A047")); break;
-                case "casa": cores.add(Color.parseColor("#6D4C41")); break;
-                case "educacao": cores.add(Color.parseColor("#FFA726")); break;
-                case "supermercado": cores.add(Color.parseColor("#FDD835")); break;
-                case "subscricao": cores.add(Color.parseColor("#00ACC1")); break;
-                case "outro": cores.add(Color.parseColor("#9E9E9E")); break;
-                default: cores.add(Color.parseColor("#00897B")); break;
-            }
+        // Nome e cor de cada categoria vêm do registo (consulta direta pelo id)
+        for (Map.Entry<Integer, Long> e : gastosPorCategoria.entrySet()) {
+            int categoriaId = e.getKey();
+            entries.add(new PieEntry((float) Dinheiro.emEuros(e.getValue()), categorias.nome(categoriaId)));
+            cores.add(categorias.cor(categoriaId));
+        }
+
+        if (conjuntoGrafico != null) {
+            conjuntoGrafico.setValues(entries);
+            conjuntoGrafico.setColors(cores);
+            pieChart.getData().notifyDataChanged();
+            pieChart.notifyDataSetChanged();
+            if (animar) pieChart.animateY(1000, Easing.EaseInOutQuad);
+            pieChart.invalidate();
+            return;
         }
 
-        PieDataSet dataSet = new PieDataSet(entries, "");
-        dataSet.setColors(cores);
-        dataSet.setValueTextSize(13f);
-        dataSet.setValueTextColor(Color.WHITE);
-        dataSet.setValueTypeface(Typeface.DEFAULT_BOLD);
+        conjuntoGrafico = new PieDataSet(entries, "");
+        conjuntoGrafico.setColors(cores);
+        conjuntoGrafico.setValueTextSize(13f);
+        conjuntoGrafico.setValueTextColor(Color.WHITE);
+        conjuntoGrafico.setValueTypeface(Typeface.DEFAULT_BOLD);
 
-        PieData data = new PieData(dataSet);
+        PieData data = new PieData(conjuntoGrafico);
         pieChart.setData(data);
 
         // Configuração visual do gráfico
@@ -299,20 +430,7 @@ public class DashboardFragment extends Fragment implements DetalheDespesaDialogF
         legenda.setYEntrySpace(5f);
 
         pieChart.setExtraOffsets(0, 0, 0, 10);
-        pieChart.animateY(1000, Easing.EaseInOutQuad);
+        if (animar) pieChart.animateY(1000, Easing.EaseInOutQuad);
         pieChart.invalidate();
     }
-
-    // Atualiza lista ao regressar ao fragmento
-    @Override
-    public void onResume() {
-        super.onResume();
-        atualizarDespesasRecentes();
-    }
-
-    // Atualiza tudo quando uma despesa é alterada (editar/eliminar)
-    @Override
-    public void onDespesaAlterada() {
-        refreshAll();
-    }
 }
@@ -0,0 +1,65 @@
+package com.example.quickbudget;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * DatabaseManager
+ * ----------------
+ * Mantém uma única instância do DBHelper (e da ligação SQLite) para todo o processo.
+ * Os DAOs pedem a ligação com {@link #abrir()} e devolvem-na com {@link #libertar()};
+ * a base de dados só é realmente fechada quando já ninguém a está a utilizar.
+ *
+ * Evita o custo de abrir e fechar o ficheiro da base de dados em cada operação.
+ * Os caches partilhados (ex: orçamentos) vivem enquanto a ligação estiver aberta.
+ */
+public final class DatabaseManager {
+
+    private static DatabaseManager instance;
+
+    private final DBHelper dbHelper;
+    private SQLiteDatabase db;
+    private CacheBudgets cacheBudgets;
+    private int referencias = 0; // número de utilizadores ativos da ligação
+
+    private DatabaseManager(Context context) {
+        dbHelper = new DBHelper(context.getApplicationContext());
+    }
+
+    // Devolve a instância partilhada (criada na primeira utilização)
+    public static synchronized DatabaseManager getInstance(Context context) {
+        if (instance == null) instance = new DatabaseManager(context);
+        return instance;
+    }
+
+    /**
+     * Obtém a ligação partilhada, abrindo-a apenas se ainda não estiver aberta.
+     * Cada chamada deve ser compensada por uma chamada a {@link #libertar()}.
+     */
+    public synchronized SQLiteDatabase abrir() {
+        if (db == null || !db.isOpen()) {
+            db = dbHelper.getWritableDatabase();
+            cacheBudgets = new CacheBudgets(); // o ficheiro pode ter mudado enquanto esteve fechada
+        }
+        referencias++;
+        return db;
+    }
+
+    // Cache de orçamentos da ligação aberta (ver BudgetDAO)
+    synchronized CacheBudgets getCacheBudgets() {
+        return cacheBudgets;
+    }
+
+    /**
+     * Liberta uma referência à ligação.
+     * Quando a última referência é libertada, a base de dados é fechada.
+     */
+    public synchronized void libertar() {
+        if (referencias == 0) return;
+        referencias--;
+        if (referencias == 0) {
+            dbHelper.close();
+            db = null;
+        }
+    }
+}
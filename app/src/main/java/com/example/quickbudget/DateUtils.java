@@ -1,8 +1,12 @@
 package com.example.quickbudget;
 
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 
@@ -11,114 +15,183 @@ import java.util.Locale;
  * ----------
  * Classe utilitária para manipulação e formatação de datas no contexto da aplicação.
  * Fornece métodos para:
+ *  - Calcular o dia e a semana (índices inteiros) de um instante
  *  - Calcular o início e fim da semana atual
- *  - Gerar intervalos semanais em texto
- *  - Criar rótulos de semanas anteriores
- *  - Formatar datas para exibição
+ *  - Gerar intervalos semanais em texto (rótulos das semanas)
+ *
+ * Dias e semanas são números inteiros no fuso horário local (java.time):
+ *  - dia: dias desde 1970-01-01 (LocalDate.toEpochDay);
+ *  - semana: semanas desde a segunda-feira 1969-12-29 (semana 0), ou seja (dia + 3) / 7.
+ * São estes os valores guardados nas colunas day_index e week_index: comparar semanas é
+ * comparar inteiros, sem limites em milissegundos que mudam com a hora de verão.
+ *
+ * As regras do fuso (ZoneRules) ficam em cache, assim como o último período sem mudança
+ * de hora: dentro dele, o dia de um instante é uma soma e uma divisão. Quando o fuso
+ * do sistema muda, {@link #fusoAlterado()} descarta o cache.
+ *
+ * A formatação de datas nas listas é feita pelo {@link Formatador}.
  */
 public class DateUtils {
 
+    private static final long MILLIS_DIA = 24L * 60 * 60 * 1000;
+
+    // Fuso em uso e período atual com o mesmo desvio (substituídos em bloco, nunca alterados)
+    private static volatile Fuso fuso;
+
+    private static final class Fuso {
+        final ZoneId id;
+        final ZoneRules regras;
+        volatile Periodo periodo; // último período usado (null até à primeira conversão)
+
+        Fuso(ZoneId id) {
+            this.id = id;
+            this.regras = id.getRules();
+        }
+    }
+
+    // Intervalo [de, ate[ de instantes com o mesmo desvio em relação a UTC
+    private static final class Periodo {
+        final long de, ate, desvioMillis;
+
+        Periodo(long de, long ate, long desvioMillis) {
+            this.de = de;
+            this.ate = ate;
+            this.desvioMillis = desvioMillis;
+        }
+    }
+
+    private static Fuso fuso() {
+        Fuso f = fuso;
+        if (f == null) fuso = f = new Fuso(ZoneId.systemDefault());
+        return f;
+    }
+
+    // Descarta as regras em cache (o fuso horário do sistema mudou)
+    public static void fusoAlterado() {
+        fuso = null;
+    }
+
+    // ======== DIAS E SEMANAS ========
+
     /**
-     * Formata uma data (timestamp em milissegundos)
-     * para o formato legível "dd MMM yyyy".
-     *
-     * @param millis timestamp a converter
-     * @return string com a data formatada
+     * Dia (local) do instante indicado, em dias desde 1970-01-01.
      */
-    public static String formatDate(long millis) {
-        return new SimpleDateFormat("dd MMM yyyy", Locale.getDefault()).format(millis);
+    public static int diaDe(long millis) {
+        Fuso f = fuso();
+        Periodo p = f.periodo;
+        if (p == null || millis < p.de || millis >= p.ate) f.periodo = p = periodo(f.regras, millis);
+        return (int) Math.floorDiv(millis + p.desvioMillis, MILLIS_DIA);
+    }
+
+    // Período sem mudança de hora que contém o instante
+    private static Periodo periodo(ZoneRules regras, long millis) {
+        Instant instante = Instant.ofEpochMilli(millis);
+        ZoneOffsetTransition anterior = regras.previousTransition(instante.plusMillis(1));
+        ZoneOffsetTransition seguinte = regras.nextTransition(instante);
+        return new Periodo(
+                anterior != null ? anterior.toEpochSecond() * 1000 : Long.MIN_VALUE,
+                seguinte != null ? seguinte.toEpochSecond() * 1000 : Long.MAX_VALUE,
+                regras.getOffset(instante).getTotalSeconds() * 1000L);
+    }
+
+    // Semana a que pertence um dia (semanas de segunda a domingo)
+    public static int semanaDoDia(int dia) {
+        return Math.floorDiv(dia + 3, 7);
     }
 
+    /**
+     * Semana (local) do instante indicado.
+     */
+    public static int semanaDe(long millis) {
+        return semanaDoDia(diaDe(millis));
+    }
+
+    public static int semanaAtual() {
+        return semanaDe(System.currentTimeMillis());
+    }
+
+    // Segunda-feira da semana indicada (em dias desde 1970-01-01)
+    public static int primeiroDia(int semana) {
+        return semana * 7 - 3;
+    }
+
+    /**
+     * Instante de início (segunda-feira às 00:00, hora local) da semana indicada.
+     * Com a hora de verão, uma semana não tem sempre o mesmo número de milissegundos.
+     */
+    public static long inicioSemana(int semana) {
+        return inicioDia(primeiroDia(semana));
+    }
+
+    // Instante de início (00:00, ou a primeira hora que exista) do dia indicado
+    public static long inicioDia(int dia) {
+        return LocalDate.ofEpochDay(dia).atStartOfDay(fuso().id).toInstant().toEpochMilli();
+    }
+
+    // ======== TEXTO ========
+
     /**
      * Retorna o intervalo textual da semana atual.
      * Exemplo: "04 - 10 Nov".
      */
     public static String getCurrentWeekRangeString() {
-        Calendar start = getWeekStartCalendar();
-        Calendar end = (Calendar) start.clone();
-        end.add(Calendar.DAY_OF_MONTH, 6);
-        end.set(Calendar.HOUR_OF_DAY, 23);
-        end.set(Calendar.MINUTE, 59);
-        end.set(Calendar.SECOND, 59);
-        end.set(Calendar.MILLISECOND, 999);
-
-        SimpleDateFormat sdf = new SimpleDateFormat("dd MMM", Locale.getDefault());
-        return sdf.format(start.getTime()) + " - " + sdf.format(end.getTime());
+        return rotuloSemana(semanaAtual(), DateTimeFormatter.ofPattern("dd MMM", Locale.getDefault()));
     }
 
     /**
-     * Gera uma lista de rótulos representando as últimas N semanas.
+     * Gera os rótulos das semanas indicadas.
      * Cada rótulo segue o formato "dd MMM - dd MMM".
      *
-     * @param n número de semanas a incluir
+     * @param semanas índices das semanas
      * @return lista de strings com os intervalos semanais
      */
-    public static List<String> getLastWeeksLabels(int n) {
-        List<String> labels = new ArrayList<>();
-        SimpleDateFormat sdf = new SimpleDateFormat("dd MMM", Locale.getDefault());
-
-        for (int i = n - 1; i >= 0; i--) {
-            long[] range = getWeekRangeFromNowOffset(-i);
-            labels.add(sdf.format(range[0]) + " - " + sdf.format(range[1]));
-        }
+    public static List<String> getWeekLabels(int[] semanas) {
+        List<String> labels = new ArrayList<>(semanas.length);
+        DateTimeFormatter formato = DateTimeFormatter.ofPattern("dd MMM", Locale.getDefault());
+        for (int semana : semanas) labels.add(rotuloSemana(semana, formato));
         return labels;
     }
 
+    // "dd MMM - dd MMM" da segunda-feira ao domingo (datas locais, sem fuso)
+    private static String rotuloSemana(int semana, DateTimeFormatter formato) {
+        LocalDate segunda = LocalDate.ofEpochDay(primeiroDia(semana));
+        return formato.format(segunda) + " - " + formato.format(segunda.plusDays(6));
+    }
+
+    // ======== INSTANTES ========
+
     /**
      * Retorna o timestamp correspondente ao início da semana atual
      * (segunda-feira às 00:00).
      */
     public static long getWeekStartMillis() {
-        return getWeekStartCalendar().getTimeInMillis();
+        return inicioSemana(semanaAtual());
     }
 
     /**
-     * Retorna o timestamp do fim da semana atual
-     * (domingo às 23:59:59).
+     * Retorna o timestamp do início (segunda-feira às 00:00)
+     * da semana a que pertence o instante indicado.
+     *
+     * @param millis timestamp dentro da semana pretendida
      */
-    public static long getWeekEndMillis() {
-        Calendar cal = getWeekStartCalendar();
-        cal.add(Calendar.DAY_OF_MONTH, 6);
-        cal.set(Calendar.HOUR_OF_DAY, 23);
-        cal.set(Calendar.MINUTE, 59);
-        cal.set(Calendar.SECOND, 59);
-        cal.set(Calendar.MILLISECOND, 999);
-        return cal.getTimeInMillis();
+    public static long getWeekStartMillis(long millis) {
+        return inicioSemana(semanaDe(millis));
     }
 
     /**
-     * Cria um objeto Calendar ajustado para o início da semana atual.
-     * Define segunda-feira como o primeiro dia da semana.
+     * Retorna o timestamp do início da semana seguinte
+     * àquela que contém o instante indicado.
      */
-    private static Calendar getWeekStartCalendar() {
-        Calendar cal = Calendar.getInstance(Locale.getDefault());
-        cal.setFirstDayOfWeek(Calendar.MONDAY);
-        cal.set(Calendar.DAY_OF_WEEK, Calendar.MONDAY);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-        return cal;
+    public static long getNextWeekStartMillis(long millis) {
+        return inicioSemana(semanaDe(millis) + 1);
     }
 
     /**
-     * Calcula o início e fim de uma semana com base num deslocamento
-     * (positivo ou negativo) em relação à semana atual.
-     *
-     * @param offsetWeeks número de semanas a deslocar (ex: -1 = semana passada)
-     * @return array com dois timestamps: [início, fim]
+     * Retorna o timestamp do primeiro dia (às 00:00) do mês seguinte
+     * àquele que contém o instante indicado.
      */
-    public static long[] getWeekRangeFromNowOffset(int offsetWeeks) {
-        Calendar start = getWeekStartCalendar();
-        start.add(Calendar.WEEK_OF_YEAR, offsetWeeks);
-
-        Calendar end = (Calendar) start.clone();
-        end.add(Calendar.DAY_OF_MONTH, 6);
-        end.set(Calendar.HOUR_OF_DAY, 23);
-        end.set(Calendar.MINUTE, 59);
-        end.set(Calendar.SECOND, 59);
-        end.set(Calendar.MILLISECOND, 999);
-
-        return new long[]{start.getTimeInMillis(), end.getTimeInMillis()};
+    public static long getNextMonthStartMillis(long millis) {
+        LocalDate seguinte = LocalDate.ofEpochDay(diaDe(millis)).withDayOfMonth(1).plusMonths(1);
+        return seguinte.atStartOfDay(fuso().id).toInstant().toEpochMilli();
     }
 }
@@ -4,7 +4,7 @@ package com.example.quickbudget;
  * Despesa
  * --------
  * Classe modelo que representa uma despesa registada na aplicação.
- * Contém os dados principais: descrição, valor, categoria, recorrência e data.
+ * Contém os dados principais: descrição, valor (em cêntimos), categoria, recorrência e data.
  * É utilizada para armazenar e manipular despesas dentro da aplicação e na base de dados.
  */
 
@@ -13,26 +13,27 @@ public class Despesa {
     // Campos da despesa
     private int id;                 // ID autoincrementado no SQLite
     private String descricao;       // texto descritivo
-    private double valor;           // valor da despesa
+    private long valorCentimos;     // valor da despesa em cêntimos (ver Dinheiro)
     private String categoria;       // categoria (alimentação, transporte, etc.)
     private String recorrencia;     // tipo de recorrência
     private long timestamp;         // data/hora da despesa
+    private String uid;             // id global (sincronização e cópias de segurança); null numa despesa nova
 
     // Construtor usado para nova despesa (sem ID)
-    public Despesa(String descricao, String categoria, double valor, long timestamp, String recorrencia) {
+    public Despesa(String descricao, String categoria, long valorCentimos, long timestamp, String recorrencia) {
         this.descricao = descricao;
         this.categoria = categoria;
-        this.valor = valor;
+        this.valorCentimos = valorCentimos;
         this.timestamp = timestamp;
         this.recorrencia = recorrencia;
     }
 
     // Construtor completo (com ID)
-    public Despesa(int id, String descricao, String categoria, double valor, long timestamp, String recorrencia) {
+    public Despesa(int id, String descricao, String categoria, long valorCentimos, long timestamp, String recorrencia) {
         this.id = id;
         this.descricao = descricao;
         this.categoria = categoria;
-        this.valor = valor;
+        this.valorCentimos = valorCentimos;
         this.timestamp = timestamp;
         this.recorrencia = recorrencia;
     }
@@ -45,8 +46,8 @@ public class Despesa {
     public String getDescricao() { return descricao; }
     public void setDescricao(String descricao) { this.descricao = descricao; }
 
-    public double getValor() { return valor; }
-    public void setValor(double valor) { this.valor = valor; }
+    public long getValorCentimos() { return valorCentimos; }
+    public void setValorCentimos(long valorCentimos) { this.valorCentimos = valorCentimos; }
 
     public String getCategoria() { return categoria; }
     public void setCategoria(String categoria) { this.categoria = categoria; }
@@ -56,4 +57,7 @@ public class Despesa {
 
     public long getTimestamp() { return timestamp; }
     public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    public String getUid() { return uid; }
+    public void setUid(String uid) { this.uid = uid; }
 }
@@ -1,44 +1,131 @@
 package com.example.quickbudget;
 
+import android.graphics.Color;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * DespesaAdapter
  * ---------------
  * Adapter responsável por exibir a lista de despesas num RecyclerView.
  * Cada item mostra a descrição, categoria, valor e data da despesa.
- * Permite interação através de um listener de clique (para abrir/editar detalhes).
+ * Permite interação através de um listener de clique (para abrir/editar detalhes)
+ * e, opcionalmente, seleção múltipla através de um clique longo.
+ *
+ * As listas novas são comparadas com a atual em segundo plano (DiffUtil), pelo que
+ * depois de editar ou eliminar uma despesa só as linhas afetadas voltam a ser ligadas.
+ * Os ids dos itens são estáveis (o id da despesa).
  */
-public class DespesaAdapter extends RecyclerView.Adapter<DespesaAdapter.VH> {
+public class DespesaAdapter extends ListAdapter<Despesa, DespesaAdapter.VH> {
 
     // Interface de callback para cliques em despesas
     public interface OnItemClick {
         void onClick(Despesa despesa);
     }
 
-    private final List<Despesa> items = new ArrayList<>();
+    // Interface de callback para alterações na seleção múltipla
+    public interface OnSelecaoAlterada {
+        void onSelecaoAlterada(int quantidade);
+    }
+
+    private static final int COR_SELECIONADA = Color.parseColor("#D6EAF8");
+
+    // Mesma despesa → mesmo id; mesmo conteúdo → mesmos campos visíveis
+    private static final DiffUtil.ItemCallback<Despesa> DIFERENCAS = new DiffUtil.ItemCallback<Despesa>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Despesa antiga, @NonNull Despesa nova) {
+            return antiga.getId() == nova.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Despesa antiga, @NonNull Despesa nova) {
+            return antiga.getValorCentimos() == nova.getValorCentimos()
+                    && antiga.getTimestamp() == nova.getTimestamp()
+                    && Objects.equals(antiga.getDescricao(), nova.getDescricao())
+                    && Objects.equals(antiga.getCategoria(), nova.getCategoria())
+                    && Objects.equals(antiga.getRecorrencia(), nova.getRecorrencia());
+        }
+    };
+
     private final OnItemClick onItemClick;
+    private final Set<Integer> selecionadas = new HashSet<>(); // IDs selecionados
+    private OnSelecaoAlterada onSelecaoAlterada; // null → seleção múltipla desativada
+    private final Formatador formatador = new Formatador();
+
+    // Última lista enviada (a lista atual do adapter só muda quando o diff termina)
+    private List<Despesa> ultimaLista = new ArrayList<>();
 
     // Construtor principal
     public DespesaAdapter(List<Despesa> despesas, OnItemClick click) {
-        if (despesas != null) items.addAll(despesas);
+        super(DIFERENCAS);
+        setHasStableIds(true);
         this.onItemClick = click;
+        setItems(despesas);
     }
 
-    // Substitui a lista de despesas por uma nova
+    // Substitui a lista de despesas por uma nova (só as diferenças são aplicadas)
     public void setItems(List<Despesa> novas) {
-        items.clear();
-        if (novas != null) items.addAll(novas);
+        ultimaLista = novas != null ? new ArrayList<>(novas) : new ArrayList<>();
+        submitList(ultimaLista);
+    }
+
+    // Acrescenta uma nova página de despesas ao fim da lista
+    public void adicionarItems(List<Despesa> pagina) {
+        List<Despesa> nova = new ArrayList<>(ultimaLista.size() + pagina.size());
+        nova.addAll(ultimaLista);
+        nova.addAll(pagina);
+        ultimaLista = nova;
+        submitList(nova);
+    }
+
+    // Cópia da última lista enviada (para aplicar uma alteração e voltar a enviar com setItems)
+    public List<Despesa> getItems() {
+        return new ArrayList<>(ultimaLista);
+    }
+
+    // Ativa a seleção múltipla (clique longo inicia a seleção)
+    public void ativarSelecaoMultipla(OnSelecaoAlterada listener) {
+        this.onSelecaoAlterada = listener;
+    }
+
+    // Retorna as despesas atualmente selecionadas
+    public List<Despesa> getSelecionadas() {
+        List<Despesa> lista = new ArrayList<>();
+        for (Despesa d : getCurrentList()) {
+            if (selecionadas.contains(d.getId())) lista.add(d);
+        }
+        return lista;
+    }
+
+    // Limpa a seleção e sai do modo de seleção
+    public void limparSelecao() {
+        if (selecionadas.isEmpty()) return;
+        List<Despesa> atual = getCurrentList();
+        for (int i = 0; i < atual.size(); i++) {
+            if (selecionadas.contains(atual.get(i).getId())) notifyItemChanged(i);
+        }
+        selecionadas.clear();
+        if (onSelecaoAlterada != null) onSelecaoAlterada.onSelecaoAlterada(0);
+    }
+
+    // Marca/desmarca uma despesa e avisa o listener
+    private void alternarSelecao(Despesa d, int position) {
+        if (!selecionadas.remove(d.getId())) selecionadas.add(d.getId());
+        notifyItemChanged(position);
+        onSelecaoAlterada.onSelecaoAlterada(selecionadas.size());
     }
 
     // Cria a estrutura visual (ViewHolder) para cada item
@@ -47,29 +134,48 @@ public class DespesaAdapter extends RecyclerView.Adapter<DespesaAdapter.VH> {
     public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View v = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_despesa, parent, false);
-        return new VH(v);
+        VH holder = new VH(v);
+
+        // Listeners criados uma vez por ViewHolder (e não a cada bind)
+        // Clique no item → abre detalhe (ou alterna seleção, se em modo de seleção)
+        holder.itemView.setOnClickListener(view -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return;
+            Despesa d = getItem(position);
+            if (!selecionadas.isEmpty()) {
+                alternarSelecao(d, position);
+            } else if (onItemClick != null) {
+                onItemClick.onClick(d);
+            }
+        });
+
+        // Clique longo → inicia/alterna a seleção múltipla
+        holder.itemView.setOnLongClickListener(view -> {
+            int position = holder.getBindingAdapterPosition();
+            if (onSelecaoAlterada == null || position == RecyclerView.NO_POSITION) return false;
+            alternarSelecao(getItem(position), position);
+            return true;
+        });
+        return holder;
     }
 
-    // Liga os dados da despesa aos elementos visuais do layout
+    // Liga os dados da despesa aos elementos visuais do layout (sem criar objetos por item)
     @Override
     public void onBindViewHolder(@NonNull VH holder, int position) {
-        Despesa d = items.get(position);
+        Despesa d = getItem(position);
 
         holder.tvDesc.setText(d.getDescricao());
-        holder.tvValor.setText(String.format(Locale.getDefault(), "€%.2f", d.getValor()));
+        formatador.mostrarMoeda(holder.tvValor, null, d.getValorCentimos());
         holder.tvCategoria.setText(d.getCategoria());
-        holder.tvData.setText(DateUtils.formatDate(d.getTimestamp()));
+        holder.tvData.setText(formatador.dia(d.getTimestamp()));
 
-        // Listener para clique no item → abre detalhe
-        holder.itemView.setOnClickListener(v -> {
-            if (onItemClick != null) onItemClick.onClick(d);
-        });
+        holder.itemView.setBackgroundColor(selecionadas.contains(d.getId()) ? COR_SELECIONADA : Color.WHITE);
     }
 
-    // Retorna o número total de despesas exibidas
+    // Id estável: o id da despesa
     @Override
-    public int getItemCount() {
-        return items.size();
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
     // Classe ViewHolder que contém as views de um item da lista
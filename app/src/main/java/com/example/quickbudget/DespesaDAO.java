@@ -4,10 +4,13 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * DespesaDAO
@@ -15,53 +18,149 @@ import java.util.List;
  * Classe responsável por todas as operações de acesso à base de dados
  * relacionadas com as despesas (CRUD + geração automática de recorrências).
  *
- * Liga-se ao SQLite através do DBHelper.
+ * Utiliza a ligação partilhada gerida pelo DatabaseManager.
+ * A categoria é guardada pelo id (tabela CATEGORIAS); a conversão entre id e nome
+ * é feita pelo registo em memória {@link Categorias}, sem consultas adicionais.
+ *
+ * Depois de cada alteração confirmada é publicado um {@link AlteracaoDados}
+ * (com a linha antiga e a nova) aos observadores registados.
+ * As alterações ficam também registadas em CHANGE_LOG (por triggers) para a sincronização.
  */
 public class DespesaDAO {
 
-    private final DBHelper dbHelper; // Ligação à base de dados
+    private final DatabaseManager dbManager; // Gestor da ligação partilhada
+    private final SQLiteDatabase db;         // Ligação à base de dados
+    private boolean fechado = false;
+    private volatile Categorias categorias;  // Registo id ↔ nome/cor das categorias
+    private final List<AlteracaoDados.Observador> observadores = new CopyOnWriteArrayList<>();
+
+    // SQL equivalente às leituras feitas com db.query (para o registo de consultas lentas)
+    private static final String SQL_OBTER_POR_ID =
+            "SELECT * FROM " + DBHelper.TABLE_DESPESAS + " WHERE " + DBHelper.COLUMN_ID + " = ?";
+    private static final String SQL_LISTAR_TODAS =
+            "SELECT * FROM " + DBHelper.TABLE_DESPESAS + " ORDER BY " + DBHelper.COLUMN_TIMESTAMP + " DESC";
+    private static final String SQL_LISTAR_SEMANA =
+            "SELECT * FROM " + DBHelper.TABLE_DESPESAS + " WHERE " + DBHelper.COLUMN_SEMANA +
+                    " = ? ORDER BY " + DBHelper.COLUMN_TIMESTAMP + " DESC";
+    private static final String SQL_LISTAR_PAGINA =
+            "SELECT * FROM " + DBHelper.TABLE_DESPESAS + " WHERE (" + DBHelper.COLUMN_TIMESTAMP + ", " +
+                    DBHelper.COLUMN_ID + ") < (?, ?) ORDER BY " + DBHelper.COLUMN_TIMESTAMP + " DESC, " +
+                    DBHelper.COLUMN_ID + " DESC LIMIT ?";
+    private static final String SQL_CARREGAR_COLUNAS =
+            "SELECT " + DBHelper.COLUMN_ID + ", " + DBHelper.COLUMN_TIMESTAMP + ", " + DBHelper.COLUMN_VALOR_CENTIMOS +
+                    ", " + DBHelper.COLUMN_CATEGORIA_ID + " FROM " + DBHelper.TABLE_DESPESAS +
+                    " WHERE " + DBHelper.COLUMN_TIMESTAMP + " >= ? AND " + DBHelper.COLUMN_TIMESTAMP + " < ?";
+    private static final String SQL_TOTAIS_CATEGORIA =
+            "SELECT " + DBHelper.COLUMN_TOTAL_CATEGORIA_ID + ", " + DBHelper.COLUMN_TOTAL_CENTIMOS +
+                    " FROM " + DBHelper.TABLE_TOTAIS_SEMANAIS + " WHERE " + DBHelper.COLUMN_TOTAL_SEMANA_INDICE + " = ?";
 
-    // Construtor: cria instância do helper
+    // Construtor: obtém uma referência à ligação partilhada e carrega as categorias
     public DespesaDAO(Context context) {
-        dbHelper = new DBHelper(context);
+        dbManager = DatabaseManager.getInstance(context);
+        db = dbManager.abrir();
+        categorias = Categorias.carregar(db);
+    }
+
+    // Regista um observador das alterações (chamado na thread que fez a alteração)
+    public void adicionarObservador(AlteracaoDados.Observador observador) {
+        observadores.add(observador);
+    }
+
+    public void removerObservador(AlteracaoDados.Observador observador) {
+        observadores.remove(observador);
+    }
+
+    // Publica uma alteração já confirmada (fora da transação)
+    private void publicar(AlteracaoDados alteracao) {
+        for (AlteracaoDados.Observador o : observadores) o.onAlteracao(alteracao);
+    }
+
+    // Cópia da despesa para um evento, com o id indicado e o nome da categoria tal como ficou guardada
+    private Despesa copia(Despesa d, long id) {
+        return new Despesa((int) id, d.getDescricao(), categorias.nome(idCategoria(d.getCategoria())),
+                d.getValorCentimos(), d.getTimestamp(), d.getRecorrencia());
+    }
+
+    // Registo atual das categorias (nome e cor por id)
+    public Categorias getCategorias() {
+        return categorias;
+    }
+
+    /**
+     * Id da categoria com o nome indicado (ou "Outro", se vier vazio).
+     * Uma categoria ainda desconhecida é criada com a cor por omissão.
+     */
+    int idCategoria(String nome) {
+        String chave = (nome == null || nome.isEmpty()) ? Categorias.CATEGORIA_OMISSAO : nome;
+        int id = categorias.idDe(chave);
+        return id != -1 ? id : criarCategoria(chave);
+    }
+
+    private synchronized int criarCategoria(String nome) {
+        int id = categorias.idDe(nome);
+        if (id != -1) return id; // criada entretanto por outra thread
+
+        ContentValues values = new ContentValues();
+        values.put(DBHelper.COLUMN_CAT_NOME, nome);
+        values.put(DBHelper.COLUMN_CAT_COR, DBHelper.COR_CATEGORIA_OMISSAO);
+        db.insertWithOnConflict(DBHelper.TABLE_CATEGORIAS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        categorias = Categorias.carregar(db);
+        return categorias.idDe(nome);
     }
 
-    // Insere uma nova despesa na base de dados
+    // Insere uma nova despesa na base de dados (e atualiza o total semanal)
     public long inserir(Despesa despesa) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long t0 = MetricasDAO.inicio();
         ContentValues values = new ContentValues();
         values.put(DBHelper.COLUMN_DESCRICAO, despesa.getDescricao());
-        values.put(DBHelper.COLUMN_CATEGORIA, despesa.getCategoria());
-        values.put(DBHelper.COLUMN_VALOR, despesa.getValor());
+        values.put(DBHelper.COLUMN_CATEGORIA_ID, idCategoria(despesa.getCategoria()));
+        values.put(DBHelper.COLUMN_VALOR_CENTIMOS, despesa.getValorCentimos());
         values.put(DBHelper.COLUMN_RECORRENCIA, despesa.getRecorrencia());
-        values.put(DBHelper.COLUMN_TIMESTAMP, despesa.getTimestamp());
-        long id = db.insert(DBHelper.TABLE_DESPESAS, null, values);
-        db.close();
+        colocarData(values, despesa.getTimestamp());
+
+        long id;
+        db.beginTransaction();
+        try {
+            id = db.insert(DBHelper.TABLE_DESPESAS, null, values);
+            if (id != -1) {
+                ajustarTotalSemanal(despesa.getTimestamp(), despesa.getCategoria(), despesa.getValorCentimos(), 1);
+                if (DBHelper.eRecorrente(despesa.getRecorrencia())) {
+                    agendarRecorrencia(id, despesa.getRecorrencia(), despesa.getTimestamp());
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        MetricasDAO.registar("DespesaDAO.inserir", t0, id != -1 ? 1 : 0, SQL_INSERIR, values);
+        if (id != -1) publicar(AlteracaoDados.insercao(copia(despesa, id)));
         return id;
     }
 
     // Obtém uma despesa específica através do ID
     public Despesa obterPorId(int id) {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        long t0 = MetricasDAO.inicio();
+        String[] args = {String.valueOf(id)};
         Cursor c = db.query(
                 DBHelper.TABLE_DESPESAS,
                 null,
                 DBHelper.COLUMN_ID + "=?",
-                new String[]{String.valueOf(id)},
+                args,
                 null, null, null
         );
 
         Despesa d = null;
         if (c.moveToFirst()) d = fromCursor(c);
         c.close();
-        db.close();
+        MetricasDAO.registar("DespesaDAO.obterPorId", t0, d != null ? 1 : 0, SQL_OBTER_POR_ID, args);
         return d;
     }
 
     // Retorna todas as despesas da base de dados
     public List<Despesa> listarTodas() {
+        long t0 = MetricasDAO.inicio();
         List<Despesa> lista = new ArrayList<>();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
 
         Cursor c = db.query(
                 DBHelper.TABLE_DESPESAS,
@@ -72,175 +171,970 @@ public class DespesaDAO {
 
         while (c.moveToNext()) lista.add(fromCursor(c));
         c.close();
-        db.close();
+        MetricasDAO.registar("DespesaDAO.listarTodas", t0, lista.size(), SQL_LISTAR_TODAS, null);
         return lista;
     }
 
-    // Retorna apenas as despesas da semana especificada
-    public List<Despesa> listarSemana(long inicioSemana) {
+    /**
+     * Retorna as N despesas mais recentes de uma semana (sem carregar o restante histórico):
+     * o índice (week_index, timestamp) devolve-as já ordenadas, sem ordenar a semana toda.
+     */
+    public List<Despesa> listarRecentes(int semana, int limite) {
+        long t0 = MetricasDAO.inicio();
         List<Despesa> lista = new ArrayList<>();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        long fimSemana = DateUtils.getWeekEndMillis();
+        String[] args = {String.valueOf(semana)};
 
         Cursor c = db.query(
                 DBHelper.TABLE_DESPESAS,
                 null,
-                DBHelper.COLUMN_TIMESTAMP + " BETWEEN ? AND ?",
-                new String[]{String.valueOf(inicioSemana), String.valueOf(fimSemana)},
+                DBHelper.COLUMN_SEMANA + " = ?",
+                args,
                 null, null,
-                DBHelper.COLUMN_TIMESTAMP + " DESC"
+                DBHelper.COLUMN_TIMESTAMP + " DESC",
+                String.valueOf(limite)
         );
 
-        if (c != null) {
-            while (c.moveToNext()) lista.add(fromCursor(c));
-            c.close();
+        while (c.moveToNext()) lista.add(fromCursor(c));
+        c.close();
+        MetricasDAO.registar("DespesaDAO.listarRecentes", t0, lista.size(), SQL_LISTAR_SEMANA, args);
+        return lista;
+    }
+
+    /**
+     * Chave de paginação: posição da última despesa de uma página.
+     * A ordem do histórico é decrescente por timestamp e, em caso de empate, por id.
+     */
+    public static final class ChavePagina {
+        final long timestamp;
+        final int id;
+
+        public ChavePagina(long timestamp, int id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        // Chave que continua a listagem logo a seguir à despesa indicada
+        public static ChavePagina depoisDe(Despesa d) {
+            return new ChavePagina(d.getTimestamp(), d.getId());
+        }
+
+        // Indica se esta posição vem antes da despesa na ordem do histórico (a mesma de listarPagina)
+        public boolean antesDe(Despesa d) {
+            return timestamp != d.getTimestamp() ? timestamp > d.getTimestamp() : id > d.getId();
         }
+    }
+
+    /**
+     * Retorna uma página do histórico, da despesa mais recente para a mais antiga.
+     * Em vez de OFFSET, continua a partir da chave (timestamp, id) da página anterior,
+     * o que permite ao SQLite saltar diretamente para a posição através do índice
+     * de timestamp (que inclui o id, por ser o rowid da tabela).
+     *
+     * @param depoisDe chave da última despesa já carregada, ou null para a primeira página
+     * @param limite   número máximo de despesas a devolver
+     */
+    public List<Despesa> listarPagina(ChavePagina depoisDe, int limite) {
+        long t0 = MetricasDAO.inicio();
+        List<Despesa> lista = new ArrayList<>();
+        String where = null;
+        String[] args = null;
 
-        db.close();
+        if (depoisDe != null) {
+            where = "(" + DBHelper.COLUMN_TIMESTAMP + ", " + DBHelper.COLUMN_ID + ") < (?, ?)";
+            args = new String[]{String.valueOf(depoisDe.timestamp), String.valueOf(depoisDe.id)};
+        }
+
+        Cursor c = db.query(
+                DBHelper.TABLE_DESPESAS,
+                null,
+                where, args,
+                null, null,
+                DBHelper.COLUMN_TIMESTAMP + " DESC, " + DBHelper.COLUMN_ID + " DESC",
+                String.valueOf(limite)
+        );
+
+        while (c.moveToNext()) lista.add(fromCursor(c));
+        c.close();
+        MetricasDAO.registar("DespesaDAO.listarPagina", t0, lista.size(), SQL_LISTAR_PAGINA, args);
+        return lista;
+    }
+
+    private static final String SQL_PESQUISAR =
+            "SELECT d.* FROM " + DBHelper.TABLE_DESPESAS_FTS + " f" +
+                    " JOIN " + DBHelper.TABLE_DESPESAS + " d ON d." + DBHelper.COLUMN_ID + " = f.docid" +
+                    " WHERE " + DBHelper.TABLE_DESPESAS_FTS + " MATCH ?" +
+                    " ORDER BY d." + DBHelper.COLUMN_TIMESTAMP + " DESC, d." + DBHelper.COLUMN_ID + " DESC" +
+                    " LIMIT ?";
+
+    /**
+     * Pesquisa nas descrições através do índice de texto (DESPESAS_FTS), da mais recente
+     * para a mais antiga. Cada palavra do texto é procurada como prefixo e todas têm de
+     * aparecer ("caf jan" encontra "Café ao jantar"); maiúsculas e acentos são ignorados.
+     *
+     * @param texto  texto introduzido pelo utilizador
+     * @param limite número máximo de despesas a devolver
+     */
+    public List<Despesa> pesquisar(String texto, int limite) {
+        List<Despesa> lista = new ArrayList<>();
+        String expressao = expressaoPesquisa(texto);
+        if (expressao.isEmpty()) return lista;
+
+        long t0 = MetricasDAO.inicio();
+        String[] args = {expressao, String.valueOf(limite)};
+        Cursor c = db.rawQuery(SQL_PESQUISAR, args);
+
+        while (c.moveToNext()) lista.add(fromCursor(c));
+        c.close();
+        MetricasDAO.registar("DespesaDAO.pesquisar", t0, lista.size(), SQL_PESQUISAR, args);
         return lista;
     }
 
-    // Calcula o total gasto entre duas datas (intervalo)
-    public double getTotalPorIntervalo(long inicio, long fim) {
-        double total = 0.0;
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
+    /**
+     * Converte o texto do utilizador numa expressão MATCH: cada palavra (letras e dígitos)
+     * passa a uma pesquisa por prefixo ("caf*"). Os restantes caracteres são descartados,
+     * para que aspas, hífens ou operadores do FTS não alterem a pesquisa.
+     */
+    static String expressaoPesquisa(String texto) {
+        StringBuilder sb = new StringBuilder();
+        if (texto == null) return "";
+
+        boolean dentroPalavra = false;
+        for (int i = 0; i < texto.length(); i++) {
+            char ch = texto.charAt(i);
+            if (Character.isLetterOrDigit(ch)) {
+                if (!dentroPalavra && sb.length() > 0) sb.append(' ');
+                sb.append(ch);
+                dentroPalavra = true;
+            } else if (dentroPalavra) {
+                sb.append('*');
+                dentroPalavra = false;
+            }
+        }
+        if (dentroPalavra) sb.append('*');
+        return sb.toString();
+    }
+
+    // Retorna apenas as despesas da semana indicada (índice da semana, ver DateUtils)
+    public List<Despesa> listarSemana(int semana) {
+        long t0 = MetricasDAO.inicio();
+        List<Despesa> lista = new ArrayList<>();
+        String[] args = {String.valueOf(semana)};
 
-        Cursor c = db.rawQuery(
-                "SELECT SUM(" + DBHelper.COLUMN_VALOR + ") AS total FROM " +
-                        DBHelper.TABLE_DESPESAS +
-                        " WHERE " + DBHelper.COLUMN_TIMESTAMP + " BETWEEN ? AND ?",
-                new String[]{String.valueOf(inicio), String.valueOf(fim)}
+        Cursor c = db.query(
+                DBHelper.TABLE_DESPESAS,
+                null,
+                DBHelper.COLUMN_SEMANA + " = ?",
+                args,
+                null, null,
+                DBHelper.COLUMN_TIMESTAMP + " DESC"
         );
 
-        if (c.moveToFirst()) total = c.getDouble(c.getColumnIndexOrThrow("total"));
+        while (c.moveToNext()) lista.add(fromCursor(c));
+        c.close();
+
+        MetricasDAO.registar("DespesaDAO.listarSemana", t0, lista.size(), SQL_LISTAR_SEMANA, args);
+        return lista;
+    }
+
+    private static final String SQL_TOTAL_INTERVALO =
+            "SELECT SUM(" + DBHelper.COLUMN_VALOR_CENTIMOS + ") AS total FROM " +
+                    DBHelper.TABLE_DESPESAS +
+                    " WHERE " + DBHelper.COLUMN_TIMESTAMP + " BETWEEN ? AND ?";
+
+    // Calcula o total gasto (em cêntimos) entre duas datas (intervalo)
+    public long getTotalPorIntervalo(long inicio, long fim) {
+        long t0 = MetricasDAO.inicio();
+        long total = 0;
+        String[] args = {String.valueOf(inicio), String.valueOf(fim)};
+
+        Cursor c = db.rawQuery(SQL_TOTAL_INTERVALO, args);
+
+        if (c.moveToFirst()) total = c.getLong(c.getColumnIndexOrThrow("total"));
         c.close();
-        db.close();
+        MetricasDAO.registar("DespesaDAO.getTotalPorIntervalo", t0, 1, SQL_TOTAL_INTERVALO, args);
         return total;
     }
 
-    // Atualiza os dados de uma despesa existente
+    /**
+     * Carrega as despesas do intervalo [inicio, fim[ em formato colunar (id, timestamp,
+     * valor, categoria), sem criar um objeto Despesa por linha. Indicado para análises
+     * sobre históricos grandes.
+     */
+    public DespesasColunares carregarColunas(long inicio, long fim) {
+        long t0 = MetricasDAO.inicio();
+        String[] args = {String.valueOf(inicio), String.valueOf(fim)};
+        DespesasColunares colunas;
+        try (Cursor c = db.query(
+                DBHelper.TABLE_DESPESAS,
+                new String[]{DBHelper.COLUMN_ID, DBHelper.COLUMN_TIMESTAMP, DBHelper.COLUMN_VALOR_CENTIMOS, DBHelper.COLUMN_CATEGORIA_ID},
+                DBHelper.COLUMN_TIMESTAMP + " >= ? AND " + DBHelper.COLUMN_TIMESTAMP + " < ?",
+                args,
+                null, null,
+                DBHelper.COLUMN_TIMESTAMP + " ASC, " + DBHelper.COLUMN_ID + " ASC"
+        )) {
+            colunas = DespesasColunares.deCursor(c, categorias);
+        }
+        MetricasDAO.registar("DespesaDAO.carregarColunas", t0, colunas.tamanho(), SQL_CARREGAR_COLUNAS, args);
+        return colunas;
+    }
+
+    // Atualiza os dados de uma despesa existente (e move o valor entre totais semanais)
     public void atualizar(Despesa despesa) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long t0 = MetricasDAO.inicio();
         ContentValues values = new ContentValues();
         values.put(DBHelper.COLUMN_DESCRICAO, despesa.getDescricao());
-        values.put(DBHelper.COLUMN_CATEGORIA, despesa.getCategoria());
-        values.put(DBHelper.COLUMN_VALOR, despesa.getValor());
+        values.put(DBHelper.COLUMN_CATEGORIA_ID, idCategoria(despesa.getCategoria()));
+        values.put(DBHelper.COLUMN_VALOR_CENTIMOS, despesa.getValorCentimos());
         values.put(DBHelper.COLUMN_RECORRENCIA, despesa.getRecorrencia());
-        values.put(DBHelper.COLUMN_TIMESTAMP, despesa.getTimestamp());
+        colocarData(values, despesa.getTimestamp());
 
-        db.update(
-                DBHelper.TABLE_DESPESAS,
-                values,
-                DBHelper.COLUMN_ID + "=?",
-                new String[]{String.valueOf(despesa.getId())}
-        );
-        db.close();
+        Despesa antiga;
+        int alteradas;
+        db.beginTransaction();
+        try {
+            antiga = obterPorId(despesa.getId());
+            alteradas = db.update(
+                    DBHelper.TABLE_DESPESAS,
+                    values,
+                    DBHelper.COLUMN_ID + "=?",
+                    new String[]{String.valueOf(despesa.getId())}
+            );
+            if (antiga != null && alteradas > 0) {
+                ajustarTotalSemanal(antiga.getTimestamp(), antiga.getCategoria(), -antiga.getValorCentimos(), -1);
+                ajustarTotalSemanal(despesa.getTimestamp(), despesa.getCategoria(), despesa.getValorCentimos(), 1);
+                if (recorrenciaMudou(antiga, despesa)) {
+                    agendarRecorrencia(despesa.getId(), despesa.getRecorrencia(), despesa.getTimestamp());
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        MetricasDAO.registar("DespesaDAO.atualizar", t0, alteradas, SQL_ATUALIZAR, values);
+        if (antiga != null && alteradas > 0) {
+            publicar(AlteracaoDados.atualizacao(antiga, copia(despesa, despesa.getId())));
+        }
     }
 
-    // Elimina uma despesa com base no ID
+    // Elimina uma despesa com base no ID (e retira o valor do total semanal)
     public void eliminar(int id) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        db.delete(
-                DBHelper.TABLE_DESPESAS,
-                DBHelper.COLUMN_ID + "=?",
-                new String[]{String.valueOf(id)}
-        );
-        db.close();
+        long t0 = MetricasDAO.inicio();
+        Despesa antiga;
+        int eliminadas;
+        db.beginTransaction();
+        try {
+            antiga = obterPorId(id);
+            eliminadas = db.delete(
+                    DBHelper.TABLE_DESPESAS,
+                    DBHelper.COLUMN_ID + "=?",
+                    new String[]{String.valueOf(id)}
+            );
+            if (antiga != null && eliminadas > 0) {
+                ajustarTotalSemanal(antiga.getTimestamp(), antiga.getCategoria(), -antiga.getValorCentimos(), -1);
+                db.execSQL(SQL_DESAGENDAR, new Object[]{id});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        MetricasDAO.registar("DespesaDAO.eliminar", t0, eliminadas, SQL_ELIMINAR, id);
+        if (antiga != null && eliminadas > 0) publicar(AlteracaoDados.eliminacao(antiga));
     }
 
-    // Verifica se já existe despesa idêntica nesta semana (para evitar duplicados)
-    private boolean existeDespesaSimilar(String descricao, String categoria, double valor, long inicioSemana) {
-        long fimSemana = DateUtils.getWeekEndMillis();
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
+    // ======== OPERAÇÕES EM LOTE ========
+    // Cada lote corre numa única transação (um único fsync) e reutiliza instruções compiladas.
+    // No fim é publicada uma única alteração (LOTE) com o intervalo de datas afetado.
+
+    private static final String SQL_INSERIR =
+            "INSERT INTO " + DBHelper.TABLE_DESPESAS + " (" +
+                    DBHelper.COLUMN_DESCRICAO + ", " + DBHelper.COLUMN_CATEGORIA_ID + ", " +
+                    DBHelper.COLUMN_VALOR_CENTIMOS + ", " + DBHelper.COLUMN_RECORRENCIA + ", " +
+                    DBHelper.COLUMN_TIMESTAMP + ", " + DBHelper.COLUMN_DIA + ", " +
+                    DBHelper.COLUMN_SEMANA + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_ATUALIZAR =
+            "UPDATE " + DBHelper.TABLE_DESPESAS + " SET " +
+                    DBHelper.COLUMN_DESCRICAO + " = ?, " + DBHelper.COLUMN_CATEGORIA_ID + " = ?, " +
+                    DBHelper.COLUMN_VALOR_CENTIMOS + " = ?, " + DBHelper.COLUMN_RECORRENCIA + " = ?, " +
+                    DBHelper.COLUMN_TIMESTAMP + " = ?, " + DBHelper.COLUMN_DIA + " = ?, " +
+                    DBHelper.COLUMN_SEMANA + " = ? WHERE " + DBHelper.COLUMN_ID + " = ?";
+
+    private static final String SQL_ELIMINAR =
+            "DELETE FROM " + DBHelper.TABLE_DESPESAS + " WHERE " + DBHelper.COLUMN_ID + " = ?";
+
+    // Máximo de parâmetros por consulta IN (...), abaixo do limite do SQLite
+    private static final int MAX_PARAMETROS = 500;
+
+    /**
+     * Insere várias despesas numa só transação.
+     * Os IDs gerados são atribuídos aos próprios objetos.
+     *
+     * @return número de despesas inseridas
+     */
+    public int inserirLote(List<Despesa> despesas) {
+        long t0 = MetricasDAO.inicio();
+        int inseridas = 0;
+        Intervalo afetado = new Intervalo();
+        criarCategoriasEmFalta(despesas);
+        db.beginTransaction();
+        try (SQLiteStatement inserir = db.compileStatement(SQL_INSERIR);
+             TotaisEmLote totais = new TotaisEmLote()) {
+            for (Despesa d : despesas) {
+                ligarCampos(inserir, d);
+                long id = inserir.executeInsert();
+                if (id != -1) {
+                    d.setId((int) id);
+                    afetado.incluir(d.getTimestamp());
+                    totais.ajustar(d.getTimestamp(), d.getCategoria(), d.getValorCentimos(), 1);
+                    if (DBHelper.eRecorrente(d.getRecorrencia())) {
+                        agendarRecorrencia(id, d.getRecorrencia(), d.getTimestamp());
+                    }
+                    inseridas++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        MetricasDAO.registar("DespesaDAO.inserirLote", t0, inseridas, SQL_INSERIR, null);
+        afetado.publicar(inseridas);
+        return inseridas;
+    }
+
+    /**
+     * Atualiza várias despesas numa só transação.
+     *
+     * @return número de despesas atualizadas
+     */
+    public int atualizarLote(List<Despesa> despesas) {
+        long t0 = MetricasDAO.inicio();
+        int atualizadas = 0;
+        Intervalo afetado = new Intervalo();
+        criarCategoriasEmFalta(despesas);
+        db.beginTransaction();
+        try (SQLiteStatement atualizar = db.compileStatement(SQL_ATUALIZAR);
+             TotaisEmLote totais = new TotaisEmLote()) {
+            Map<Integer, Despesa> antigas = obterPorIds(idsDe(despesas));
+            for (Despesa d : despesas) {
+                Despesa antiga = antigas.get(d.getId());
+                if (antiga == null) continue;
+
+                ligarCampos(atualizar, d);
+                atualizar.bindLong(8, d.getId());
+                if (atualizar.executeUpdateDelete() > 0) {
+                    afetado.incluir(antiga.getTimestamp());
+                    afetado.incluir(d.getTimestamp());
+                    totais.ajustar(antiga.getTimestamp(), antiga.getCategoria(), -antiga.getValorCentimos(), -1);
+                    totais.ajustar(d.getTimestamp(), d.getCategoria(), d.getValorCentimos(), 1);
+                    if (recorrenciaMudou(antiga, d)) {
+                        agendarRecorrencia(d.getId(), d.getRecorrencia(), d.getTimestamp());
+                    }
+                    atualizadas++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        MetricasDAO.registar("DespesaDAO.atualizarLote", t0, atualizadas, SQL_ATUALIZAR, null);
+        afetado.publicar(atualizadas);
+        return atualizadas;
+    }
+
+    /**
+     * Elimina várias despesas numa só transação.
+     *
+     * @return número de despesas eliminadas
+     */
+    public int eliminarLote(List<Integer> ids) {
+        long t0 = MetricasDAO.inicio();
+        int eliminadas = 0;
+        Intervalo afetado = new Intervalo();
+        db.beginTransaction();
+        try (SQLiteStatement eliminar = db.compileStatement(SQL_ELIMINAR);
+             SQLiteStatement desagendar = db.compileStatement(SQL_DESAGENDAR);
+             TotaisEmLote totais = new TotaisEmLote()) {
+            Map<Integer, Despesa> antigas = obterPorIds(ids);
+            for (Despesa antiga : antigas.values()) {
+                eliminar.bindLong(1, antiga.getId());
+                if (eliminar.executeUpdateDelete() > 0) {
+                    afetado.incluir(antiga.getTimestamp());
+                    totais.ajustar(antiga.getTimestamp(), antiga.getCategoria(), -antiga.getValorCentimos(), -1);
+                    desagendar.bindLong(1, antiga.getId());
+                    desagendar.executeUpdateDelete();
+                    eliminadas++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        MetricasDAO.registar("DespesaDAO.eliminarLote", t0, eliminadas, SQL_ELIMINAR, null);
+        afetado.publicar(eliminadas);
+        return eliminadas;
+    }
+
+    // Intervalo de datas alterado por um lote
+    private final class Intervalo {
+        long inicio = Long.MAX_VALUE;
+        long fim = Long.MIN_VALUE;
+
+        void incluir(long timestamp) {
+            inicio = Math.min(inicio, timestamp);
+            fim = Math.max(fim, timestamp);
+        }
+
+        // Publica o lote (se alterou alguma despesa)
+        void publicar(int alteradas) {
+            if (alteradas > 0) DespesaDAO.this.publicar(AlteracaoDados.lote(DBHelper.TABLE_DESPESAS, inicio, fim));
+        }
+    }
+
+    private static final String SQL_IMPORTAR =
+            "INSERT OR IGNORE INTO " + DBHelper.TABLE_DESPESAS + " (" +
+                    DBHelper.COLUMN_DESCRICAO + ", " + DBHelper.COLUMN_CATEGORIA_ID + ", " +
+                    DBHelper.COLUMN_VALOR_CENTIMOS + ", " + DBHelper.COLUMN_RECORRENCIA + ", " +
+                    DBHelper.COLUMN_TIMESTAMP + ", " + DBHelper.COLUMN_DIA + ", " +
+                    DBHelper.COLUMN_SEMANA + ", " + DBHelper.COLUMN_UID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Insere despesas lidas de uma cópia de segurança numa só transação.
+     * As despesas com um uid que já existe são ignoradas, pelo que importar a mesma
+     * cópia duas vezes não duplica nada. Despesas sem uid recebem um novo.
+     *
+     * @param despesas            despesas a inserir (com ou sem uid)
+     * @param proximasOcorrencias próxima ocorrência de cada despesa que é modelo de recorrência
+     *                            (na mesma posição), ou 0 se não for modelo
+     * @return número de despesas inseridas
+     */
+    public int importarLote(List<Despesa> despesas, long[] proximasOcorrencias) {
+        long t0 = MetricasDAO.inicio();
+        int inseridas = 0;
+        Intervalo afetado = new Intervalo();
+        criarCategoriasEmFalta(despesas);
+        db.beginTransaction();
+        try (SQLiteStatement inserir = db.compileStatement(SQL_IMPORTAR);
+             TotaisEmLote totais = new TotaisEmLote()) {
+            for (int i = 0; i < despesas.size(); i++) {
+                Despesa d = despesas.get(i);
+                ligarCampos(inserir, d);
+                if (d.getUid() != null) inserir.bindString(8, d.getUid()); else inserir.bindNull(8);
+                long id = inserir.executeInsert();
+                if (id == -1) continue; // uid já existente
+
+                d.setId((int) id);
+                afetado.incluir(d.getTimestamp());
+                totais.ajustar(d.getTimestamp(), d.getCategoria(), d.getValorCentimos(), 1);
+                if (proximasOcorrencias[i] != 0 && DBHelper.eRecorrente(d.getRecorrencia())) {
+                    db.execSQL(SQL_AGENDAR, new Object[]{id, d.getRecorrencia(), proximasOcorrencias[i]});
+                }
+                inseridas++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        MetricasDAO.registar("DespesaDAO.importarLote", t0, inseridas, SQL_IMPORTAR, null);
+        afetado.publicar(inseridas);
+        return inseridas;
+    }
+
+    /**
+     * Insere as despesas guardadas no diário de registo rápido ({@link DiarioDespesas}) numa só
+     * transação. Cada despesa traz o uid atribuído no diário: as que já existem (gravadas antes
+     * de o processo morrer, sem terem saído do diário) são ignoradas.
+     *
+     * @return número de despesas inseridas
+     */
+    public int inserirDoDiario(List<Despesa> despesas) {
+        long t0 = MetricasDAO.inicio();
+        int inseridas = 0;
+        Intervalo afetado = new Intervalo();
+        criarCategoriasEmFalta(despesas);
+        db.beginTransaction();
+        try (SQLiteStatement inserir = db.compileStatement(SQL_IMPORTAR);
+             TotaisEmLote totais = new TotaisEmLote()) {
+            for (Despesa d : despesas) {
+                ligarCampos(inserir, d);
+                inserir.bindString(8, d.getUid());
+                long id = inserir.executeInsert();
+                if (id == -1) continue; // já gravada
+
+                d.setId((int) id);
+                afetado.incluir(d.getTimestamp());
+                totais.ajustar(d.getTimestamp(), d.getCategoria(), d.getValorCentimos(), 1);
+                if (DBHelper.eRecorrente(d.getRecorrencia())) {
+                    agendarRecorrencia(id, d.getRecorrencia(), d.getTimestamp());
+                }
+                inseridas++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        MetricasDAO.registar("DespesaDAO.inserirDoDiario", t0, inseridas, SQL_IMPORTAR, null);
+        afetado.publicar(inseridas);
+        return inseridas;
+    }
+
+    private static final String SQL_INSERIR_SEM_DUPLICADOS =
+            "INSERT OR IGNORE INTO " + DBHelper.TABLE_DESPESAS + " (" +
+                    DBHelper.COLUMN_DESCRICAO + ", " + DBHelper.COLUMN_CATEGORIA_ID + ", " +
+                    DBHelper.COLUMN_VALOR_CENTIMOS + ", " + DBHelper.COLUMN_RECORRENCIA + ", " +
+                    DBHelper.COLUMN_TIMESTAMP + ", " + DBHelper.COLUMN_DIA + ", " +
+                    DBHelper.COLUMN_SEMANA + ", " + DBHelper.COLUMN_HASH_CONTEUDO + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Insere despesas importadas de um extrato numa só transação. Cada despesa leva o hash
+     * do seu conteúdo; as que já existem (mesmo hash, de uma importação anterior) são
+     * ignoradas pelo índice único, sem uma consulta por linha.
+     *
+     * @param despesas despesas a inserir
+     * @param hashes   hash de conteúdo de cada despesa (na mesma posição)
+     * @return número de despesas inseridas
+     */
+    public int inserirSemDuplicados(List<Despesa> despesas, List<String> hashes) {
+        long t0 = MetricasDAO.inicio();
+        int inseridas = 0;
+        Intervalo afetado = new Intervalo();
+        criarCategoriasEmFalta(despesas);
+        db.beginTransaction();
+        try (SQLiteStatement inserir = db.compileStatement(SQL_INSERIR_SEM_DUPLICADOS);
+             TotaisEmLote totais = new TotaisEmLote()) {
+            for (int i = 0; i < despesas.size(); i++) {
+                Despesa d = despesas.get(i);
+                ligarCampos(inserir, d);
+                inserir.bindString(8, hashes.get(i));
+                long id = inserir.executeInsert();
+                if (id == -1) continue; // já importada
+
+                d.setId((int) id);
+                afetado.incluir(d.getTimestamp());
+                totais.ajustar(d.getTimestamp(), d.getCategoria(), d.getValorCentimos(), 1);
+                inseridas++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        MetricasDAO.registar("DespesaDAO.inserirSemDuplicados", t0, inseridas, SQL_INSERIR_SEM_DUPLICADOS, null);
+        afetado.publicar(inseridas);
+        return inseridas;
+    }
+
+    /*
+     * Cria as categorias novas de um lote antes de abrir a transação,
+     * para que um lote que falhe não deixe o registo com ids que não chegaram a existir.
+     */
+    private void criarCategoriasEmFalta(List<Despesa> despesas) {
+        for (Despesa d : despesas) idCategoria(d.getCategoria());
+    }
+
+    // Liga os campos de uma despesa aos parâmetros 1..7 de SQL_INSERIR / SQL_ATUALIZAR (timestamp, dia e semana no fim)
+    private void ligarCampos(SQLiteStatement stmt, Despesa d) {
+        stmt.bindString(1, d.getDescricao());
+        stmt.bindLong(2, idCategoria(d.getCategoria()));
+        stmt.bindLong(3, d.getValorCentimos());
+        if (d.getRecorrencia() != null) stmt.bindString(4, d.getRecorrencia()); else stmt.bindNull(4);
+        stmt.bindLong(5, d.getTimestamp());
+        int dia = DateUtils.diaDe(d.getTimestamp());
+        stmt.bindLong(6, dia);
+        stmt.bindLong(7, DateUtils.semanaDoDia(dia));
+    }
+
+    // Timestamp e respetivos dia e semana locais (colunas derivadas, ver DBHelper v10)
+    private static void colocarData(ContentValues values, long timestamp) {
+        int dia = DateUtils.diaDe(timestamp);
+        values.put(DBHelper.COLUMN_TIMESTAMP, timestamp);
+        values.put(DBHelper.COLUMN_DIA, dia);
+        values.put(DBHelper.COLUMN_SEMANA, DateUtils.semanaDoDia(dia));
+    }
+
+    private static List<Integer> idsDe(List<Despesa> despesas) {
+        List<Integer> ids = new ArrayList<>(despesas.size());
+        for (Despesa d : despesas) ids.add(d.getId());
+        return ids;
+    }
+
+    // Lê várias despesas pelo ID, em blocos de consultas IN (...)
+    private Map<Integer, Despesa> obterPorIds(List<Integer> ids) {
+        Map<Integer, Despesa> resultado = new LinkedHashMap<>();
+        for (int inicio = 0; inicio < ids.size(); inicio += MAX_PARAMETROS) {
+            List<Integer> bloco = ids.subList(inicio, Math.min(inicio + MAX_PARAMETROS, ids.size()));
+            String[] args = new String[bloco.size()];
+            StringBuilder marcadores = new StringBuilder();
+            for (int i = 0; i < bloco.size(); i++) {
+                args[i] = String.valueOf(bloco.get(i));
+                marcadores.append(i == 0 ? "?" : ", ?");
+            }
+
+            Cursor c = db.query(
+                    DBHelper.TABLE_DESPESAS,
+                    null,
+                    DBHelper.COLUMN_ID + " IN (" + marcadores + ")",
+                    args,
+                    null, null, null
+            );
+            while (c.moveToNext()) {
+                Despesa d = fromCursor(c);
+                resultado.put(d.getId(), d);
+            }
+            c.close();
+        }
+        return resultado;
+    }
+
+    private static final String SQL_TOTAL_SEMANA =
+            "SELECT SUM(" + DBHelper.COLUMN_TOTAL_CENTIMOS + ") FROM " + DBHelper.TABLE_TOTAIS_SEMANAIS +
+                    " WHERE " + DBHelper.COLUMN_TOTAL_SEMANA_INDICE + " = ?";
+
+    // Total gasto numa semana (em cêntimos), lido da tabela de totais semanais
+    public long getTotalSemana(int semana) {
+        long t0 = MetricasDAO.inicio();
+        long total = 0;
+        String[] args = {String.valueOf(semana)};
+
+        Cursor c = db.rawQuery(SQL_TOTAL_SEMANA, args);
+
+        if (c.moveToFirst()) total = c.getLong(0);
+        c.close();
+        MetricasDAO.registar("DespesaDAO.getTotalSemana", t0, 1, SQL_TOTAL_SEMANA, args);
+        return total;
+    }
+
+    private static final String SQL_CARREGAR_SEMANAS =
+            "SELECT " + DBHelper.COLUMN_TOTAL_SEMANA_INDICE + ", SUM(" + DBHelper.COLUMN_TOTAL_CENTIMOS + ")" +
+                    " FROM " + DBHelper.TABLE_TOTAIS_SEMANAIS +
+                    " WHERE " + DBHelper.COLUMN_TOTAL_SEMANA_INDICE + " BETWEEN ? AND ?" +
+                    " GROUP BY " + DBHelper.COLUMN_TOTAL_SEMANA_INDICE;
+
+    /**
+     * Gasto (em cêntimos) de semanas consecutivas numa só consulta aos totais semanais
+     * (um intervalo da chave primária), pelo que o custo quase não depende do número de semanas.
+     * Os orçamentos correspondentes vêm de {@link BudgetDAO#carregarBudgets}.
+     *
+     * @param primeira índice da primeira semana
+     * @param gastos   recebe o total gasto de cada semana (gastos[i] = semana primeira + i)
+     */
+    public void carregarSemanas(int primeira, long[] gastos) {
+        if (gastos.length == 0) return;
+        long t0 = MetricasDAO.inicio();
+        String[] args = {String.valueOf(primeira), String.valueOf(primeira + gastos.length - 1)};
+
+        Cursor c = db.rawQuery(SQL_CARREGAR_SEMANAS, args);
+
+        int linhas = 0;
+        while (c.moveToNext()) {
+            linhas++;
+            gastos[c.getInt(0) - primeira] = c.getLong(1);
+        }
+        c.close();
+        MetricasDAO.registar("DespesaDAO.carregarSemanas", t0, linhas, SQL_CARREGAR_SEMANAS, args);
+    }
+
+    // Totais gastos (em cêntimos) por categoria (id) numa semana, da maior para a menor
+    public Map<Integer, Long> getTotaisPorCategoria(int semana) {
+        long t0 = MetricasDAO.inicio();
+        Map<Integer, Long> totais = new LinkedHashMap<>();
+        String[] args = {String.valueOf(semana)};
 
         Cursor c = db.query(
-                DBHelper.TABLE_DESPESAS,
-                null,
-                DBHelper.COLUMN_DESCRICAO + "=? AND " +
-                        DBHelper.COLUMN_CATEGORIA + "=? AND " +
-                        DBHelper.COLUMN_VALOR + "=? AND " +
-                        DBHelper.COLUMN_TIMESTAMP + " BETWEEN ? AND ?",
-                new String[]{
-                        descricao,
-                        categoria,
-                        String.valueOf(valor),
-                        String.valueOf(inicioSemana),
-                        String.valueOf(fimSemana)
-                },
-                null, null, null
+                DBHelper.TABLE_TOTAIS_SEMANAIS,
+                new String[]{DBHelper.COLUMN_TOTAL_CATEGORIA_ID, DBHelper.COLUMN_TOTAL_CENTIMOS},
+                DBHelper.COLUMN_TOTAL_SEMANA_INDICE + " = ?",
+                args,
+                null, null,
+                DBHelper.COLUMN_TOTAL_CENTIMOS + " DESC"
         );
 
-        boolean existe = (c != null && c.moveToFirst());
-        if (c != null) c.close();
-        return existe;
+        while (c.moveToNext()) totais.put(c.getInt(0), c.getLong(1));
+        c.close();
+        MetricasDAO.registar("DespesaDAO.getTotaisPorCategoria", t0, totais.size(), SQL_TOTAIS_CATEGORIA, args);
+        return totais;
     }
 
-    // Gera automaticamente despesas recorrentes (Semanal ou Mensal)
-    public void gerarDespesasRecorrentes(long inicioSemana) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
+    // Reconstrói os totais semanais a partir das despesas (ex: após corrigir dados)
+    public void reconstruirTotaisSemanais() {
+        long t0 = MetricasDAO.inicio();
+        db.beginTransaction();
+        try {
+            DBHelper.reconstruirTotaisSemanais(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        MetricasDAO.registar("DespesaDAO.reconstruirTotaisSemanais", t0, 0, null, null);
+    }
 
-        try (Cursor c = db.query(
-                DBHelper.TABLE_DESPESAS,
-                null,
-                DBHelper.COLUMN_RECORRENCIA + " IN (?, ?)",
-                new String[]{"Semanal", "Mensal"},
-                null, null, null
-        )) {
-            if (c != null) {
+    // Soma um valor/quantidade ao total de uma semana e categoria (criando a linha se preciso)
+    private static final String SQL_AJUSTAR_TOTAL =
+            "INSERT INTO " + DBHelper.TABLE_TOTAIS_SEMANAIS + " (" +
+                    DBHelper.COLUMN_TOTAL_SEMANA_INDICE + ", " + DBHelper.COLUMN_TOTAL_CATEGORIA_ID + ", " +
+                    DBHelper.COLUMN_TOTAL_CENTIMOS + ", " + DBHelper.COLUMN_TOTAL_QUANTIDADE + ") " +
+                    "VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (" + DBHelper.COLUMN_TOTAL_SEMANA_INDICE + ", " + DBHelper.COLUMN_TOTAL_CATEGORIA_ID + ") " +
+                    "DO UPDATE SET " +
+                    DBHelper.COLUMN_TOTAL_CENTIMOS + " = " + DBHelper.COLUMN_TOTAL_CENTIMOS + " + excluded." + DBHelper.COLUMN_TOTAL_CENTIMOS + ", " +
+                    DBHelper.COLUMN_TOTAL_QUANTIDADE + " = " + DBHelper.COLUMN_TOTAL_QUANTIDADE + " + excluded." + DBHelper.COLUMN_TOTAL_QUANTIDADE;
+
+    // Remove a linha de totais de uma semana e categoria que já não tem despesas
+    private static final String SQL_LIMPAR_TOTAL =
+            "DELETE FROM " + DBHelper.TABLE_TOTAIS_SEMANAIS +
+                    " WHERE " + DBHelper.COLUMN_TOTAL_SEMANA_INDICE + " = ? AND " + DBHelper.COLUMN_TOTAL_CATEGORIA_ID + " = ? AND " +
+                    DBHelper.COLUMN_TOTAL_QUANTIDADE + " <= 0";
+
+    /**
+     * Soma um valor (positivo ou negativo) ao total da semana/categoria da despesa.
+     * Deve ser chamado dentro da mesma transação que altera a tabela de despesas.
+     * Linhas que ficam sem despesas são removidas.
+     */
+    private void ajustarTotalSemanal(long timestamp, String categoria, long valor, int quantidade) {
+        int semana = DateUtils.semanaDe(timestamp);
+        int cat = idCategoria(categoria);
+
+        db.execSQL(SQL_AJUSTAR_TOTAL, new Object[]{semana, cat, valor, quantidade});
+        if (quantidade < 0) db.execSQL(SQL_LIMPAR_TOTAL, new Object[]{semana, cat});
+    }
+
+    /**
+     * Versão de ajustarTotalSemanal para operações em lote:
+     * as instruções SQL são compiladas uma vez e reutilizadas para todas as linhas.
+     */
+    private final class TotaisEmLote implements AutoCloseable {
+        private final SQLiteStatement ajustar = db.compileStatement(SQL_AJUSTAR_TOTAL);
+        private final SQLiteStatement limpar = db.compileStatement(SQL_LIMPAR_TOTAL);
+
+        void ajustar(long timestamp, String categoria, long valor, int quantidade) {
+            int semana = DateUtils.semanaDe(timestamp);
+            int cat = idCategoria(categoria);
+
+            ajustar.bindLong(1, semana);
+            ajustar.bindLong(2, cat);
+            ajustar.bindLong(3, valor);
+            ajustar.bindLong(4, quantidade);
+            ajustar.executeInsert();
+
+            if (quantidade < 0) {
+                limpar.bindLong(1, semana);
+                limpar.bindLong(2, cat);
+                limpar.executeUpdateDelete();
+            }
+        }
+
+        @Override
+        public void close() {
+            ajustar.close();
+            limpar.close();
+        }
+    }
+
+    // ======== RECORRÊNCIAS ========
+    // Cada despesa recorrente criada pelo utilizador é um modelo com uma linha em RECURRENCE_SCHEDULE.
+    // As cópias geradas mantêm a recorrência (para a mostrar na lista) mas não são modelos.
+
+    private static final String SQL_AGENDAR =
+            "INSERT OR REPLACE INTO " + DBHelper.TABLE_RECORRENCIAS + " (" +
+                    DBHelper.COLUMN_REC_DESPESA_ID + ", " + DBHelper.COLUMN_REC_RECORRENCIA + ", " +
+                    DBHelper.COLUMN_REC_PROXIMA + ") VALUES (?, ?, ?)";
+
+    private static final String SQL_DESAGENDAR =
+            "DELETE FROM " + DBHelper.TABLE_RECORRENCIAS + " WHERE " + DBHelper.COLUMN_REC_DESPESA_ID + " = ?";
+
+    private static final String SQL_REAGENDAR =
+            "UPDATE " + DBHelper.TABLE_RECORRENCIAS + " SET " + DBHelper.COLUMN_REC_PROXIMA + " = ?" +
+                    " WHERE " + DBHelper.COLUMN_REC_DESPESA_ID + " = ?";
+
+    // Só os modelos cuja próxima ocorrência já chegou (usa o índice de next_due)
+    private static final String SQL_RECORRENCIAS_VENCIDAS =
+            "SELECT d." + DBHelper.COLUMN_ID + ", d." + DBHelper.COLUMN_DESCRICAO + ", d." + DBHelper.COLUMN_CATEGORIA_ID +
+                    ", d." + DBHelper.COLUMN_VALOR_CENTIMOS + ", r." + DBHelper.COLUMN_REC_RECORRENCIA +
+                    " FROM " + DBHelper.TABLE_RECORRENCIAS + " r" +
+                    " JOIN " + DBHelper.TABLE_DESPESAS + " d ON d." + DBHelper.COLUMN_ID + " = r." + DBHelper.COLUMN_REC_DESPESA_ID +
+                    " WHERE r." + DBHelper.COLUMN_REC_PROXIMA + " <= ?";
+
+    // Regista a despesa como modelo (se for recorrente) ou retira-a do calendário
+    private void agendarRecorrencia(long id, String recorrencia, long timestamp) {
+        if (DBHelper.eRecorrente(recorrencia)) {
+            db.execSQL(SQL_AGENDAR, new Object[]{id, recorrencia, DBHelper.proximaOcorrencia(recorrencia, timestamp)});
+        } else {
+            db.execSQL(SQL_DESAGENDAR, new Object[]{id});
+        }
+    }
+
+    private static boolean recorrenciaMudou(Despesa antiga, Despesa nova) {
+        String a = antiga.getRecorrencia() != null ? antiga.getRecorrencia() : "";
+        String b = nova.getRecorrencia() != null ? nova.getRecorrencia() : "";
+        return !a.equalsIgnoreCase(b);
+    }
+
+    /**
+     * Gera as despesas recorrentes (Semanal ou Mensal) que já venceram.
+     * Só são lidos os modelos com next_due até ao instante indicado, pelo que o custo
+     * depende do número de recorrências e não do tamanho do histórico.
+     * Cada modelo gera no máximo uma despesa por execução; a próxima ocorrência passa
+     * para a semana/mês seguinte ao da despesa gerada. Tudo numa só transação.
+     *
+     * @param agora instante atual (timestamp das despesas geradas)
+     * @return número de despesas geradas
+     */
+    public int gerarDespesasRecorrentes(long agora) {
+        long t0 = MetricasDAO.inicio();
+        int geradas = 0;
+        db.beginTransaction();
+        try {
+            List<Despesa> modelos = new ArrayList<>();
+            try (Cursor c = db.rawQuery(SQL_RECORRENCIAS_VENCIDAS, new String[]{String.valueOf(agora)})) {
                 while (c.moveToNext()) {
-                    String descricao = c.getString(c.getColumnIndexOrThrow(DBHelper.COLUMN_DESCRICAO));
-                    String categoria = c.getString(c.getColumnIndexOrThrow(DBHelper.COLUMN_CATEGORIA));
-                    double valor = c.getDouble(c.getColumnIndexOrThrow(DBHelper.COLUMN_VALOR));
-                    String recorrencia = c.getString(c.getColumnIndexOrThrow(DBHelper.COLUMN_RECORRENCIA));
-                    long timestampAntigo = c.getLong(c.getColumnIndexOrThrow(DBHelper.COLUMN_TIMESTAMP));
-
-                    boolean deveCriar = false;
-
-                    // Verifica se deve criar nova despesa (consoante recorrência)
-                    if ("Semanal".equalsIgnoreCase(recorrencia)) {
-                        if (timestampAntigo < inicioSemana) deveCriar = true;
-                    } else if ("Mensal".equalsIgnoreCase(recorrencia)) {
-                        Calendar calUltima = Calendar.getInstance();
-                        calUltima.setTimeInMillis(timestampAntigo);
-                        Calendar calAgora = Calendar.getInstance();
-
-                        if (calAgora.get(Calendar.MONTH) != calUltima.get(Calendar.MONTH)
-                                || calAgora.get(Calendar.YEAR) != calUltima.get(Calendar.YEAR)) {
-                            deveCriar = true;
+                    modelos.add(new Despesa(c.getInt(0), c.getString(1), categorias.nome(c.getInt(2)),
+                            c.getLong(3), agora, c.getString(4)));
+                }
+            }
+
+            if (!modelos.isEmpty()) {
+                try (SQLiteStatement inserir = db.compileStatement(SQL_INSERIR);
+                     SQLiteStatement reagendar = db.compileStatement(SQL_REAGENDAR);
+                     TotaisEmLote totais = new TotaisEmLote()) {
+                    for (Despesa modelo : modelos) {
+                        ligarCampos(inserir, modelo);
+                        if (inserir.executeInsert() != -1) {
+                            totais.ajustar(agora, modelo.getCategoria(), modelo.getValorCentimos(), 1);
+                            geradas++;
                         }
+                        reagendar.bindLong(1, DBHelper.proximaOcorrencia(modelo.getRecorrencia(), agora));
+                        reagendar.bindLong(2, modelo.getId());
+                        reagendar.executeUpdateDelete();
                     }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        MetricasDAO.registar("DespesaDAO.gerarDespesasRecorrentes", t0, geradas, SQL_RECORRENCIAS_VENCIDAS, agora);
+        if (geradas > 0) publicar(AlteracaoDados.lote(DBHelper.TABLE_DESPESAS, agora, agora));
+        return geradas;
+    }
+
+    // ======== SINCRONIZAÇÃO ========
+
+    private static final String SQL_INSERIR_REMOTA =
+            "INSERT INTO " + DBHelper.TABLE_DESPESAS + " (" +
+                    DBHelper.COLUMN_DESCRICAO + ", " + DBHelper.COLUMN_CATEGORIA_ID + ", " +
+                    DBHelper.COLUMN_VALOR_CENTIMOS + ", " + DBHelper.COLUMN_RECORRENCIA + ", " +
+                    DBHelper.COLUMN_TIMESTAMP + ", " + DBHelper.COLUMN_DIA + ", " +
+                    DBHelper.COLUMN_SEMANA + ", " + DBHelper.COLUMN_UID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_MARCAR_APLICACAO_REMOTA =
+            "INSERT OR REPLACE INTO " + DBHelper.TABLE_SYNC_ESTADO + " (" + DBHelper.COLUMN_SYNC_CHAVE + ")" +
+                    " VALUES ('" + DBHelper.SYNC_A_APLICAR_REMOTO + "')";
 
-                    // Cria a despesa se não existir uma igual na semana
-                    if (deveCriar && !existeDespesaSimilar(descricao, categoria, valor, inicioSemana)) {
-                        ContentValues values = new ContentValues();
-                        values.put(DBHelper.COLUMN_DESCRICAO, descricao);
-                        values.put(DBHelper.COLUMN_CATEGORIA, categoria);
-                        values.put(DBHelper.COLUMN_VALOR, valor);
-                        values.put(DBHelper.COLUMN_RECORRENCIA, recorrencia);
-                        values.put(DBHelper.COLUMN_TIMESTAMP, System.currentTimeMillis());
-                        db.insert(DBHelper.TABLE_DESPESAS, null, values);
+    /**
+     * Aplica despesas recebidas do remoto (inserção, atualização ou eliminação pelo uid),
+     * mantendo os totais semanais, numa só transação em que as alterações não são
+     * registadas em CHANGE_LOG. No fim é publicada uma alteração LOTE.
+     *
+     * As despesas recebidas não são agendadas como modelos de recorrência: as cópias
+     * são geradas apenas no dispositivo onde o modelo foi criado e chegam pela sincronização.
+     *
+     * @param registos    registos de despesas recebidos
+     * @param naTransacao corre antes do commit, na mesma transação (ex: guardar a marca da receção)
+     * @return número de despesas alteradas
+     */
+    public int aplicarRemotas(List<RegistoSync> registos, Runnable naTransacao) {
+        long t0 = MetricasDAO.inicio();
+        int aplicadas = 0;
+        Intervalo afetado = new Intervalo();
+        for (RegistoSync r : registos) {
+            if (!r.apagado) idCategoria(r.categoria);
+        }
+        db.beginTransaction();
+        try (SQLiteStatement inserir = db.compileStatement(SQL_INSERIR_REMOTA);
+             SQLiteStatement atualizar = db.compileStatement(SQL_ATUALIZAR);
+             SQLiteStatement eliminar = db.compileStatement(SQL_ELIMINAR);
+             SQLiteStatement desagendar = db.compileStatement(SQL_DESAGENDAR);
+             TotaisEmLote totais = new TotaisEmLote()) {
+            db.execSQL(SQL_MARCAR_APLICACAO_REMOTA);
+
+            for (RegistoSync r : registos) {
+                Despesa antiga = obterPorUid(r.chave);
+                if (antiga != null) {
+                    afetado.incluir(antiga.getTimestamp());
+                    totais.ajustar(antiga.getTimestamp(), antiga.getCategoria(), -antiga.getValorCentimos(), -1);
+                }
+
+                if (r.apagado) {
+                    if (antiga == null) continue;
+                    eliminar.bindLong(1, antiga.getId());
+                    eliminar.executeUpdateDelete();
+                    desagendar.bindLong(1, antiga.getId());
+                    desagendar.executeUpdateDelete();
+                } else {
+                    Despesa nova = new Despesa(r.descricao, r.categoria, r.valorCentimos, r.timestamp, r.recorrencia);
+                    if (antiga == null) {
+                        ligarCampos(inserir, nova);
+                        inserir.bindString(8, r.chave);
+                        inserir.executeInsert();
+                    } else {
+                        ligarCampos(atualizar, nova);
+                        atualizar.bindLong(8, antiga.getId());
+                        atualizar.executeUpdateDelete();
+                        if (!DBHelper.eRecorrente(r.recorrencia)) {
+                            desagendar.bindLong(1, antiga.getId());
+                            desagendar.executeUpdateDelete();
+                        }
                     }
+                    afetado.incluir(r.timestamp);
+                    totais.ajustar(r.timestamp, r.categoria, r.valorCentimos, 1);
                 }
+                aplicadas++;
             }
+
+            if (naTransacao != null) naTransacao.run();
+            db.delete(DBHelper.TABLE_SYNC_ESTADO, DBHelper.COLUMN_SYNC_CHAVE + " = ?",
+                    new String[]{DBHelper.SYNC_A_APLICAR_REMOTO});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        MetricasDAO.registar("DespesaDAO.aplicarRemotas", t0, aplicadas, SQL_INSERIR_REMOTA, null);
+        afetado.publicar(aplicadas);
+        return aplicadas;
+    }
 
-        db.close();
+    // Despesa com o uid indicado, ou null se não existir
+    private Despesa obterPorUid(String uid) {
+        try (Cursor c = db.query(
+                DBHelper.TABLE_DESPESAS,
+                null,
+                DBHelper.COLUMN_UID + " = ?",
+                new String[]{uid},
+                null, null, null
+        )) {
+            return c.moveToFirst() ? fromCursor(c) : null;
+        }
     }
 
     // Constrói objeto Despesa a partir de um cursor de BD
     private Despesa fromCursor(Cursor c) {
-        return new Despesa(
+        Despesa d = new Despesa(
                 c.getInt(c.getColumnIndexOrThrow(DBHelper.COLUMN_ID)),
                 c.getString(c.getColumnIndexOrThrow(DBHelper.COLUMN_DESCRICAO)),
-                c.getString(c.getColumnIndexOrThrow(DBHelper.COLUMN_CATEGORIA)),
-                c.getDouble(c.getColumnIndexOrThrow(DBHelper.COLUMN_VALOR)),
+                categorias.nome(c.getInt(c.getColumnIndexOrThrow(DBHelper.COLUMN_CATEGORIA_ID))),
+                c.getLong(c.getColumnIndexOrThrow(DBHelper.COLUMN_VALOR_CENTIMOS)),
                 c.getLong(c.getColumnIndexOrThrow(DBHelper.COLUMN_TIMESTAMP)),
                 c.getString(c.getColumnIndexOrThrow(DBHelper.COLUMN_RECORRENCIA))
         );
+        int uid = c.getColumnIndex(DBHelper.COLUMN_UID);
+        if (uid != -1) d.setUid(c.getString(uid));
+        return d;
     }
 
-    // Fecha a ligação à base de dados
+    // Liberta a referência à ligação partilhada
     public void fechar() {
-        dbHelper.close();
+        if (fechado) return;
+        fechado = true;
+        dbManager.libertar();
     }
 }
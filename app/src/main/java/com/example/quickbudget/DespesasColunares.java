@@ -0,0 +1,155 @@
+package com.example.quickbudget;
+
+import android.database.Cursor;
+
+/**
+ * DespesasColunares
+ * ------------------
+ * Cópia imutável de um conjunto de despesas guardada por colunas, em arrays primitivos
+ * paralelos (id, timestamp, valor em cêntimos e categoria), em vez de um objeto Despesa por linha.
+ * As categorias são guardadas pelo id (o mesmo da tabela CATEGORIAS) e os nomes
+ * são resolvidos pelo registo {@link Categorias}.
+ *
+ * As linhas estão ordenadas por timestamp, o que permite localizar um intervalo
+ * por pesquisa binária. As somas (exatas, em cêntimos) e agrupamentos não alocam memória: os agrupamentos
+ * escrevem num array fornecido por quem chama.
+ */
+public final class DespesasColunares {
+
+    /**
+     * Filtro aplicado linha a linha, sem criar objetos.
+     */
+    public interface Filtro {
+        boolean aceita(long timestamp, long valor, int categoriaId);
+    }
+
+    private final int[] ids;
+    private final long[] timestamps;
+    private final long[] valores; // cêntimos
+    private final int[] categorias;
+    private final Categorias registo;
+
+    DespesasColunares(int[] ids, long[] timestamps, long[] valores, int[] categorias, Categorias registo) {
+        this.ids = ids;
+        this.timestamps = timestamps;
+        this.valores = valores;
+        this.categorias = categorias;
+        this.registo = registo;
+    }
+
+    /**
+     * Lê as linhas de um cursor com as colunas (id, timestamp, valor, categoria_id),
+     * por esta ordem e já ordenadas por timestamp crescente.
+     */
+    static DespesasColunares deCursor(Cursor c, Categorias registo) {
+        int n = c.getCount();
+        int[] ids = new int[n];
+        long[] timestamps = new long[n];
+        long[] valores = new long[n];
+        int[] categorias = new int[n];
+
+        for (int i = 0; i < n && c.moveToNext(); i++) {
+            ids[i] = c.getInt(0);
+            timestamps[i] = c.getLong(1);
+            valores[i] = c.getLong(2);
+            categorias[i] = c.getInt(3);
+        }
+        return new DespesasColunares(ids, timestamps, valores, categorias, registo);
+    }
+
+    // ======== ACESSO ========
+
+    public int tamanho() { return ids.length; }
+    public int getId(int linha) { return ids[linha]; }
+    public long getTimestamp(int linha) { return timestamps[linha]; }
+    public long getValor(int linha) { return valores[linha]; }
+    public int getCategoriaId(int linha) { return categorias[linha]; }
+
+    // Tamanho de um array indexado por id de categoria (para somarPorCategoria)
+    public int numCategorias() { return registo.tamanho(); }
+    public String nomeCategoria(int categoriaId) { return registo.nome(categoriaId); }
+
+    // Id da categoria com este nome, ou -1 se não existir
+    public int categoriaId(String nome) { return registo.idDe(nome); }
+
+    /**
+     * Primeira linha com timestamp >= ao indicado (ou tamanho() se não houver).
+     */
+    public int primeiraLinhaDesde(long timestamp) {
+        int baixo = 0, alto = timestamps.length;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (timestamps[meio] < timestamp) baixo = meio + 1; else alto = meio;
+        }
+        return baixo;
+    }
+
+    // ======== AGREGAÇÕES ========
+
+    public long soma() {
+        long total = 0;
+        for (long v : valores) total += v;
+        return total;
+    }
+
+    // Soma dos valores no intervalo [inicio, fim[
+    public long soma(long inicio, long fim) {
+        long total = 0;
+        for (int i = primeiraLinhaDesde(inicio); i < timestamps.length && timestamps[i] < fim; i++) {
+            total += valores[i];
+        }
+        return total;
+    }
+
+    // Soma dos valores de uma categoria no intervalo [inicio, fim[
+    public long somaCategoria(int categoriaId, long inicio, long fim) {
+        long total = 0;
+        for (int i = primeiraLinhaDesde(inicio); i < timestamps.length && timestamps[i] < fim; i++) {
+            if (categorias[i] == categoriaId) total += valores[i];
+        }
+        return total;
+    }
+
+    /**
+     * Soma por categoria no intervalo [inicio, fim[.
+     * {@code totais[categoriaId]} recebe a soma; o array deve ter pelo menos numCategorias() posições
+     * e não é limpo antes (permite acumular vários intervalos).
+     */
+    public void somarPorCategoria(long inicio, long fim, long[] totais) {
+        for (int i = primeiraLinhaDesde(inicio); i < timestamps.length && timestamps[i] < fim; i++) {
+            totais[categorias[i]] += valores[i];
+        }
+    }
+
+    /**
+     * Soma por intervalos consecutivos: {@code limites} (crescentes) define os intervalos
+     * [limites[k], limites[k+1][ e {@code totais[k]} recebe a soma de cada um.
+     * Útil para totais por semana ou por dia com uma única passagem.
+     */
+    public void somarPorIntervalos(long[] limites, long[] totais) {
+        if (limites.length < 2) return;
+        int k = 0;
+        for (int i = primeiraLinhaDesde(limites[0]); i < timestamps.length; i++) {
+            long t = timestamps[i];
+            while (k < limites.length - 1 && t >= limites[k + 1]) k++;
+            if (k == limites.length - 1) break;
+            totais[k] += valores[i];
+        }
+    }
+
+    public int contar(Filtro filtro) {
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (filtro.aceita(timestamps[i], valores[i], categorias[i])) n++;
+        }
+        return n;
+    }
+
+    public long somaSe(Filtro filtro) {
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (filtro.aceita(timestamps[i], valores[i], categorias[i])) total += valores[i];
+        }
+        return total;
+    }
+}
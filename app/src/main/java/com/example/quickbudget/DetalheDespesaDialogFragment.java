@@ -76,24 +76,23 @@ public class DetalheDespesaDialogFragment extends DialogFragment {
         recAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         spinnerRecorrencia.setAdapter(recAdapter);
 
-        // Busca a despesa pelo ID
+        // Busca a despesa pelo ID (em segundo plano) e preenche os campos
+        QuickBudgetRepository repository = QuickBudgetRepository.getInstance(requireContext());
         int id = getArguments() != null ? getArguments().getInt(ARG_ID, -1) : -1;
         if (id != -1) {
-            DespesaDAO dao = new DespesaDAO(requireContext());
-            despesa = dao.obterPorId(id);
-            dao.fechar();
-        }
+            repository.obterDespesa(id).observe(this, d -> {
+                despesa = d;
+                if (despesa == null) return;
 
-        // Preenche os campos com os dados existentes
-        if (despesa != null) {
-            editDescricao.setText(despesa.getDescricao());
-            editValor.setText(String.valueOf(despesa.getValor()));
+                editDescricao.setText(despesa.getDescricao());
+                editValor.setText(Dinheiro.paraEdicao(despesa.getValorCentimos()));
 
-            int catIndex = Arrays.asList(categorias).indexOf(despesa.getCategoria());
-            spinnerCategoria.setSelection(Math.max(catIndex, 0));
+                int catIndex = Arrays.asList(categorias).indexOf(despesa.getCategoria());
+                spinnerCategoria.setSelection(Math.max(catIndex, 0));
 
-            int recIndex = Arrays.asList(recs).indexOf(despesa.getRecorrencia());
-            spinnerRecorrencia.setSelection(Math.max(recIndex, 0));
+                int recIndex = Arrays.asList(recs).indexOf(despesa.getRecorrencia());
+                spinnerRecorrencia.setSelection(Math.max(recIndex, 0));
+            });
         }
 
         // Cria o diálogo base
@@ -131,9 +130,9 @@ public class DetalheDespesaDialogFragment extends DialogFragment {
                     return;
                 }
 
-                double valor;
+                long valor;
                 try {
-                    valor = Double.parseDouble(valorStr.replace(",", "."));
+                    valor = Dinheiro.parse(valorStr);
                     if (valor < 0) throw new NumberFormatException();
                 } catch (NumberFormatException e) {
                     editValor.setError("Valor inválido");
@@ -145,20 +144,24 @@ public class DetalheDespesaDialogFragment extends DialogFragment {
                 String recorrencia = spinnerRecorrencia.getSelectedItem().toString();
 
                 despesa.setDescricao(desc);
-                despesa.setValor(valor);
+                despesa.setValorCentimos(valor);
                 despesa.setCategoria(categoria);
                 despesa.setRecorrencia(recorrencia);
                 despesa.setTimestamp(System.currentTimeMillis());
 
-                // Atualiza na base de dados
-                DespesaDAO dao = new DespesaDAO(requireContext());
-                dao.atualizar(despesa);
-                dao.fechar();
-
-                Toast.makeText(requireContext(), "Despesa atualizada!", Toast.LENGTH_SHORT).show();
-
-                if (listener != null) listener.onDespesaAlterada();
-                dialog.dismiss();
+                // Atualiza na base de dados (em segundo plano)
+                btnGuardar.setEnabled(false);
+                repository.atualizar(despesa).observe(this, ok -> {
+                    if (ok == null) {
+                        btnGuardar.setEnabled(true);
+                        Toast.makeText(requireContext(), "Erro ao atualizar despesa!", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    Toast.makeText(requireContext(), "Despesa atualizada!", Toast.LENGTH_SHORT).show();
+
+                    if (listener != null) listener.onDespesaAlterada();
+                    dialog.dismiss();
+                });
             });
 
             // Eliminar despesa (com confirmação)
@@ -169,14 +172,16 @@ public class DetalheDespesaDialogFragment extends DialogFragment {
                             .setMessage("Tens a certeza que queres eliminar esta despesa?")
                             .setNegativeButton("Cancelar", null)
                             .setPositiveButton("Sim", (confirmDialog, which) -> {
-                                DespesaDAO dao = new DespesaDAO(requireContext());
-                                dao.eliminar(despesa.getId());
-                                dao.fechar();
-
-                                Toast.makeText(requireContext(), "Despesa eliminada!", Toast.LENGTH_SHORT).show();
-
-                                if (listener != null) listener.onDespesaAlterada();
-                                dialog.dismiss();
+                                repository.eliminar(despesa.getId()).observe(this, ok -> {
+                                    if (ok == null) {
+                                        Toast.makeText(requireContext(), "Erro ao eliminar despesa!", Toast.LENGTH_SHORT).show();
+                                        return;
+                                    }
+                                    Toast.makeText(requireContext(), "Despesa eliminada!", Toast.LENGTH_SHORT).show();
+
+                                    if (listener != null) listener.onDespesaAlterada();
+                                    dialog.dismiss();
+                                });
                             })
                             .show();
                 }
@@ -0,0 +1,226 @@
+package com.example.quickbudget;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * DiarioDespesas
+ * ---------------
+ * Diário (ficheiro só de acréscimo) das despesas registadas no formulário e ainda não
+ * gravadas na base de dados. Acrescentar uma despesa é uma escrita de algumas dezenas de
+ * bytes num FileChannel já aberto, sem transação nem fsync: pode ser feito na thread da
+ * interface. O QuickBudgetRepository passa depois as despesas para o SQLite, em lote,
+ * numa thread de fundo.
+ *
+ * Cada registo tem o formato:
+ * <pre>
+ *     [tamanho: int][crc32 dos dados: int][dados: tamanho bytes]
+ *     dados = versão (byte), uid, descrição, categoria, recorrência (UTF), valor, timestamp (long)
+ * </pre>
+ * Um registo cortado a meio (o processo morreu durante a escrita) ou com o CRC errado
+ * marca o fim do diário. Ao abrir o ficheiro, tudo o que vem depois do último registo
+ * válido é cortado antes de qualquer acréscimo: os registos novos nunca ficam escondidos
+ * atrás de uma cauda estragada.
+ *
+ * Passagem para a base de dados: {@link #separar()} renomeia o diário para um segmento
+ * à parte ({@code .a_passar}) e abre um diário novo, vazio; é o único momento em que os
+ * acréscimos esperam, e só pela mudança de nome. A leitura do segmento, a transação e
+ * {@link #descartar()} (que apaga o segmento) correm sem bloquear {@link #acrescentar}.
+ * Um segmento que sobreviva a uma passagem interrompida é devolvido outra vez pelo
+ * {@code separar()} seguinte, antes do diário atual.
+ *
+ * Cada despesa recebe um uid ao entrar no diário: se o processo morrer depois de a
+ * despesa chegar à base de dados mas antes de o segmento ser apagado, voltar a inseri-la
+ * não a duplica (ver DespesaDAO.inserirDoDiario).
+ *
+ * Enquanto não são passadas para a base de dados, as despesas só estão na cache de ficheiros
+ * do sistema: sobrevivem à morte do processo, mas não a uma falha de energia.
+ */
+public final class DiarioDespesas {
+
+    private static final byte VERSAO = 1;
+    private static final int CABECALHO = 8;             // tamanho + crc
+    private static final int MAX_REGISTO = 64 * 1024;   // acima disto, o tamanho lido é lixo
+    private static final String SUFIXO_SEGMENTO = ".a_passar";  // registos separados para a base de dados
+    private static final String SUFIXO_TEMPORARIO = ".tmp";     // deixado pela versão que reescrevia o diário
+
+    private final File ficheiro;
+    private final File segmento;
+    private FileChannel canal; // aberto por abrir() ou na primeira utilização
+    private long fim;          // fim do último registo válido, onde entra o registo seguinte
+
+    public DiarioDespesas(File ficheiro) {
+        this.ficheiro = ficheiro;
+        this.segmento = new File(ficheiro.getPath() + SUFIXO_SEGMENTO);
+    }
+
+    /**
+     * Abre o diário e corta a cauda de uma escrita interrompida. Deve ser chamado numa thread
+     * de fundo antes do primeiro {@link #acrescentar}, para que este não abra o ficheiro.
+     */
+    public synchronized void abrir() throws IOException {
+        Files.deleteIfExists(new File(ficheiro.getPath() + SUFIXO_TEMPORARIO).toPath());
+        canal();
+    }
+
+    private FileChannel canal() throws IOException {
+        if (canal == null || !canal.isOpen()) {
+            canal = FileChannel.open(ficheiro.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long tamanho = canal.size();
+            fim = lerRegistos(lerDesde(canal, 0, tamanho), new ArrayList<>());
+            if (fim < tamanho) canal.truncate(fim); // cauda de uma escrita interrompida
+        }
+        return canal;
+    }
+
+    /**
+     * Acrescenta a despesa ao fim do diário. Se ainda não tiver uid, recebe um novo.
+     */
+    public synchronized void acrescentar(Despesa despesa) throws IOException {
+        if (despesa.getUid() == null) despesa.setUid(UUID.randomUUID().toString().replace("-", ""));
+        byte[] dados = codificar(despesa);
+        CRC32 crc = new CRC32();
+        crc.update(dados);
+
+        ByteBuffer registo = ByteBuffer.allocate(CABECALHO + dados.length);
+        registo.putInt(dados.length).putInt((int) crc.getValue()).put(dados).flip();
+        FileChannel c = canal();
+        long posicao = fim;
+        try {
+            while (registo.hasRemaining()) posicao += c.write(registo, posicao);
+        } catch (IOException e) {
+            try {
+                c.truncate(fim); // não deixa meio registo à frente do seguinte
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw e;
+        }
+        fim = posicao;
+    }
+
+    /**
+     * Separa as despesas a passar para a base de dados, pela ordem em que foram acrescentadas:
+     * as de um segmento deixado por uma passagem interrompida ou, não o havendo, as do diário
+     * atual, que passa a segmento. Devolve uma lista vazia se não houver nada a passar.
+     *
+     * Depois de as gravar, chamar {@link #descartar()}. Uma passagem de cada vez: separar() e
+     * descartar() não podem correr em paralelo entre si, só com acrescentar().
+     */
+    public List<Despesa> separar() throws IOException {
+        List<Despesa> despesas = new ArrayList<>();
+        if (!segmento.exists()) {
+            synchronized (this) {
+                canal();
+                if (fim == 0) return despesas;
+                fechar();
+                Files.move(ficheiro.toPath(), segmento.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                canal(); // diário novo, vazio
+            }
+        }
+
+        try (FileChannel c = FileChannel.open(segmento.toPath(), StandardOpenOption.READ)) {
+            lerRegistos(lerDesde(c, 0, c.size()), despesas);
+        }
+        if (despesas.isEmpty()) {
+            descartar(); // segmento sem registos válidos: passa ao diário atual
+            return separar();
+        }
+        return despesas;
+    }
+
+    /**
+     * Apaga o segmento devolvido pelo último {@link #separar()} (já gravado na base de dados).
+     * Se o processo morrer antes, as despesas são separadas outra vez e ignoradas pelo uid.
+     */
+    public void descartar() throws IOException {
+        Files.deleteIfExists(segmento.toPath());
+    }
+
+    // Descodifica os registos válidos do buffer e devolve a posição onde acaba o último
+    private static long lerRegistos(ByteBuffer buffer, List<Despesa> despesas) {
+        CRC32 crc = new CRC32();
+        int fim = 0;
+        while (buffer.remaining() >= CABECALHO) {
+            int n = buffer.getInt();
+            int esperado = buffer.getInt();
+            if (n <= 0 || n > MAX_REGISTO || n > buffer.remaining()) break;
+
+            byte[] dados = new byte[n];
+            buffer.get(dados);
+            crc.reset();
+            crc.update(dados);
+            if ((int) crc.getValue() != esperado) break;
+
+            Despesa d = descodificar(dados);
+            if (d == null) break;
+            despesas.add(d);
+            fim = buffer.position();
+        }
+        return fim;
+    }
+
+    // Bytes do canal entre as posições indicadas, prontos a ler
+    private static ByteBuffer lerDesde(FileChannel c, long inicio, long fim) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (fim - inicio));
+        while (buffer.hasRemaining()) {
+            if (c.read(buffer, inicio + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public synchronized void fechar() throws IOException {
+        if (canal != null) canal.close();
+        canal = null;
+    }
+
+    // ======== FORMATO ========
+
+    private static byte[] codificar(Despesa d) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + d.getDescricao().length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSAO);
+        out.writeUTF(d.getUid());
+        out.writeUTF(d.getDescricao());
+        out.writeUTF(d.getCategoria());
+        out.writeUTF(d.getRecorrencia() != null ? d.getRecorrencia() : "");
+        out.writeLong(d.getValorCentimos());
+        out.writeLong(d.getTimestamp());
+        return bytes.toByteArray();
+    }
+
+    // Devolve null se a versão não for conhecida ou os dados estiverem truncados
+    private static Despesa descodificar(byte[] dados) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(dados))) {
+            if (in.readByte() != VERSAO) return null;
+            String uid = in.readUTF();
+            String descricao = in.readUTF();
+            String categoria = in.readUTF();
+            String recorrencia = in.readUTF();
+            long valor = in.readLong();
+            long timestamp = in.readLong();
+
+            Despesa d = new Despesa(descricao, categoria, valor, timestamp,
+                    recorrencia.isEmpty() ? null : recorrencia);
+            d.setUid(uid);
+            return d;
+        } catch (IOException e) { // EOFException, UTFDataFormatException
+            return null;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.quickbudget;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Dinheiro
+ * ---------
+ * Valores monetários representados como {@code long} em cêntimos (ex: €12,34 = 1234).
+ * As somas e comparações são exatas e não há objetos a criar; esta classe só
+ * converte de e para texto (e para euros em vírgula flutuante, apenas para os gráficos).
+ */
+public final class Dinheiro {
+
+    private Dinheiro() {}
+
+    /**
+     * Converte o texto introduzido pelo utilizador ("12,5", "12.50", "3") em cêntimos,
+     * arredondando ao cêntimo.
+     *
+     * @throws NumberFormatException se o texto não for um número válido
+     */
+    public static long parse(String texto) {
+        String normalizado = texto.trim().replace(",", ".");
+        try {
+            return new BigDecimal(normalizado)
+                    .setScale(2, RoundingMode.HALF_UP)
+                    .movePointRight(2)
+                    .longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Valor fora do intervalo: " + texto);
+        }
+    }
+
+    // Converte euros (vírgula flutuante) em cêntimos, arredondando ao cêntimo
+    public static long deEuros(double euros) {
+        return Math.round(euros * 100);
+    }
+
+    // Valor em euros, para bibliotecas que só aceitam float/double (ex: gráficos)
+    public static double emEuros(long centimos) {
+        return centimos / 100.0;
+    }
+
+    /**
+     * Texto para edição, sem símbolo da moeda e sempre com duas casas ("12.50").
+     */
+    public static String paraEdicao(long centimos) {
+        return BigDecimal.valueOf(centimos, 2).toPlainString();
+    }
+
+    /**
+     * Formata com o símbolo do euro e o separador decimal do idioma atual (ex: "€12,34").
+     */
+    public static String formatar(long centimos) {
+        StringBuilder sb = new StringBuilder(16);
+        acrescentar(sb, centimos);
+        return sb.toString();
+    }
+
+    // Acrescenta o valor formatado a um StringBuilder (sem criar Strings intermédias)
+    public static void acrescentar(StringBuilder sb, long centimos) {
+        long abs = Math.abs(centimos);
+        if (centimos < 0) sb.append('-');
+        sb.append('€').append(abs / 100).append(separadorDecimal());
+        long resto = abs % 100;
+        if (resto < 10) sb.append('0');
+        sb.append(resto);
+    }
+
+    private static char separadorDecimal() {
+        return DecimalFormatSymbols.getInstance(Locale.getDefault()).getDecimalSeparator();
+    }
+}
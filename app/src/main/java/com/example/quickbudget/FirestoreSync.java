@@ -0,0 +1,130 @@
+package com.example.quickbudget;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * FirestoreSync
+ * --------------
+ * {@link RemotoSync} sobre o Firestore: um documento por registo em
+ * utilizadores/{uid}/registos/{tabela:chave}, com a versão atribuída pelo servidor
+ * (serverTimestamp) em cada escrita.
+ *
+ * Cada envio é um WriteBatch (uma única escrita atómica) e cada receção é uma consulta
+ * ordenada por (versao, id) que continua a partir da marca, lida sempre do servidor.
+ * Os métodos bloqueiam até à resposta: devem ser chamados numa thread de fundo.
+ */
+public final class FirestoreSync implements RemotoSync {
+
+    private static final long TEMPO_LIMITE_SEGUNDOS = 30;
+    private static final long NANOS_POR_SEGUNDO = 1_000_000_000L;
+
+    private final CollectionReference registos;
+
+    public FirestoreSync(FirebaseFirestore firestore, String uidUtilizador) {
+        registos = firestore.collection("utilizadores").document(uidUtilizador).collection("registos");
+    }
+
+    @Override
+    public void enviar(List<RegistoSync> lote) throws IOException {
+        WriteBatch batch = registos.getFirestore().batch();
+        for (RegistoSync r : lote) {
+            batch.set(registos.document(r.idDocumento()), paraMapa(r));
+        }
+        aguardar(batch.commit());
+    }
+
+    @Override
+    public List<RegistoSync> receber(MarcaSync depoisDe, int limite) throws IOException {
+        Query consulta = registos
+                .orderBy("versao")
+                .orderBy(FieldPath.documentId())
+                .limit(limite);
+        if (depoisDe != null) {
+            consulta = consulta.startAfter(paraTimestamp(depoisDe.versao), depoisDe.id);
+        }
+
+        QuerySnapshot resultado = aguardar(consulta.get(Source.SERVER));
+        List<RegistoSync> lista = new ArrayList<>(resultado.size());
+        for (DocumentSnapshot doc : resultado.getDocuments()) lista.add(deDocumento(doc));
+        return lista;
+    }
+
+    private static Map<String, Object> paraMapa(RegistoSync r) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("tabela", r.tabela);
+        m.put("chave", r.chave);
+        m.put("apagado", r.apagado);
+        m.put("alteradoEm", r.alteradoEm);
+        m.put("origem", r.origem);
+        m.put("versao", FieldValue.serverTimestamp());
+        if (!r.apagado) {
+            m.put("valorCentimos", r.valorCentimos);
+            if (r.eDespesa()) {
+                m.put("descricao", r.descricao);
+                m.put("categoria", r.categoria);
+                m.put("timestamp", r.timestamp);
+                m.put("recorrencia", r.recorrencia);
+            }
+        }
+        return m;
+    }
+
+    private static RegistoSync deDocumento(DocumentSnapshot doc) {
+        RegistoSync r = new RegistoSync();
+        r.tabela = doc.getString("tabela");
+        r.chave = doc.getString("chave");
+        r.apagado = Boolean.TRUE.equals(doc.getBoolean("apagado"));
+        r.alteradoEm = numero(doc.getLong("alteradoEm"));
+        r.origem = doc.getString("origem");
+        r.valorCentimos = numero(doc.getLong("valorCentimos"));
+        r.descricao = doc.getString("descricao");
+        r.categoria = doc.getString("categoria");
+        r.timestamp = numero(doc.getLong("timestamp"));
+        r.recorrencia = doc.getString("recorrencia");
+
+        Timestamp versao = doc.getTimestamp("versao");
+        r.versao = new MarcaSync(versao != null ? versao.getSeconds() * NANOS_POR_SEGUNDO + versao.getNanoseconds() : 0,
+                doc.getId());
+        return r;
+    }
+
+    private static long numero(Long valor) {
+        return valor != null ? valor : 0;
+    }
+
+    // Versão em nanossegundos → Timestamp (exato, para que startAfter não salte nem repita documentos)
+    private static Timestamp paraTimestamp(long versao) {
+        return new Timestamp(Math.floorDiv(versao, NANOS_POR_SEGUNDO), (int) Math.floorMod(versao, NANOS_POR_SEGUNDO));
+    }
+
+    private static <T> T aguardar(Task<T> tarefa) throws IOException {
+        try {
+            return Tasks.await(tarefa, TEMPO_LIMITE_SEGUNDOS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("Falha na comunicação com o Firestore", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sincronização interrompida", e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.quickbudget;
+
+import android.widget.TextView;
+
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formatador
+ * -----------
+ * Formatação de valores e datas para a interface sem criar objetos a cada chamada,
+ * pensada para o onBindViewHolder das listas e para os resumos.
+ *
+ * Os dados do idioma (separador decimal, formato das datas) e o fuso horário são lidos
+ * uma vez, na criação. Os valores são escritos num {@code char[]} reutilizado por cada
+ * TextView e os rótulos dos dias ("dd MMM yyyy") ficam em cache pelo dia (epoch-day),
+ * pelo que cada dia só é formatado uma vez.
+ *
+ * Não é thread-safe: deve ser usado apenas na thread principal. Se o idioma ou o fuso
+ * horário mudarem, basta criar um Formatador novo.
+ */
+public final class Formatador {
+
+    // Espaço suficiente para qualquer valor em cêntimos ("-€" + 17 dígitos + separador + 2)
+    static final int TAMANHO_MOEDA = 24;
+
+    private static final long DIA = 24L * 60 * 60 * 1000;
+    private static final int TAMANHO_CACHE_DIAS = 512; // potência de 2
+
+    private final char separadorDecimal;
+    private final TimeZone fusoHorario;
+    private final SimpleDateFormat formatoDia;
+
+    // Cache de mapeamento direto: dia → rótulo (dias consecutivos nunca colidem)
+    private final long[] diasEmCache = new long[TAMANHO_CACHE_DIAS];
+    private final String[] rotulosDias = new String[TAMANHO_CACHE_DIAS];
+
+    public Formatador() {
+        this(Locale.getDefault(), TimeZone.getDefault());
+    }
+
+    Formatador(Locale locale, TimeZone fusoHorario) {
+        this.separadorDecimal = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+        this.fusoHorario = fusoHorario;
+        this.formatoDia = new SimpleDateFormat("dd MMM yyyy", locale);
+        this.formatoDia.setTimeZone(fusoHorario);
+        Arrays.fill(diasEmCache, Long.MIN_VALUE);
+    }
+
+    // ======== VALORES ========
+
+    /**
+     * Escreve o valor com o símbolo do euro (ex: "€12,34", "-€0,50") em {@code destino}
+     * a partir da posição {@code pos}. Retorna a posição a seguir ao último carácter escrito.
+     */
+    public int moeda(long centimos, char[] destino, int pos) {
+        long abs = Math.abs(centimos);
+        if (centimos < 0) destino[pos++] = '-';
+        destino[pos++] = '€';
+        pos = inteiro(abs / 100, destino, pos);
+        destino[pos++] = separadorDecimal;
+        int resto = (int) (abs % 100);
+        destino[pos++] = (char) ('0' + resto / 10);
+        destino[pos++] = (char) ('0' + resto % 10);
+        return pos;
+    }
+
+    /**
+     * Escreve um inteiro não negativo em {@code destino} a partir de {@code pos}.
+     * Retorna a posição a seguir ao último dígito.
+     */
+    static int inteiro(long valor, char[] destino, int pos) {
+        int digitos = 1;
+        for (long v = valor; v >= 10; v /= 10) digitos++;
+        int fim = pos + digitos;
+        for (int i = fim - 1; i >= pos; i--) {
+            destino[i] = (char) ('0' + valor % 10);
+            valor /= 10;
+        }
+        return fim;
+    }
+
+    /**
+     * Mostra "prefixo + valor" na TextView, reutilizando o buffer dessa TextView.
+     * {@code prefixo} pode ser null.
+     */
+    public void mostrarMoeda(TextView tv, String prefixo, long centimos) {
+        int tamanhoPrefixo = prefixo != null ? prefixo.length() : 0;
+        char[] buffer = buffer(tv, tamanhoPrefixo + TAMANHO_MOEDA);
+        if (prefixo != null) prefixo.getChars(0, tamanhoPrefixo, buffer, 0);
+        int fim = moeda(centimos, buffer, tamanhoPrefixo);
+        tv.setText(buffer, 0, fim);
+    }
+
+    // Mostra uma percentagem arredondada às unidades (ex: "87%")
+    public void mostrarPercentagem(TextView tv, double percentagem) {
+        char[] buffer = buffer(tv, TAMANHO_MOEDA);
+        long arredondada = Math.round(percentagem);
+        int pos = 0;
+        if (arredondada < 0) {
+            buffer[pos++] = '-';
+            arredondada = -arredondada;
+        }
+        pos = inteiro(arredondada, buffer, pos);
+        buffer[pos++] = '%';
+        tv.setText(buffer, 0, pos);
+    }
+
+    /*
+     * A TextView guarda uma referência ao array passado a setText(char[], ...), por isso cada
+     * TextView tem o seu próprio buffer (guardado na tag), reescrito apenas antes do setText seguinte.
+     */
+    private static char[] buffer(TextView tv, int tamanhoMinimo) {
+        Object tag = tv.getTag(R.id.tag_buffer_texto);
+        if (tag instanceof char[] && ((char[]) tag).length >= tamanhoMinimo) {
+            return (char[]) tag;
+        }
+        char[] buffer = new char[tamanhoMinimo];
+        tv.setTag(R.id.tag_buffer_texto, buffer);
+        return buffer;
+    }
+
+    // ======== DATAS ========
+
+    /**
+     * Rótulo "dd MMM yyyy" do dia do timestamp. Cada dia é formatado uma só vez
+     * e as chamadas seguintes devolvem a mesma String.
+     */
+    public String dia(long millis) {
+        long dia = diaEpoch(millis);
+        int i = (int) (dia & (TAMANHO_CACHE_DIAS - 1));
+        if (diasEmCache[i] != dia || rotulosDias[i] == null) {
+            rotulosDias[i] = formatoDia.format(millis);
+            diasEmCache[i] = dia;
+        }
+        return rotulosDias[i];
+    }
+
+    // Número do dia (desde 1970-01-01) no fuso horário do formatador
+    long diaEpoch(long millis) {
+        return Math.floorDiv(millis + fusoHorario.getOffset(millis), DIA);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.quickbudget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * FusoHorarioReceiver
+ * --------------------
+ * Avisa o {@link DateUtils} quando o fuso horário do sistema muda, para que as regras
+ * do fuso em cache sejam descartadas e os dias/semanas passem a ser calculados no novo fuso.
+ */
+public class FusoHorarioReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) DateUtils.fusoAlterado();
+    }
+}
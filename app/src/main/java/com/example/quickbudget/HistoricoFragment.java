@@ -1,14 +1,27 @@
 package com.example.quickbudget;
 
+import android.app.AlertDialog;
 import android.graphics.Color;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.widget.Toolbar;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -24,7 +37,9 @@ import com.github.mikephil.charting.data.BarEntry;
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 import com.github.mikephil.charting.animation.Easing;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -32,15 +47,56 @@ import java.util.Locale;
  * HistoricoFragment
  * -----------------
  * Fragmento responsável por exibir o histórico financeiro da semana atual
- * e das últimas semanas, através de uma lista e de um gráfico comparativo.
+ * e das últimas semanas (4, 12, 26 ou 52), através de um gráfico comparativo e da lista
+ * de todas as despesas (carregada por páginas à medida que se faz scroll).
+ * Um clique longo numa despesa ativa a seleção múltipla para eliminar várias de uma vez.
+ * A caixa de pesquisa filtra a lista pelas descrições (índice de texto da base de dados).
  * Mostra total gasto, orçamento, saldo, média diária e estado (dentro/excedido).
+ * O menu da barra superior exporta e importa cópias de segurança (JSON ou CSV)
+ * através do seletor de ficheiros do sistema.
  */
 public class HistoricoFragment extends Fragment implements DetalheDespesaDialogFragment.OnDespesaAlteradaListener {
 
     private RecyclerView rvWeekExpenses;
     private TextView tvWeeklyBudget, tvTotalSpent, tvDifference, tvAverage, tvSummaryTitle, tvStatus;
     private BarChart barChart;
+    private Spinner spinnerPeriodo;
     private DespesaAdapter adapter;
+    private View layoutSelecao;
+    private TextView tvSelecao;
+    private Button buttonCancelarSelecao, buttonEliminarSelecao;
+
+    // Paginação do histórico
+    private static final int TAMANHO_PAGINA = 30;
+    private static final int MARGEM_PAGINA = 10; // linhas por mostrar quando se pede a página seguinte
+    private DespesaDAO.ChavePagina proximaPagina; // posição da última despesa carregada
+    private boolean fimDoHistorico = false;
+    private boolean aCarregarPagina = false;
+    private int geracaoLista = 0; // incrementado sempre que a lista é recarregada
+
+    // Pesquisa (texto vazio → histórico completo, por páginas)
+    private static final int LIMITE_PESQUISA = 200;
+    private static final long ATRASO_PESQUISA_MS = 250; // espera que o utilizador pare de escrever
+    private EditText editPesquisa;
+    private String textoPesquisa = "";
+    private final Runnable pesquisaPendente = this::aplicarPesquisa;
+
+    private QuickBudgetRepository repository;
+    private final Formatador formatador = new Formatador();
+
+    // Número de semanas do gráfico (mesma ordem do array periodos_grafico)
+    private static final int[] SEMANAS_GRAFICO = {4, 12, 26, 52};
+    private int semanasGrafico = SEMANAS_GRAFICO[0];
+
+    // Seletores de ficheiros do sistema (Storage Access Framework) para a cópia de segurança
+    private final ActivityResultLauncher<String> exportarJson = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/json"), uri -> exportar(uri, true));
+    private final ActivityResultLauncher<String> exportarCsv = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("text/csv"), uri -> exportar(uri, false));
+    private final ActivityResultLauncher<String[]> importarCopia = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), this::importar);
+    private final ActivityResultLauncher<String[]> escolherExtratos = registerForActivityResult(
+            new ActivityResultContracts.OpenMultipleDocuments(), this::importarExtratos);
 
     public HistoricoFragment() {}
 
@@ -50,6 +106,7 @@ public class HistoricoFragment extends Fragment implements DetalheDespesaDialogF
                              @Nullable ViewGroup container,
                              @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_historico, container, false);
+        repository = QuickBudgetRepository.getInstance(requireContext());
 
         // Liga elementos do layout
         tvSummaryTitle = view.findViewById(R.id.textViewHistorySummary);
@@ -60,63 +117,278 @@ public class HistoricoFragment extends Fragment implements DetalheDespesaDialogF
         tvStatus = view.findViewById(R.id.textViewStatus);
         rvWeekExpenses = view.findViewById(R.id.recyclerViewWeekExpenses);
         barChart = view.findViewById(R.id.barChartWeeks);
+        spinnerPeriodo = view.findViewById(R.id.spinnerPeriodoGrafico);
+        layoutSelecao = view.findViewById(R.id.layoutSelecao);
+        tvSelecao = view.findViewById(R.id.textViewSelecao);
+        buttonCancelarSelecao = view.findViewById(R.id.buttonCancelarSelecao);
+        buttonEliminarSelecao = view.findViewById(R.id.buttonEliminarSelecao);
+        editPesquisa = view.findViewById(R.id.editTextPesquisa);
+        setupMenuCopia(view.findViewById(R.id.toolbar_history));
 
         // Mostra o intervalo da semana atual
         tvSummaryTitle.setText("Resumo da Semana (" + DateUtils.getCurrentWeekRangeString() + ")");
 
         // Inicializa lista, resumo e gráfico
         setupRecyclerView();
+        repository.observarAlteracoes(getViewLifecycleOwner(), this::aplicarAlteracao);
         atualizarResumo();
+        setupPeriodoGrafico();
         setupBarChart();
 
         return view;
     }
 
-    /** Configura o RecyclerView com as despesas da semana atual */
-    private void setupRecyclerView() {
-        rvWeekExpenses.setHasFixedSize(true);
-        rvWeekExpenses.setLayoutManager(new LinearLayoutManager(getContext()));
+    /** Menu da barra superior: cópia de segurança, importar extratos e (em debug) métricas */
+    private void setupMenuCopia(Toolbar toolbar) {
+        toolbar.inflateMenu(R.menu.menu_historico);
+        toolbar.getMenu().findItem(R.id.menu_metricas).setVisible(MetricasDAO.ativo());
+        toolbar.setOnMenuItemClickListener(item -> {
+            String nome = "quickbudget-" + new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT).format(new Date());
+            int id = item.getItemId();
+            if (id == R.id.menu_exportar_json) {
+                exportarJson.launch(nome + ".json");
+            } else if (id == R.id.menu_exportar_csv) {
+                exportarCsv.launch(nome + ".csv");
+            } else if (id == R.id.menu_importar) {
+                importarCopia.launch(new String[]{"application/json", "text/csv",
+                        "text/comma-separated-values", "text/plain"});
+            } else if (id == R.id.menu_importar_extrato) {
+                escolherExtratos.launch(new String[]{"text/csv", "text/comma-separated-values", "text/plain"});
+            } else if (id == R.id.menu_metricas) {
+                new MetricasDialogFragment().show(getParentFragmentManager(), "Metricas");
+            } else {
+                return false;
+            }
+            return true;
+        });
+    }
+
+    private void exportar(Uri destino, boolean json) {
+        if (destino == null) return; // seletor cancelado
+        repository.exportar(destino, json).observe(getViewLifecycleOwner(), ok ->
+                Toast.makeText(requireContext(),
+                        Boolean.TRUE.equals(ok) ? "Cópia exportada!" : "Erro ao exportar a cópia!",
+                        Toast.LENGTH_SHORT).show());
+    }
+
+    private void importar(Uri origem) {
+        if (origem == null) return;
+        repository.importar(origem).observe(getViewLifecycleOwner(), resultado -> {
+            if (resultado == null) {
+                Toast.makeText(requireContext(), "Erro ao importar: ficheiro inválido!", Toast.LENGTH_LONG).show();
+                return;
+            }
+            Toast.makeText(requireContext(), resultado.despesasInseridas + " despesa(s) importada(s)"
+                    + (resultado.despesasLidas > resultado.despesasInseridas
+                    ? ", " + (resultado.despesasLidas - resultado.despesasInseridas) + " já existiam" : ""),
+                    Toast.LENGTH_LONG).show();
+            onDespesaAlterada();
+        });
+    }
 
-        long inicioSemana = DateUtils.getWeekStartMillis();
+    private void importarExtratos(List<Uri> extratos) {
+        if (extratos == null || extratos.isEmpty()) return;
+        repository.importarExtratos(extratos).observe(getViewLifecycleOwner(), resultado -> {
+            if (resultado == null) { // erro na base de dados
+                Toast.makeText(requireContext(), "Erro ao importar os extratos!", Toast.LENGTH_LONG).show();
+                return;
+            }
+            if (resultado.despesas == 0 && resultado.ficheirosComErro > 0) {
+                Toast.makeText(requireContext(), "Erro ao importar: extrato não reconhecido!", Toast.LENGTH_LONG).show();
+                return;
+            }
+            int repetidas = resultado.despesas - resultado.inseridas;
+            Toast.makeText(requireContext(), resultado.inseridas + " despesa(s) importada(s)"
+                    + (repetidas > 0 ? ", " + repetidas + " já existiam" : "")
+                    + (resultado.ficheirosComErro > 0 ? ", " + resultado.ficheirosComErro + " ficheiro(s) com erro" : ""),
+                    Toast.LENGTH_LONG).show();
+            if (resultado.inseridas > 0) onDespesaAlterada();
+        });
+    }
 
-        // Busca despesas da semana
-        DespesaDAO dao = new DespesaDAO(requireContext());
-        List<Despesa> despesasSemana = dao.listarSemana(inicioSemana);
-        dao.fechar();
+    /** Configura o RecyclerView com o histórico de despesas, carregado por páginas */
+    private void setupRecyclerView() {
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        rvWeekExpenses.setLayoutManager(layoutManager);
 
         // Adapter com ação de clique → abrir detalhe da despesa
-        adapter = new DespesaAdapter(despesasSemana, despesa -> {
+        adapter = new DespesaAdapter(null, despesa -> {
             DetalheDespesaDialogFragment dialog =
                     DetalheDespesaDialogFragment.nova(despesa.getId());
             dialog.setOnDespesaAlteradaListener(this);
             dialog.show(getParentFragmentManager(), "DetalheDespesa");
         });
 
+        // Seleção múltipla (clique longo) → eliminar várias despesas de uma vez
+        adapter.ativarSelecaoMultipla(quantidade -> {
+            layoutSelecao.setVisibility(quantidade > 0 ? View.VISIBLE : View.GONE);
+            tvSelecao.setText(quantidade == 1 ? "1 selecionada" : quantidade + " selecionadas");
+        });
+        buttonCancelarSelecao.setOnClickListener(v -> adapter.limparSelecao());
+        buttonEliminarSelecao.setOnClickListener(v -> confirmarEliminarSelecionadas());
+
         rvWeekExpenses.setAdapter(adapter);
+
+        // Carrega a página seguinte quando o utilizador se aproxima do fim da lista
+        rvWeekExpenses.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= adapter.getItemCount() - MARGEM_PAGINA) {
+                    carregarProximaPagina();
+                }
+            }
+        });
+
+        // Pesquisa: recarrega a lista pouco depois da última tecla
+        editPesquisa.addTextChangedListener(new TextWatcher() {
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                editPesquisa.removeCallbacks(pesquisaPendente);
+                editPesquisa.postDelayed(pesquisaPendente, ATRASO_PESQUISA_MS);
+            }
+        });
+
+        recarregarLista();
+    }
+
+    /** Aplica o texto atual da caixa de pesquisa à lista */
+    private void aplicarPesquisa() {
+        if (getView() == null) return; // vista já destruída
+        String texto = editPesquisa.getText().toString().trim();
+        if (texto.equals(textoPesquisa)) return;
+        textoPesquisa = texto;
+        recarregarLista();
+    }
+
+    /** Pede confirmação e elimina todas as despesas selecionadas numa só transação */
+    private void confirmarEliminarSelecionadas() {
+        List<Despesa> selecionadas = adapter.getSelecionadas();
+        if (selecionadas.isEmpty()) return;
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Eliminar despesas")
+                .setMessage("Tens a certeza que queres eliminar " + selecionadas.size() + " despesa(s)?")
+                .setNegativeButton("Cancelar", null)
+                .setPositiveButton("Sim", (dialog, which) -> {
+                    List<Integer> ids = new ArrayList<>();
+                    for (Despesa d : selecionadas) ids.add(d.getId());
+
+                    repository.eliminarLote(ids).observe(getViewLifecycleOwner(), eliminadas -> {
+                        if (eliminadas == null) {
+                            Toast.makeText(requireContext(), "Erro ao eliminar despesas!", Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        Toast.makeText(requireContext(), eliminadas + " despesa(s) eliminada(s)!", Toast.LENGTH_SHORT).show();
+                        onDespesaAlterada();
+                    });
+                })
+                .show();
+    }
+
+    /**
+     * Volta a carregar o histórico a partir do início (só a primeira página),
+     * ou os resultados da pesquisa, se houver texto.
+     */
+    private void recarregarLista() {
+        adapter.limparSelecao();
+        geracaoLista++;
+        proximaPagina = null;
+        fimDoHistorico = false;
+        aCarregarPagina = true;
+
+        final int geracao = geracaoLista;
+        if (!textoPesquisa.isEmpty()) {
+            // Resultados da pesquisa numa só lista (sem paginação)
+            repository.pesquisar(textoPesquisa, LIMITE_PESQUISA).observe(getViewLifecycleOwner(), lista -> {
+                if (geracao != geracaoLista) return;
+                fimDoHistorico = true;
+                if (lista != null) adapter.setItems(lista);
+            });
+            return;
+        }
+
+        repository.listarPagina(null, TAMANHO_PAGINA).observe(getViewLifecycleOwner(), lista -> {
+            if (geracao != geracaoLista) return;
+            aCarregarPagina = false;
+            if (lista == null) return;
+
+            fimDoHistorico = lista.size() < TAMANHO_PAGINA;
+            proximaPagina = lista.isEmpty() ? null : DespesaDAO.ChavePagina.depoisDe(lista.get(lista.size() - 1));
+            adapter.setItems(lista);
+        });
+    }
+
+    /** Carrega a página seguinte do histórico (se ainda houver despesas) */
+    private void carregarProximaPagina() {
+        if (fimDoHistorico || aCarregarPagina) return;
+        aCarregarPagina = true;
+
+        final int geracao = geracaoLista;
+        repository.listarPagina(proximaPagina, TAMANHO_PAGINA).observe(getViewLifecycleOwner(), pagina -> {
+            if (geracao != geracaoLista) return; // a lista foi recarregada entretanto
+            aCarregarPagina = false;
+            if (pagina == null) return;
+
+            if (pagina.size() < TAMANHO_PAGINA) fimDoHistorico = true;
+            if (!pagina.isEmpty()) {
+                proximaPagina = DespesaDAO.ChavePagina.depoisDe(pagina.get(pagina.size() - 1));
+                adapter.adicionarItems(pagina);
+            }
+        });
+    }
+
+    /**
+     * Aplica à lista uma alteração publicada pelo repositório. Uma edição ou eliminação só
+     * mexe na linha afetada (o adapter aplica a diferença); uma alteração em lote, a pesquisa
+     * ou uma página a meio do carregamento voltam à primeira página.
+     */
+    private void aplicarAlteracao(AlteracaoDados alteracao) {
+        if (!DBHelper.TABLE_DESPESAS.equals(alteracao.tabela)) return;
+        if (alteracao.tipo == AlteracaoDados.Tipo.LOTE || !textoPesquisa.isEmpty() || aCarregarPagina) {
+            recarregarLista();
+            return;
+        }
+
+        List<Despesa> lista = adapter.getItems();
+        int id = alteracao.antiga != null ? alteracao.antiga.getId() : alteracao.nova.getId();
+        boolean alterada = lista.removeIf(d -> d.getId() == id);
+
+        // A nova versão só entra se ficar dentro das páginas já carregadas;
+        // caso contrário aparece quando a página onde cai for carregada
+        Despesa nova = alteracao.nova;
+        if (nova != null && (fimDoHistorico || proximaPagina == null || !proximaPagina.antesDe(nova))) {
+            int pos = 0;
+            while (pos < lista.size() && !DespesaDAO.ChavePagina.depoisDe(nova).antesDe(lista.get(pos))) pos++;
+            lista.add(pos, nova);
+            alterada = true;
+        }
+        if (alterada) adapter.setItems(lista);
     }
 
     /** Atualiza o resumo semanal (orçamento, gasto total, saldo, média e estado) */
     private void atualizarResumo() {
-        long inicioSemana = DateUtils.getWeekStartMillis();
-        long fimSemana = DateUtils.getWeekEndMillis();
-
-        // Calcula total gasto e orçamento
-        DespesaDAO dao = new DespesaDAO(requireContext());
-        double total = dao.getTotalPorIntervalo(inicioSemana, fimSemana);
-        dao.fechar();
+        repository.carregarResumoSemana(DateUtils.semanaAtual())
+                .observe(getViewLifecycleOwner(), this::mostrarResumo);
+    }
 
-        BudgetDAO bdao = new BudgetDAO(requireContext());
-        double budget = bdao.getBudgetPorSemana(inicioSemana);
-        bdao.fechar();
+    /** Mostra o resumo semanal carregado em segundo plano */
+    private void mostrarResumo(QuickBudgetRepository.ResumoSemana resumo) {
+        if (resumo == null) return;
 
-        double diff = budget - total;
-        double avg = total / 7.0;
+        long total = resumo.total;
+        long budget = resumo.budget;
+        long diff = budget - total;
+        long avg = Math.round(total / 7.0);
 
         // Atualiza textos
-        tvWeeklyBudget.setText(String.format(Locale.getDefault(), "Orçamento semanal: €%.2f", budget));
-        tvTotalSpent.setText(String.format(Locale.getDefault(), "Total gasto: €%.2f", total));
-        tvDifference.setText(String.format(Locale.getDefault(), "Saldo: €%.2f", diff));
-        tvAverage.setText(String.format(Locale.getDefault(), "Média diária: €%.2f", avg));
+        formatador.mostrarMoeda(tvWeeklyBudget, "Orçamento semanal: ", budget);
+        formatador.mostrarMoeda(tvTotalSpent, "Total gasto: ", total);
+        formatador.mostrarMoeda(tvDifference, "Saldo: ", diff);
+        formatador.mostrarMoeda(tvAverage, "Média diária: ", avg);
 
         int negativeColor = ContextCompat.getColor(requireContext(), R.color.history_negative_text);
         int positiveColor = ContextCompat.getColor(requireContext(), R.color.history_positive_text);
@@ -133,41 +405,69 @@ public class HistoricoFragment extends Fragment implements DetalheDespesaDialogF
         }
     }
 
-    /** Configura o gráfico de barras com os dados das últimas 4 semanas */
+    /** Configura o gráfico de barras com os dados das últimas semanas (4, 12, 26 ou 52, conforme o período escolhido) */
     private void setupBarChart() {
+        repository.carregarUltimasSemanas(semanasGrafico)
+                .observe(getViewLifecycleOwner(), this::mostrarGrafico);
+    }
+
+    /** Configura a escolha do número de semanas mostradas no gráfico */
+    private void setupPeriodoGrafico() {
+        ArrayAdapter<CharSequence> adapterPeriodos = ArrayAdapter.createFromResource(
+                requireContext(),
+                R.array.periodos_grafico,
+                android.R.layout.simple_spinner_item
+        );
+        adapterPeriodos.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerPeriodo.setAdapter(adapterPeriodos);
+        spinnerPeriodo.setSelection(0, false);
+
+        spinnerPeriodo.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (SEMANAS_GRAFICO[position] == semanasGrafico) return;
+                semanasGrafico = SEMANAS_GRAFICO[position];
+                setupBarChart();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
+    }
+
+    /** Desenha o gráfico de barras (gasto vs orçamento por semana) */
+    private void mostrarGrafico(List<QuickBudgetRepository.ResumoSemana> resumos) {
+        if (resumos == null) return;
+
         barChart.getDescription().setEnabled(false);
         barChart.setDrawGridBackground(false);
 
         // Labels (ex: "03–09 Nov", "10–16 Nov", etc.)
-        List<String> semanas = DateUtils.getLastWeeksLabels(4);
+        int[] indices = new int[resumos.size()];
+        for (int i = 0; i < indices.length; i++) indices[i] = resumos.get(i).semana;
+        List<String> semanas = DateUtils.getWeekLabels(indices);
+        boolean poucasSemanas = resumos.size() <= SEMANAS_GRAFICO[0]; // valores só cabem em 4 semanas
         List<BarEntry> gastoEntries = new ArrayList<>();
         List<BarEntry> budgetEntries = new ArrayList<>();
 
-        DespesaDAO ddao = new DespesaDAO(requireContext());
-        BudgetDAO bdao = new BudgetDAO(requireContext());
-
         // Preenche dados de cada semana
-        for (int i = 3; i >= 0; i--) {
-            long[] range = DateUtils.getWeekRangeFromNowOffset(-i);
-            double totalGasto = ddao.getTotalPorIntervalo(range[0], range[1]);
-            double budget = bdao.getBudgetPorSemana(range[0]);
-            gastoEntries.add(new BarEntry(3 - i, (float) totalGasto));
-            budgetEntries.add(new BarEntry(3 - i, (float) budget));
+        for (int i = 0; i < resumos.size(); i++) {
+            gastoEntries.add(new BarEntry(i, (float) Dinheiro.emEuros(resumos.get(i).total)));
+            budgetEntries.add(new BarEntry(i, (float) Dinheiro.emEuros(resumos.get(i).budget)));
         }
 
-        ddao.fechar();
-        bdao.fechar();
-
         // Conjuntos de dados
         BarDataSet setGasto = new BarDataSet(gastoEntries, "Gasto");
         setGasto.setColor(Color.parseColor("#FF7043"));
         setGasto.setValueTextSize(12f);
         setGasto.setValueTextColor(Color.BLACK);
+        setGasto.setDrawValues(poucasSemanas);
 
         BarDataSet setBudget = new BarDataSet(budgetEntries, "Orçamento");
         setBudget.setColor(Color.parseColor("#3FA4CE"));
         setBudget.setValueTextSize(12f);
         setBudget.setValueTextColor(Color.BLACK);
+        setBudget.setDrawValues(poucasSemanas);
 
         BarData data = new BarData(setGasto, setBudget);
         data.setBarWidth(0.35f);
@@ -182,6 +482,7 @@ public class HistoricoFragment extends Fragment implements DetalheDespesaDialogF
         xAxis.setDrawGridLines(false);
         xAxis.setTextSize(12f);
         xAxis.setTextColor(Color.BLACK);
+        xAxis.setLabelCount(Math.min(semanas.size(), SEMANAS_GRAFICO[0]));
 
         // Eixo Y (valores)
         YAxis leftAxis = barChart.getAxisLeft();
@@ -212,10 +513,10 @@ public class HistoricoFragment extends Fragment implements DetalheDespesaDialogF
         barChart.invalidate();
     }
 
-    /** Atualiza lista, resumo e gráfico após editar uma despesa */
+    /** Atualiza resumo e gráfico após editar uma despesa (a lista recebe a alteração em aplicarAlteracao) */
     @Override
     public void onDespesaAlterada() {
-        setupRecyclerView();
+        if (getView() == null) return; // vista já destruída
         atualizarResumo();
         setupBarChart();
     }
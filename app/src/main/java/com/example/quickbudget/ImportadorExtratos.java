@@ -0,0 +1,443 @@
+package com.example.quickbudget;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * ImportadorExtratos
+ * -------------------
+ * Importa os movimentos de extratos bancários em CSV como despesas, em três etapas:
+ *  1. Leitura: o ficheiro é dividido em registos CSV (sequencial, por causa das aspas)
+ *     e agrupado em blocos de {@link #TAMANHO_BLOCO} linhas.
+ *  2. Análise: cada bloco é processado numa thread do conjunto (uma por núcleo): datas,
+ *     valores, descrição, categoria e hash do conteúdo. Só os débitos passam a despesas.
+ *  3. Escrita: os blocos são juntados pela ordem do ficheiro e as despesas são inseridas
+ *     numa única transação ({@link DespesaDAO#inserirSemDuplicados}).
+ *
+ * Os duplicados (o mesmo movimento importado de dois extratos que se sobrepõem, ou o mesmo
+ * ficheiro importado duas vezes) são descartados pelo índice único do hash de conteúdo.
+ * Movimentos iguais no mesmo dia (ex: dois cafés) são distinguidos pela ordem de ocorrência.
+ *
+ * O formato (separador, linha de cabeçalho, colunas e formato das datas) é detetado
+ * a partir do cabeçalho; as linhas de informação antes do cabeçalho são ignoradas.
+ */
+public final class ImportadorExtratos {
+
+    static final int TAMANHO_BLOCO = 2_000;
+    private static final int MAX_LINHAS_ANTES_CABECALHO = 20;
+    private static final int LIMITE_MARCA = 64 * 1024; // bytes lidos para detetar o formato
+    private static final String RECORRENCIA = "Nenhuma";
+
+    // Palavras-chave na descrição (sem acentos, minúsculas) → categoria
+    private static final String[][] REGRAS_CATEGORIA = {
+            {"continente", "Supermercado"}, {"pingo doce", "Supermercado"}, {"lidl", "Supermercado"},
+            {"auchan", "Supermercado"}, {"mercadona", "Supermercado"}, {"minipreco", "Supermercado"},
+            {"galp", "Transporte"}, {"repsol", "Transporte"}, {"bp ", "Transporte"}, {"uber", "Transporte"},
+            {"bolt", "Transporte"}, {"metro", "Transporte"}, {"cp ", "Transporte"}, {"via verde", "Transporte"},
+            {"farmacia", "Saúde"}, {"hospital", "Saúde"}, {"clinica", "Saúde"},
+            {"netflix", "Subscrição"}, {"spotify", "Subscrição"}, {"hbo", "Subscrição"}, {"disney", "Subscrição"},
+            {"restaurante", "Alimentação"}, {"cafe", "Alimentação"}, {"pastelaria", "Alimentação"},
+            {"mcdonald", "Alimentação"}, {"glovo", "Alimentação"},
+            {"cinema", "Lazer"}, {"fnac", "Lazer"},
+            {"edp", "Casa"}, {"agua", "Casa"}, {"renda", "Casa"}, {"ikea", "Casa"},
+            {"propina", "Educação"}, {"livraria", "Educação"},
+    };
+
+    private static final DateTimeFormatter[] FORMATOS_DATA = {
+            DateTimeFormatter.ofPattern("d/M/uuuu"),
+            DateTimeFormatter.ofPattern("d-M-uuuu"),
+            DateTimeFormatter.ofPattern("d.M.uuuu"),
+            DateTimeFormatter.ofPattern("uuuu-M-d"),
+            DateTimeFormatter.ofPattern("uuuu/M/d"),
+    };
+
+    private static final Pattern ESPACOS = Pattern.compile("\\s+");
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Colunas e formato de um extrato, detetados a partir do cabeçalho.
+     * As colunas não existentes são -1 (ou há uma coluna de valor com sinal,
+     * ou colunas separadas de débito e crédito).
+     */
+    static final class Formato {
+        char separador;
+        int linhaCabecalho;   // índice do registo do cabeçalho (as linhas anteriores são ignoradas)
+        int colunaData = -1;
+        int colunaDescricao = -1;
+        int colunaValor = -1;
+        int colunaDebito = -1;
+        int colunaCredito = -1;
+        DateTimeFormatter formatoData; // detetado na primeira data válida do ficheiro (ver analisar)
+
+        boolean completo() {
+            return colunaData != -1 && colunaDescricao != -1 && (colunaValor != -1 || colunaDebito != -1);
+        }
+
+        // Reconhece as colunas pelo nome (PT/EN, sem acentos); devolve null se não for um cabeçalho
+        static Formato deCabecalho(List<String> campos, char separador) {
+            Formato f = new Formato();
+            f.separador = separador;
+            for (int i = 0; i < campos.size(); i++) {
+                String nome = normalizar(campos.get(i));
+                if (f.colunaData == -1 && (nome.startsWith("data") || nome.startsWith("date"))) {
+                    f.colunaData = i;
+                } else if (f.colunaDescricao == -1 && (nome.startsWith("descri") || nome.equals("movimento")
+                        || nome.startsWith("detalhe") || nome.startsWith("concept"))) {
+                    f.colunaDescricao = i;
+                } else if (f.colunaDebito == -1 && (nome.startsWith("debito") || nome.startsWith("debit"))) {
+                    f.colunaDebito = i;
+                } else if (f.colunaCredito == -1 && (nome.startsWith("credito") || nome.startsWith("credit"))) {
+                    f.colunaCredito = i;
+                } else if (f.colunaValor == -1 && (nome.startsWith("valor") || nome.startsWith("montante")
+                        || nome.startsWith("amount") || nome.startsWith("importe"))) {
+                    f.colunaValor = i;
+                }
+            }
+            return f.completo() ? f : null;
+        }
+    }
+
+    // Despesas analisadas de um ficheiro, pela ordem do extrato, prontas a inserir
+    static final class Analise {
+        final List<Despesa> despesas = new ArrayList<>();
+        final List<String> hashes = new ArrayList<>();
+        int movimentos;   // linhas de movimentos lidas
+        int creditos;     // ignorados (não são despesas)
+        int invalidas;    // sem data ou valor reconhecíveis
+
+        private final Map<String, Integer> ocorrencias = new HashMap<>();
+
+        // Junta um bloco analisado; o hash final inclui a ordem de ocorrência do mesmo conteúdo
+        void juntar(Bloco bloco) {
+            movimentos += bloco.movimentos;
+            creditos += bloco.creditos;
+            invalidas += bloco.invalidas;
+            for (int i = 0; i < bloco.despesas.size(); i++) {
+                String base = bloco.hashes.get(i);
+                int n = ocorrencias.merge(base, 1, Integer::sum);
+                despesas.add(bloco.despesas.get(i));
+                hashes.add(n == 1 ? base : base + "#" + n);
+            }
+        }
+    }
+
+    // Resultado de uma importação
+    public static final class Resultado {
+        public final int movimentos;
+        public final int despesas;    // débitos reconhecidos
+        public final int inseridas;   // as restantes já tinham sido importadas
+        public final int creditos;    // entradas na conta, ignoradas
+        public final int invalidas;
+        public final int ficheirosComErro;
+
+        Resultado(int movimentos, int despesas, int inseridas, int creditos, int invalidas, int ficheirosComErro) {
+            this.movimentos = movimentos;
+            this.despesas = despesas;
+            this.inseridas = inseridas;
+            this.creditos = creditos;
+            this.invalidas = invalidas;
+            this.ficheirosComErro = ficheirosComErro;
+        }
+
+        static final Resultado VAZIO = new Resultado(0, 0, 0, 0, 0, 0);
+        static final Resultado ERRO = new Resultado(0, 0, 0, 0, 0, 1);
+
+        // Soma os resultados de vários ficheiros
+        Resultado mais(Resultado outro) {
+            return new Resultado(movimentos + outro.movimentos, despesas + outro.despesas,
+                    inseridas + outro.inseridas, creditos + outro.creditos, invalidas + outro.invalidas,
+                    ficheirosComErro + outro.ficheirosComErro);
+        }
+    }
+
+    // Resultado da análise de um bloco (etapa 2)
+    static final class Bloco {
+        final List<Despesa> despesas = new ArrayList<>();
+        final List<String> hashes = new ArrayList<>(); // hash do conteúdo, sem a ocorrência
+        int movimentos, creditos, invalidas;
+    }
+
+    private final int numThreads;
+
+    public ImportadorExtratos() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    ImportadorExtratos(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Analisa o extrato e insere os débitos como despesas, numa só transação.
+     *
+     * @throws IOException se o ficheiro não tiver um cabeçalho reconhecível
+     */
+    public Resultado importar(InputStream extrato, DespesaDAO despesas) throws IOException {
+        Analise analise = analisar(extrato);
+        int inseridas = despesas.inserirSemDuplicados(analise.despesas, analise.hashes);
+        return new Resultado(analise.movimentos, analise.despesas.size(), inseridas,
+                analise.creditos, analise.invalidas, 0);
+    }
+
+    /**
+     * Etapas 1 e 2: lê e analisa o extrato (UTF-8) sem tocar na base de dados.
+     */
+    Analise analisar(InputStream extrato) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(extrato, StandardCharsets.UTF_8));
+        Formato formato = detetarFormato(reader);
+        Csv.Leitor csv = new Csv.Leitor(reader, formato.separador);
+        List<String> campos = new ArrayList<>();
+        for (int i = 0; i <= formato.linhaCabecalho; i++) csv.proximo(campos);
+
+        Analise analise = new Analise();
+        ExecutorService threads = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "quickbudget-extrato");
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+        // Blocos em análise, pela ordem do ficheiro (no máximo dois por thread, para limitar a memória)
+        ArrayDeque<Future<Bloco>> emAnalise = new ArrayDeque<>();
+        try {
+            List<String[]> linhas = new ArrayList<>(TAMANHO_BLOCO);
+            while (csv.proximo(campos)) {
+                if (campos.size() == 1 && campos.get(0).trim().isEmpty()) continue;
+                String[] linha = campos.toArray(new String[0]);
+                // Uma só deteção para o ficheiro inteiro, antes de o primeiro bloco ir para as threads
+                if (formato.formatoData == null && emAnalise.isEmpty()) {
+                    formato.formatoData = detetarFormatoData(campo(linha, formato.colunaData).trim());
+                }
+                linhas.add(linha);
+                if (linhas.size() == TAMANHO_BLOCO) {
+                    List<String[]> bloco = linhas;
+                    emAnalise.add(threads.submit(() -> analisarBloco(bloco, formato)));
+                    linhas = new ArrayList<>(TAMANHO_BLOCO);
+                    while (emAnalise.size() > 2 * numThreads) analise.juntar(esperar(emAnalise.poll()));
+                }
+            }
+            if (!linhas.isEmpty()) {
+                List<String[]> bloco = linhas;
+                emAnalise.add(threads.submit(() -> analisarBloco(bloco, formato)));
+            }
+            while (!emAnalise.isEmpty()) analise.juntar(esperar(emAnalise.poll()));
+        } finally {
+            threads.shutdownNow();
+        }
+        return analise;
+    }
+
+    /*
+     * Procura o cabeçalho nas primeiras linhas (saltando informação da conta, etc.)
+     * e volta ao início do ficheiro. O separador é o mais frequente na linha do cabeçalho.
+     */
+    private static Formato detetarFormato(BufferedReader reader) throws IOException {
+        reader.mark(LIMITE_MARCA);
+        List<String> campos = new ArrayList<>();
+        try {
+            for (int i = 0; i < MAX_LINHAS_ANTES_CABECALHO; i++) {
+                String linha = reader.readLine();
+                if (linha == null) break;
+                if (i == 0 && !linha.isEmpty() && linha.charAt(0) == '\uFEFF') linha = linha.substring(1);
+
+                char separador = separadorMaisFrequente(linha);
+                Csv.Leitor leitor = new Csv.Leitor(new StringReader(linha), separador);
+                if (!leitor.proximo(campos)) continue;
+                Formato formato = Formato.deCabecalho(campos, separador);
+                if (formato != null) {
+                    formato.linhaCabecalho = i;
+                    return formato;
+                }
+            }
+        } finally {
+            reader.reset();
+        }
+        throw new IOException("Cabeçalho do extrato não reconhecido (são precisas colunas de data, descrição e valor)");
+    }
+
+    private static char separadorMaisFrequente(String linha) {
+        char melhor = ',';
+        int maximo = 0;
+        for (char candidato : new char[]{';', ',', '\t'}) {
+            int n = 0;
+            for (int i = 0; i < linha.length(); i++) if (linha.charAt(i) == candidato) n++;
+            if (n > maximo) {
+                maximo = n;
+                melhor = candidato;
+            }
+        }
+        return melhor;
+    }
+
+    private static Bloco esperar(Future<Bloco> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Importação interrompida", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Erro ao analisar o extrato", e.getCause());
+        }
+    }
+
+    // ======== ANÁLISE (etapa 2, numa thread do conjunto) ========
+
+    static Bloco analisarBloco(List<String[]> linhas, Formato formato) {
+        Bloco bloco = new Bloco();
+        MessageDigest sha = novoSha256();
+        ZoneId fuso = ZoneId.systemDefault();
+        DateTimeFormatter formatoData = formato.formatoData;
+
+        for (String[] campos : linhas) {
+            bloco.movimentos++;
+            LocalDate dia = null;
+            long valor;
+            try {
+                String data = campo(campos, formato.colunaData).trim();
+                if (formatoData == null) formatoData = detetarFormatoData(data); // primeiro bloco sem datas válidas
+                if (formatoData != null) dia = LocalDate.parse(data, formatoData);
+                valor = valorDebito(campos, formato);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                dia = null;
+                valor = 0;
+            }
+            if (dia == null) {
+                bloco.invalidas++;
+                continue;
+            }
+            if (valor <= 0) {
+                bloco.creditos++;
+                continue;
+            }
+
+            String descricao = ESPACOS.matcher(campo(campos, formato.colunaDescricao).trim()).replaceAll(" ");
+            String normalizada = normalizar(descricao);
+            // Meio-dia local: o movimento fica no dia certo mesmo com mudanças de hora
+            long timestamp = dia.atTime(12, 0).atZone(fuso).toInstant().toEpochMilli();
+
+            bloco.despesas.add(new Despesa(descricao.isEmpty() ? "Movimento bancário" : descricao,
+                    categoriaDe(normalizada), valor, timestamp, RECORRENCIA));
+            bloco.hashes.add(hashConteudo(sha, dia.toEpochDay(), valor, normalizada));
+        }
+        return bloco;
+    }
+
+    // Formato da data, experimentando os formatos conhecidos (dia primeiro ou ISO)
+    static DateTimeFormatter detetarFormatoData(String data) {
+        for (DateTimeFormatter f : FORMATOS_DATA) {
+            try {
+                LocalDate.parse(data, f);
+                return f;
+            } catch (DateTimeParseException e) {
+                // experimenta o formato seguinte
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Valor da despesa em cêntimos (positivo), ou 0 / negativo se o movimento for um crédito.
+     * Numa coluna de valor única, os débitos são os valores negativos.
+     */
+    static long valorDebito(String[] campos, Formato formato) {
+        if (formato.colunaDebito != -1) {
+            String debito = campo(campos, formato.colunaDebito);
+            if (!debito.trim().isEmpty()) return Math.abs(centimos(debito));
+            return 0;
+        }
+        return -centimos(campo(campos, formato.colunaValor));
+    }
+
+    /**
+     * Converte um valor de extrato em cêntimos: aceita "1.234,56", "1,234.56", "-12,3",
+     * "12,30-", "−5 €", etc. O separador decimal é o último ponto ou vírgula seguido
+     * de uma ou duas casas.
+     *
+     * @throws NumberFormatException se não houver um número
+     */
+    static long centimos(String texto) {
+        StringBuilder sb = new StringBuilder(texto.length());
+        boolean negativo = false;
+        int ultimoSeparador = -1;
+        for (int i = 0; i < texto.length(); i++) {
+            char ch = texto.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                sb.append(ch);
+            } else if (ch == '-' || ch == '\u2212' || ch == '(') {
+                negativo = true;
+            } else if (ch == ',' || ch == '.') {
+                sb.append('.');
+                ultimoSeparador = sb.length() - 1;
+            }
+        }
+        // Só o último separador é decimal, e apenas se tiver 1 ou 2 casas depois
+        int casas = ultimoSeparador == -1 ? 0 : sb.length() - ultimoSeparador - 1;
+        String numero = (casas == 1 || casas == 2)
+                ? sb.substring(0, ultimoSeparador).replace(".", "") + "." + sb.substring(ultimoSeparador + 1)
+                : sb.toString().replace(".", "");
+        if (numero.isEmpty() || numero.equals(".")) throw new NumberFormatException("Valor vazio: " + texto);
+
+        long valor = new BigDecimal(numero).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+        return negativo ? -valor : valor;
+    }
+
+    static String categoriaDe(String descricaoNormalizada) {
+        String texto = descricaoNormalizada + " ";
+        for (String[] regra : REGRAS_CATEGORIA) {
+            if (texto.contains(regra[0])) return regra[1];
+        }
+        return Categorias.CATEGORIA_OMISSAO;
+    }
+
+    // SHA-256 de "dia|valor|descrição" (128 bits em hexadecimal)
+    static String hashConteudo(MessageDigest sha, long dia, long valor, String descricaoNormalizada) {
+        sha.reset();
+        byte[] resumo = sha.digest((dia + "|" + valor + "|" + descricaoNormalizada).getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[32];
+        for (int i = 0; i < 16; i++) {
+            hex[2 * i] = Character.forDigit((resumo[i] >> 4) & 0xF, 16);
+            hex[2 * i + 1] = Character.forDigit(resumo[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    // Minúsculas, sem acentos e com espaços simples (para comparar cabeçalhos e descrições)
+    static String normalizar(String texto) {
+        String semAcentos = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return ESPACOS.matcher(semAcentos.toLowerCase(Locale.ROOT).trim()).replaceAll(" ");
+    }
+
+    private static String campo(String[] campos, int coluna) {
+        return coluna >= 0 && coluna < campos.length ? campos[coluna] : "";
+    }
+
+    private static MessageDigest novoSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // obrigatório em todas as JVM/Android
+        }
+    }
+}
@@ -11,7 +11,7 @@ import com.google.android.material.bottomnavigation.BottomNavigationView;
  * MainActivity
  * ------------
  * Atividade principal da aplicação.
- * Responsável por inicializar a base de dados, verificar despesas recorrentes
+ * Responsável por agendar a manutenção semanal (orçamento e despesas recorrentes)
  * e gerir a navegação entre os fragmentos (Dashboard, Adicionar e Histórico)
  * através do menu inferior.
  */
@@ -26,15 +26,6 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Garante que existe um orçamento para a semana atual
-        long inicioSemana = DateUtils.getWeekStartMillis();
-        BudgetDAO bdao = new BudgetDAO(this);
-        bdao.getOrCreateBudgetAtual(inicioSemana);
-        bdao.fechar();
-
-        // Gera automaticamente despesas recorrentes (semanal/mensal)
-        verificarDespesasRecorrentes();
-
         // Configura o menu inferior (BottomNavigationView)
         BottomNavigationView bottomNav = findViewById(R.id.bottom_navigation);
 
@@ -69,16 +60,15 @@ public class MainActivity extends AppCompatActivity {
         if (savedInstanceState == null) {
             bottomNav.setSelectedItemId(R.id.menu_dashboard);
         }
-    }
 
-    /**
-     * Cria automaticamente as despesas recorrentes (semanais/mensais)
-     * caso ainda não existam para o período atual.
-     */
-    private void verificarDespesasRecorrentes() {
-        long inicioSemana = DateUtils.getWeekStartMillis();
-        DespesaDAO dao = new DespesaDAO(this);
-        dao.gerarDespesasRecorrentes(inicioSemana);
-        dao.fechar();
+        // Trabalho de arranque só depois de o Dashboard ser desenhado
+        bottomNav.post(() -> {
+            // Orçamento da semana e despesas recorrentes: no WorkManager, e só se ainda não
+            // foram feitos esta semana; o Dashboard é avisado quando terminar
+            ManutencaoWorker.agendar(this);
+
+            // Envia/recebe as alterações pendentes (só com sessão iniciada no Firebase)
+            QuickBudgetRepository.getInstance(this).sincronizar();
+        });
     }
 }
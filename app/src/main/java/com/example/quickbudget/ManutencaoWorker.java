@@ -0,0 +1,99 @@
+package com.example.quickbudget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ManutencaoWorker
+ * ----------------
+ * Manutenção periódica fora do arranque da aplicação: garante o orçamento da semana
+ * atual (copiado da anterior) e gera as despesas recorrentes que já venceram.
+ *
+ * Corre através do WorkManager:
+ *  - todas as semanas, alinhado com segunda-feira às 00:00 (início da semana);
+ *  - uma vez no arranque, para apanhar o que venceu com a aplicação fechada.
+ *
+ * A última execução fica guardada nas preferências (semana e instante), lidas sem abrir
+ * a base de dados: se a manutenção desta semana (e deste mês, por causa das recorrências
+ * mensais) já foi feita, o trabalho termina logo.
+ */
+public class ManutencaoWorker extends Worker {
+
+    private static final String TAG = "ManutencaoWorker";
+    private static final String TRABALHO_SEMANAL = "manutencao-semanal";
+    private static final String TRABALHO_ARRANQUE = "manutencao-arranque";
+
+    private static final String PREFERENCIAS = "manutencao";
+    private static final String PREF_ULTIMA_SEMANA = "ultima_semana_indice"; // semana da última execução (DateUtils.semanaDe)
+    private static final String PREF_ULTIMA_SEMANA_ANTIGA = "ultima_semana";  // início da semana em millis, até à versão anterior
+    private static final String PREF_ULTIMA_EXECUCAO = "ultima_execucao";   // instante da última execução
+
+    public ManutencaoWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Agenda a manutenção semanal (se ainda não estiver agendada) e pede uma execução já,
+     * em segundo plano. Não toca na base de dados: pode ser chamado no onCreate.
+     */
+    public static void agendar(Context context) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        long agora = System.currentTimeMillis();
+
+        PeriodicWorkRequest semanal = new PeriodicWorkRequest.Builder(ManutencaoWorker.class, 7, TimeUnit.DAYS)
+                .setInitialDelay(DateUtils.getNextWeekStartMillis(agora) - agora, TimeUnit.MILLISECONDS)
+                .build();
+        workManager.enqueueUniquePeriodicWork(TRABALHO_SEMANAL, ExistingPeriodicWorkPolicy.KEEP, semanal);
+
+        OneTimeWorkRequest arranque = new OneTimeWorkRequest.Builder(ManutencaoWorker.class)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+        workManager.enqueueUniqueWork(TRABALHO_ARRANQUE, ExistingWorkPolicy.KEEP, arranque);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        SharedPreferences prefs = getApplicationContext().getSharedPreferences(PREFERENCIAS, Context.MODE_PRIVATE);
+        long agora = System.currentTimeMillis();
+        if (!precisaManutencao(prefs.getInt(PREF_ULTIMA_SEMANA, -1),
+                prefs.getLong(PREF_ULTIMA_EXECUCAO, 0), agora)) {
+            return Result.success();
+        }
+
+        try {
+            QuickBudgetRepository.getInstance(getApplicationContext()).prepararSemana(agora);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Erro na manutenção semanal", e);
+            return Result.retry();
+        }
+        prefs.edit()
+                .putInt(PREF_ULTIMA_SEMANA, DateUtils.semanaDe(agora))
+                .remove(PREF_ULTIMA_SEMANA_ANTIGA)
+                .putLong(PREF_ULTIMA_EXECUCAO, agora)
+                .apply();
+        return Result.success();
+    }
+
+    /**
+     * A manutenção é precisa numa semana nova (orçamento e recorrências semanais)
+     * ou num mês novo desde a última execução (recorrências mensais).
+     */
+    static boolean precisaManutencao(int ultimaSemana, long ultimaExecucao, long agora) {
+        return DateUtils.semanaDe(agora) != ultimaSemana
+                || agora >= DateUtils.getNextMonthStartMillis(ultimaExecucao);
+    }
+}
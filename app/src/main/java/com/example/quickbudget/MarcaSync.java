@@ -0,0 +1,30 @@
+package com.example.quickbudget;
+
+/**
+ * MarcaSync
+ * ----------
+ * Posição de um registo na ordem de receção do remoto: versão (instante da escrita no
+ * servidor, em nanossegundos) e, em caso de empate, o id do documento.
+ * Cada dispositivo guarda a marca do último registo recebido e só pede os seguintes.
+ */
+public final class MarcaSync implements Comparable<MarcaSync> {
+
+    public final long versao;
+    public final String id;
+
+    public MarcaSync(long versao, String id) {
+        this.versao = versao;
+        this.id = id;
+    }
+
+    @Override
+    public int compareTo(MarcaSync outra) {
+        int c = Long.compare(versao, outra.versao);
+        return c != 0 ? c : id.compareTo(outra.id);
+    }
+
+    @Override
+    public String toString() {
+        return versao + "/" + id;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.quickbudget;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MetricasDAO
+ * ------------
+ * Métricas das operações dos DAOs: número de chamadas, linhas devolvidas/alteradas
+ * e latência (p50/p95/p99) por operação, mais um registo circular das consultas lentas
+ * com o SQL e os argumentos.
+ *
+ * Cada método público dos DAOs faz:
+ * <pre>
+ *     long t0 = MetricasDAO.inicio();
+ *     ... consulta ...
+ *     MetricasDAO.registar("DespesaDAO.listarSemana", t0, linhas, SQL, args);
+ * </pre>
+ * Desativadas (por omissão fora das builds de debug), {@code inicio()} devolve 0 sem ler
+ * o relógio e {@code registar} sai logo: o custo é uma leitura de um campo volatile.
+ *
+ * As latências vão para um histograma log-linear (8 divisões por potência de 2, erro
+ * máximo de 12,5%) com contadores atómicos: registar não aloca nem bloqueia.
+ * Pode ser chamado de qualquer thread.
+ */
+public final class MetricasDAO {
+
+    static final long LIMITE_LENTA_NS = 50_000_000L; // 50 ms
+    static final int MAX_LENTAS = 64;
+
+    private static volatile boolean ativo = false;
+    private static final Map<String, Operacao> operacoes = new ConcurrentHashMap<>();
+
+    // Registo circular das consultas lentas (só é escrito quando uma consulta passa o limite)
+    private static final ConsultaLenta[] lentas = new ConsultaLenta[MAX_LENTAS];
+    private static int proximaLenta = 0;
+    private static volatile long totalLentas = 0;
+
+    private MetricasDAO() {}
+
+    public static void ativar(boolean ativar) {
+        ativo = ativar;
+    }
+
+    public static boolean ativo() {
+        return ativo;
+    }
+
+    // Instante de início de uma operação (0 se as métricas estiverem desativadas)
+    static long inicio() {
+        return ativo ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Regista o fim de uma operação iniciada com {@link #inicio()}.
+     *
+     * @param operacao nome da operação (Classe.metodo)
+     * @param inicio   valor devolvido por inicio()
+     * @param linhas   linhas devolvidas (leituras) ou alteradas (escritas)
+     * @param sql      SQL principal da operação (guardado apenas se for lenta)
+     * @param args     argumentos do SQL (array, ContentValues...), ou null
+     */
+    static void registar(String operacao, long inicio, int linhas, String sql, Object args) {
+        if (inicio == 0) return;
+        long duracao = System.nanoTime() - inicio;
+
+        Operacao op = operacoes.get(operacao);
+        if (op == null) op = operacoes.computeIfAbsent(operacao, Operacao::new);
+        op.registar(duracao, linhas);
+
+        if (duracao >= LIMITE_LENTA_NS) {
+            String argumentos = args instanceof Object[] ? Arrays.toString((Object[]) args)
+                    : args != null ? String.valueOf(args) : null;
+            guardarLenta(new ConsultaLenta(operacao, sql, argumentos, System.currentTimeMillis(), duracao, linhas));
+        }
+    }
+
+    /**
+     * Como {@link #registar(String, long, int, String, Object)}, para um único argumento
+     * numérico: o valor só é convertido em objeto se as métricas estiverem ativas.
+     */
+    static void registar(String operacao, long inicio, int linhas, String sql, long arg) {
+        if (inicio == 0) return;
+        registar(operacao, inicio, linhas, sql, (Object) arg);
+    }
+
+    private static synchronized void guardarLenta(ConsultaLenta lenta) {
+        lentas[proximaLenta] = lenta;
+        proximaLenta = (proximaLenta + 1) % MAX_LENTAS;
+        totalLentas++;
+    }
+
+    // Apaga todas as métricas recolhidas
+    public static synchronized void limpar() {
+        operacoes.clear();
+        Arrays.fill(lentas, null);
+        proximaLenta = 0;
+        totalLentas = 0;
+    }
+
+    // Consultas lentas guardadas, da mais antiga para a mais recente
+    static synchronized List<ConsultaLenta> consultasLentas() {
+        List<ConsultaLenta> lista = new ArrayList<>(MAX_LENTAS);
+        for (int i = 0; i < MAX_LENTAS; i++) {
+            ConsultaLenta l = lentas[(proximaLenta + i) % MAX_LENTAS];
+            if (l != null) lista.add(l);
+        }
+        return lista;
+    }
+
+    // Operações registadas, por nome
+    static Map<String, Operacao> operacoes() {
+        return new TreeMap<>(operacoes);
+    }
+
+    // ======== RELATÓRIOS ========
+
+    /**
+     * Resumo em texto (uma linha por operação e as consultas lentas mais recentes),
+     * para o ecrã de debug. Tempos em milissegundos.
+     */
+    public static String resumo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-34s %7s %8s %8s %8s %8s%n",
+                "operação", "n", "p50", "p95", "p99", "máx"));
+        for (Operacao op : operacoes().values()) {
+            sb.append(String.format(Locale.ROOT, "%-34s %7d %8.2f %8.2f %8.2f %8.2f%n",
+                    op.nome, op.chamadas.sum(), ms(op.percentil(0.50)), ms(op.percentil(0.95)),
+                    ms(op.percentil(0.99)), ms(op.maximo.get())));
+        }
+        List<ConsultaLenta> lista = consultasLentas();
+        sb.append(String.format(Locale.ROOT, "%nConsultas lentas (≥ %d ms): %d%n", LIMITE_LENTA_NS / 1_000_000, totalLentas));
+        for (int i = lista.size() - 1; i >= 0; i--) {
+            ConsultaLenta l = lista.get(i);
+            sb.append(String.format(Locale.ROOT, "%8.2f ms  %s (%d linhas)%n    %s %s%n",
+                    ms(l.duracaoNs), l.operacao, l.linhas, l.sql, l.args != null ? l.args : ""));
+        }
+        return sb.toString();
+    }
+
+    // Todas as métricas em JSON (tempos em nanossegundos)
+    public static String paraJson() {
+        StringWriter out = new StringWriter();
+        try {
+            escreverJson(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringWriter não falha
+        }
+        return out.toString();
+    }
+
+    static void escreverJson(Writer out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.setIndent("  ");
+        json.beginObject();
+        json.name("ativo").value(ativo);
+        json.name("limiteLentaNs").value(LIMITE_LENTA_NS);
+
+        json.name("operacoes").beginArray();
+        for (Operacao op : operacoes().values()) {
+            json.beginObject();
+            json.name("operacao").value(op.nome);
+            json.name("chamadas").value(op.chamadas.sum());
+            json.name("linhas").value(op.linhas.sum());
+            json.name("totalNs").value(op.tempoTotal.sum());
+            json.name("p50Ns").value(op.percentil(0.50));
+            json.name("p95Ns").value(op.percentil(0.95));
+            json.name("p99Ns").value(op.percentil(0.99));
+            json.name("maxNs").value(op.maximo.get());
+            json.endObject();
+        }
+        json.endArray();
+
+        List<ConsultaLenta> lista = consultasLentas();
+        json.name("totalLentas").value(totalLentas);
+        json.name("lentas").beginArray();
+        for (ConsultaLenta l : lista) {
+            json.beginObject();
+            json.name("operacao").value(l.operacao);
+            json.name("instante").value(l.instante);
+            json.name("duracaoNs").value(l.duracaoNs);
+            json.name("linhas").value(l.linhas);
+            json.name("sql").value(l.sql);
+            json.name("args").value(l.args);
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    private static double ms(long ns) {
+        return ns / 1e6;
+    }
+
+    // ======== ESTATÍSTICAS POR OPERAÇÃO ========
+
+    static final class Operacao {
+        final String nome;
+        final LongAdder chamadas = new LongAdder();
+        final LongAdder linhas = new LongAdder();
+        final LongAdder tempoTotal = new LongAdder();
+        final AtomicLong maximo = new AtomicLong();
+        private final AtomicLongArray histograma = new AtomicLongArray(NUM_BALDES);
+
+        Operacao(String nome) {
+            this.nome = nome;
+        }
+
+        void registar(long duracaoNs, int n) {
+            chamadas.increment();
+            linhas.add(n);
+            tempoTotal.add(duracaoNs);
+            histograma.incrementAndGet(balde(duracaoNs));
+            long max;
+            while (duracaoNs > (max = maximo.get()) && !maximo.compareAndSet(max, duracaoNs)) {
+                // outra thread alterou o máximo: tenta outra vez
+            }
+        }
+
+        // Percentil p (0..1) em nanossegundos: o limite superior do balde onde cai
+        long percentil(double p) {
+            long total = 0;
+            for (int i = 0; i < NUM_BALDES; i++) total += histograma.get(i);
+            if (total == 0) return 0;
+
+            long alvo = (long) Math.ceil(p * total);
+            long acumulado = 0;
+            for (int i = 0; i < NUM_BALDES; i++) {
+                acumulado += histograma.get(i);
+                if (acumulado >= alvo) return Math.min(limiteSuperior(i), maximo.get());
+            }
+            return maximo.get();
+        }
+    }
+
+    /*
+     * Histograma log-linear em microssegundos: valores abaixo de 8 µs têm um balde cada;
+     * acima disso, cada potência de 2 é dividida em 8 baldes iguais.
+     */
+    private static final int SUB_BALDES = 8;
+    private static final int BITS_SUB = 3;
+    static final int NUM_BALDES = SUB_BALDES + (40 - BITS_SUB) * SUB_BALDES; // até ~2^40 µs
+
+    static int balde(long ns) {
+        long us = ns / 1000;
+        if (us < SUB_BALDES) return (int) Math.max(us, 0);
+        int expoente = 63 - Long.numberOfLeadingZeros(us); // >= BITS_SUB
+        int sub = (int) (us >>> (expoente - BITS_SUB)) & (SUB_BALDES - 1);
+        int i = SUB_BALDES + (expoente - BITS_SUB) * SUB_BALDES + sub;
+        return Math.min(i, NUM_BALDES - 1);
+    }
+
+    // Maior valor (em ns) que cai no balde i
+    static long limiteSuperior(int i) {
+        if (i < SUB_BALDES) return (i + 1) * 1000L - 1;
+        int expoente = (i - SUB_BALDES) / SUB_BALDES + BITS_SUB;
+        int sub = (i - SUB_BALDES) % SUB_BALDES;
+        long largura = 1L << (expoente - BITS_SUB);
+        long inicioUs = (1L << expoente) + sub * largura;
+        return (inicioUs + largura) * 1000L - 1;
+    }
+
+    // Consulta que passou o limite, com o SQL e os argumentos
+    static final class ConsultaLenta {
+        final String operacao;
+        final String sql;
+        final String args;
+        final long instante;
+        final long duracaoNs;
+        final int linhas;
+
+        ConsultaLenta(String operacao, String sql, String args, long instante, long duracaoNs, int linhas) {
+            this.operacao = operacao;
+            this.sql = sql;
+            this.args = args;
+            this.instante = instante;
+            this.duracaoNs = duracaoNs;
+            this.linhas = linhas;
+        }
+    }
+}
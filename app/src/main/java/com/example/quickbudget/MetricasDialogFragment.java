@@ -0,0 +1,57 @@
+package com.example.quickbudget;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.DialogFragment;
+
+/**
+ * MetricasDialogFragment
+ * -----------------------
+ * Ecrã de debug com as métricas dos DAOs (ver MetricasDAO): latências por operação
+ * e consultas lentas. Permite copiar tudo em JSON ou recomeçar a contagem.
+ */
+public class MetricasDialogFragment extends DialogFragment {
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(@Nullable Bundle savedInstanceState) {
+        View view = LayoutInflater.from(requireContext()).inflate(R.layout.fragment_metricas_dialog, null);
+        TextView tvMetricas = view.findViewById(R.id.textMetricas);
+        tvMetricas.setText(MetricasDAO.resumo());
+
+        AlertDialog dialog = new AlertDialog.Builder(requireContext())
+                .setTitle("Métricas da base de dados")
+                .setView(view)
+                .setPositiveButton("Copiar JSON", null)
+                .setNeutralButton("Limpar", null)
+                .setNegativeButton("Fechar", null)
+                .create();
+
+        // Os botões não fecham o diálogo (exceto Fechar)
+        dialog.setOnShowListener(d -> {
+            dialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(v -> copiarJson());
+            dialog.getButton(AlertDialog.BUTTON_NEUTRAL).setOnClickListener(v -> {
+                MetricasDAO.limpar();
+                tvMetricas.setText(MetricasDAO.resumo());
+            });
+        });
+        return dialog;
+    }
+
+    private void copiarJson() {
+        ClipboardManager clipboard = (ClipboardManager) requireContext().getSystemService(Context.CLIPBOARD_SERVICE);
+        clipboard.setPrimaryClip(ClipData.newPlainText("Métricas QuickBudget", MetricasDAO.paraJson()));
+        Toast.makeText(requireContext(), "Métricas copiadas (JSON)", Toast.LENGTH_SHORT).show();
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.quickbudget;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * MotorSync
+ * ----------
+ * Sincroniza as despesas e os orçamentos locais com um {@link RemotoSync}.
+ * A base de dados local continua a ser a fonte de verdade: a aplicação funciona sem rede
+ * e a sincronização corre quando possível, numa thread de fundo.
+ *
+ * Cada sincronização:
+ *  1. Recebe, por páginas, os registos gravados no remoto depois da marca deste dispositivo
+ *     e aplica-os numa transação por página (que também guarda a nova marca).
+ *     São ignorados os registos enviados por este dispositivo e os que têm uma alteração
+ *     local ainda por enviar (a alteração local prevalece e é enviada a seguir).
+ *  2. Envia as alterações de CHANGE_LOG, por ordem, em lotes de {@link RemotoSync#TAMANHO_LOTE},
+ *     lendo o estado atual de cada registo. Cada lote enviado é retirado de CHANGE_LOG.
+ *
+ * O trabalho é proporcional ao número de alterações desde a última sincronização
+ * (locais e remotas), nunca ao tamanho do histórico.
+ */
+public final class MotorSync {
+
+    private static final String ESTADO_DISPOSITIVO = "dispositivo";
+    private static final String ESTADO_MARCA_VERSAO = "marca_versao";
+    private static final String ESTADO_MARCA_ID = "marca_id";
+
+    // Resultado de uma sincronização
+    public static final class Resultado {
+        public final int recebidos;        // registos aplicados localmente
+        public final int budgetsRecebidos; // dos quais orçamentos
+        public final int enviados;
+
+        Resultado(int recebidos, int budgetsRecebidos, int enviados) {
+            this.recebidos = recebidos;
+            this.budgetsRecebidos = budgetsRecebidos;
+            this.enviados = enviados;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final SQLiteDatabase db;
+    private boolean fechado = false;
+    private final DespesaDAO despesas;
+    private final BudgetDAO budgets;
+    private final RemotoSync remoto;
+
+    public MotorSync(Context context, DespesaDAO despesas, BudgetDAO budgets, RemotoSync remoto) {
+        this.dbManager = DatabaseManager.getInstance(context);
+        this.db = dbManager.abrir();
+        this.despesas = despesas;
+        this.budgets = budgets;
+        this.remoto = remoto;
+    }
+
+    /**
+     * Recebe e envia as alterações pendentes. Não deve correr em paralelo consigo própria.
+     *
+     * @throws IOException se o remoto falhar; o que já foi aplicado ou enviado fica guardado
+     *                     e a sincronização seguinte continua a partir daí
+     */
+    public synchronized Resultado sincronizar() throws IOException {
+        String dispositivo = idDispositivo();
+        int[] recebidos = receber(dispositivo);
+        int enviados = enviar(dispositivo);
+        return new Resultado(recebidos[0], recebidos[1], enviados);
+    }
+
+    // ======== RECEÇÃO ========
+
+    // Devolve {registos aplicados, orçamentos aplicados}
+    private int[] receber(String dispositivo) throws IOException {
+        int aplicados = 0, budgetsAplicados = 0;
+        MarcaSync marca = lerMarca();
+
+        while (true) {
+            List<RegistoSync> pagina = remoto.receber(marca, RemotoSync.TAMANHO_LOTE);
+            if (pagina.isEmpty()) break;
+
+            Set<String> pendentes = chavesPendentes(pagina);
+            List<RegistoSync> novasDespesas = new ArrayList<>();
+            List<RegistoSync> novosBudgets = new ArrayList<>();
+            for (RegistoSync r : pagina) {
+                if (dispositivo.equals(r.origem) || pendentes.contains(r.idDocumento())) continue;
+                (r.eDespesa() ? novasDespesas : novosBudgets).add(r);
+            }
+
+            MarcaSync ultima = pagina.get(pagina.size() - 1).versao;
+            despesas.aplicarRemotas(novasDespesas, () -> {
+                budgets.aplicarRemotos(novosBudgets);
+                guardarMarca(ultima);
+            });
+            if (!novosBudgets.isEmpty()) budgets.invalidarCache(); // já confirmados
+            aplicados += novasDespesas.size() + novosBudgets.size();
+            budgetsAplicados += novosBudgets.size();
+            marca = ultima;
+
+            if (pagina.size() < RemotoSync.TAMANHO_LOTE) break;
+        }
+        return new int[]{aplicados, budgetsAplicados};
+    }
+
+    // Registos da página que têm alterações locais por enviar (pelo id do documento)
+    private Set<String> chavesPendentes(List<RegistoSync> pagina) {
+        Set<String> pendentes = new HashSet<>();
+        String[] args = new String[pagina.size()];
+        StringBuilder marcadores = new StringBuilder();
+        for (int i = 0; i < pagina.size(); i++) {
+            args[i] = pagina.get(i).chave;
+            marcadores.append(i == 0 ? "?" : ", ?");
+        }
+
+        try (Cursor c = db.query(
+                DBHelper.TABLE_CHANGE_LOG,
+                new String[]{DBHelper.COLUMN_LOG_TABELA, DBHelper.COLUMN_LOG_CHAVE},
+                DBHelper.COLUMN_LOG_CHAVE + " IN (" + marcadores + ")",
+                args,
+                null, null, null
+        )) {
+            while (c.moveToNext()) pendentes.add(c.getString(0) + ":" + c.getString(1));
+        }
+        return pendentes;
+    }
+
+    // ======== ENVIO ========
+
+    // Alterações por enviar com o estado atual de cada registo (despesa pelo uid, orçamento pela semana)
+    private static final String SQL_ALTERACOES =
+            "SELECT l." + DBHelper.COLUMN_LOG_SEQ + ", l." + DBHelper.COLUMN_LOG_TABELA + ", l." + DBHelper.COLUMN_LOG_CHAVE +
+                    ", l." + DBHelper.COLUMN_LOG_APAGADO + ", l." + DBHelper.COLUMN_LOG_ALTERADO_EM +
+                    ", d." + DBHelper.COLUMN_ID + ", d." + DBHelper.COLUMN_DESCRICAO + ", d." + DBHelper.COLUMN_CATEGORIA_ID +
+                    ", d." + DBHelper.COLUMN_VALOR_CENTIMOS + ", d." + DBHelper.COLUMN_TIMESTAMP + ", d." + DBHelper.COLUMN_RECORRENCIA +
+                    ", b." + DBHelper.COLUMN_WEEK_START + ", b." + DBHelper.COLUMN_BUDGET_CENTIMOS +
+                    " FROM " + DBHelper.TABLE_CHANGE_LOG + " l" +
+                    " LEFT JOIN " + DBHelper.TABLE_DESPESAS + " d ON l." + DBHelper.COLUMN_LOG_TABELA + " = '" + DBHelper.TABLE_DESPESAS + "'" +
+                    " AND d." + DBHelper.COLUMN_UID + " = l." + DBHelper.COLUMN_LOG_CHAVE +
+                    " LEFT JOIN " + DBHelper.TABLE_BUDGET + " b ON l." + DBHelper.COLUMN_LOG_TABELA + " = '" + DBHelper.TABLE_BUDGET + "'" +
+                    " AND b." + DBHelper.COLUMN_WEEK_START + " = CAST(l." + DBHelper.COLUMN_LOG_CHAVE + " AS INTEGER)" +
+                    " ORDER BY l." + DBHelper.COLUMN_LOG_SEQ +
+                    " LIMIT ?";
+
+    private int enviar(String dispositivo) throws IOException {
+        int enviados = 0;
+
+        while (true) {
+            Categorias categorias = despesas.getCategorias();
+            List<RegistoSync> lote = new ArrayList<>();
+            long ultimoSeq = -1;
+            try (Cursor c = db.rawQuery(SQL_ALTERACOES, new String[]{String.valueOf(RemotoSync.TAMANHO_LOTE)})) {
+                while (c.moveToNext()) {
+                    ultimoSeq = c.getLong(0);
+                    RegistoSync r = new RegistoSync();
+                    r.tabela = c.getString(1);
+                    r.chave = c.getString(2);
+                    r.alteradoEm = c.getLong(4);
+                    r.origem = dispositivo;
+                    // Um registo que já não existe é enviado como eliminado
+                    if (r.eDespesa()) {
+                        r.apagado = c.getInt(3) != 0 || c.isNull(5);
+                        if (!r.apagado) {
+                            r.descricao = c.getString(6);
+                            r.categoria = categorias.nome(c.getInt(7));
+                            r.valorCentimos = c.getLong(8);
+                            r.timestamp = c.getLong(9);
+                            r.recorrencia = c.getString(10);
+                        }
+                    } else {
+                        r.apagado = c.getInt(3) != 0 || c.isNull(11);
+                        if (!r.apagado) r.valorCentimos = c.getLong(12);
+                    }
+                    lote.add(r);
+                }
+            }
+            if (lote.isEmpty()) break;
+
+            remoto.enviar(lote);
+
+            // Os registos alterados entretanto voltaram a entrar com um seq maior e ficam para o próximo lote
+            db.delete(DBHelper.TABLE_CHANGE_LOG, DBHelper.COLUMN_LOG_SEQ + " <= ?",
+                    new String[]{String.valueOf(ultimoSeq)});
+            enviados += lote.size();
+
+            if (lote.size() < RemotoSync.TAMANHO_LOTE) break;
+        }
+        return enviados;
+    }
+
+    // ======== ESTADO ========
+
+    // Id deste dispositivo (gerado na primeira sincronização)
+    String idDispositivo() {
+        String id = lerEstado(ESTADO_DISPOSITIVO);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            gravarEstado(ESTADO_DISPOSITIVO, id);
+        }
+        return id;
+    }
+
+    // Marca do último registo recebido, ou null se ainda não houve receções
+    MarcaSync lerMarca() {
+        String versao = lerEstado(ESTADO_MARCA_VERSAO);
+        String id = lerEstado(ESTADO_MARCA_ID);
+        return versao != null && id != null ? new MarcaSync(Long.parseLong(versao), id) : null;
+    }
+
+    private void guardarMarca(MarcaSync marca) {
+        gravarEstado(ESTADO_MARCA_VERSAO, String.valueOf(marca.versao));
+        gravarEstado(ESTADO_MARCA_ID, marca.id);
+    }
+
+    private String lerEstado(String chave) {
+        try (Cursor c = db.query(
+                DBHelper.TABLE_SYNC_ESTADO,
+                new String[]{DBHelper.COLUMN_SYNC_VALOR},
+                DBHelper.COLUMN_SYNC_CHAVE + " = ?",
+                new String[]{chave},
+                null, null, null
+        )) {
+            return c.moveToFirst() ? c.getString(0) : null;
+        }
+    }
+
+    private void gravarEstado(String chave, String valor) {
+        ContentValues values = new ContentValues();
+        values.put(DBHelper.COLUMN_SYNC_CHAVE, chave);
+        values.put(DBHelper.COLUMN_SYNC_VALOR, valor);
+        db.insertWithOnConflict(DBHelper.TABLE_SYNC_ESTADO, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // Liberta a referência à ligação partilhada
+    public void fechar() {
+        if (fechado) return;
+        fechado = true;
+        dbManager.libertar();
+    }
+}
@@ -0,0 +1,445 @@
+package com.example.quickbudget;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * QuickBudgetRepository
+ * ----------------------
+ * Camada de acesso aos dados usada pela interface.
+ * Executa todas as operações do DespesaDAO e do BudgetDAO num conjunto limitado
+ * de threads de fundo e entrega os resultados através de LiveData, para que
+ * os fragmentos os recebam na thread principal apenas enquanto estão ativos.
+ *
+ * Nenhuma leitura ou escrita na base de dados é feita na thread da interface.
+ * As alterações às despesas ({@link AlteracaoDados}) são reencaminhadas para a thread
+ * principal, para que os ecrãs possam atualizar-se sem voltar a ler tudo.
+ * A sincronização com o Firestore ({@link MotorSync}) corre numa thread própria,
+ * para que a espera pela rede não atrase as leituras da interface.
+ *
+ * Exceção: {@link #registarRapido(Despesa)} escreve a despesa no diário de registo rápido
+ * ({@link DiarioDespesas}) na thread de quem chama; a passagem para o SQLite é feita depois,
+ * em lote, numa thread de fundo. O que ficar no diário (ex: o processo morreu antes da
+ * passagem) é gravado quando o repositório é criado no arranque seguinte.
+ */
+public final class QuickBudgetRepository {
+
+    private static final String TAG = "QuickBudgetRepository";
+    private static final int NUM_THREADS = 2;
+    private static final String FICHEIRO_DIARIO = "despesas.diario";
+
+    private static QuickBudgetRepository instance;
+
+    private final Context context;
+    private final ExecutorService executor;
+    private DespesaDAO despesaDAO; // criados na primeira tarefa, já numa thread de fundo
+    private BudgetDAO budgetDAO;
+    private final ExecutorService executorSync;
+    private MotorSync motorSync; // criado na primeira sincronização com sessão iniciada
+    private CopiaSeguranca copiaSeguranca;
+    private final DiarioDespesas diario;
+    private final AtomicBoolean passagemAgendada = new AtomicBoolean();
+    private final Object passagem = new Object(); // uma passagem do diário de cada vez
+
+    private final Handler threadPrincipal = new Handler(Looper.getMainLooper());
+    private final List<AlteracaoDados.Observador> observadores = new CopyOnWriteArrayList<>();
+
+    /**
+     * Resumo de uma semana: total gasto, orçamento e gastos por categoria (id da categoria),
+     * todos em cêntimos.
+     * O registo de categorias permite obter o nome e a cor de cada id.
+     */
+    public static final class ResumoSemana {
+        public final int semana; // índice da semana (ver DateUtils)
+        public final long total;
+        public final long budget;
+        public final Map<Integer, Long> porCategoria;
+        public final Categorias categorias;
+
+        ResumoSemana(int semana, long total, long budget,
+                     Map<Integer, Long> porCategoria, Categorias categorias) {
+            this.semana = semana;
+            this.total = total;
+            this.budget = budget;
+            this.porCategoria = porCategoria;
+            this.categorias = categorias;
+        }
+    }
+
+    private QuickBudgetRepository(Context context) {
+        this.context = context;
+
+        AtomicInteger contador = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                NUM_THREADS, NUM_THREADS,
+                30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "quickbudget-db-" + contador.incrementAndGet());
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+        executorSync = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "quickbudget-sync");
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+
+        // Métricas dos DAOs: só nas builds de debug (desativadas custam uma leitura por chamada)
+        MetricasDAO.ativar((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+
+        // Fora da cópia de segurança do Android: o conteúdo vai para a base de dados em segundos
+        diario = new DiarioDespesas(new File(context.getNoBackupFilesDir(), FICHEIRO_DIARIO));
+        agendarPassagemDiario(); // abre o diário e recupera o que ficou do arranque anterior
+    }
+
+    // Devolve a instância partilhada do repositório
+    public static synchronized QuickBudgetRepository getInstance(Context context) {
+        if (instance == null) instance = new QuickBudgetRepository(context.getApplicationContext());
+        return instance;
+    }
+
+    // ======== ALTERAÇÕES ========
+
+    /**
+     * Entrega ao observador, na thread principal e pela ordem em que foram feitas, as alterações
+     * às despesas, até o ciclo de vida indicado ser destruído (ex: getViewLifecycleOwner()).
+     * As alterações chegam antes do resultado (LiveData) da operação que as fez.
+     */
+    public void observarAlteracoes(LifecycleOwner owner, AlteracaoDados.Observador observador) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) return;
+        observadores.add(observador);
+        owner.getLifecycle().addObserver((LifecycleEventObserver) (source, event) -> {
+            if (event == Lifecycle.Event.ON_DESTROY) observadores.remove(observador);
+        });
+    }
+
+    // Chamado pelo DespesaDAO numa thread de fundo, depois de cada alteração confirmada
+    private void reencaminharAlteracao(AlteracaoDados alteracao) {
+        threadPrincipal.post(() -> {
+            for (AlteracaoDados.Observador o : observadores) o.onAlteracao(alteracao);
+        });
+    }
+
+    // ======== DESPESAS ========
+
+    public LiveData<Despesa> obterDespesa(int id) {
+        return executar(() -> despesas().obterPorId(id));
+    }
+
+    public LiveData<Long> inserir(Despesa despesa) {
+        return executar(() -> despesas().inserir(despesa));
+    }
+
+    /**
+     * Registo rápido: acrescenta a despesa ao diário e volta logo, sem esperar pela base de
+     * dados (uma escrita pequena num ficheiro aberto, pode ser chamado na thread da interface).
+     * A despesa chega ao SQLite pouco depois, numa thread de fundo, e os ecrãs são avisados
+     * com uma alteração LOTE. Devolve false se não foi possível escrever no diário; nesse caso
+     * deve usar-se {@link #inserir(Despesa)}.
+     */
+    public boolean registarRapido(Despesa despesa) {
+        try {
+            diario.acrescentar(despesa);
+        } catch (IOException e) {
+            Log.e(TAG, "Erro ao escrever no diário", e);
+            return false;
+        }
+        agendarPassagemDiario();
+        return true;
+    }
+
+    public LiveData<Boolean> atualizar(Despesa despesa) {
+        return executar(() -> {
+            despesas().atualizar(despesa);
+            return true;
+        });
+    }
+
+    public LiveData<Boolean> eliminar(int id) {
+        return executar(() -> {
+            despesas().eliminar(id);
+            return true;
+        });
+    }
+
+    // Elimina várias despesas numa só transação; devolve quantas foram eliminadas
+    public LiveData<Integer> eliminarLote(List<Integer> ids) {
+        return executar(() -> despesas().eliminarLote(ids));
+    }
+
+    // As N despesas mais recentes de uma semana (índice, ver DateUtils)
+    public LiveData<List<Despesa>> listarRecentes(int semana, int limite) {
+        return executar(() -> despesas().listarRecentes(semana, limite));
+    }
+
+    public LiveData<List<Despesa>> listarPagina(DespesaDAO.ChavePagina depoisDe, int limite) {
+        return executar(() -> despesas().listarPagina(depoisDe, limite));
+    }
+
+    // Pesquisa de texto nas descrições (índice FTS), da mais recente para a mais antiga
+    public LiveData<List<Despesa>> pesquisar(String texto, int limite) {
+        return executar(() -> despesas().pesquisar(texto, limite));
+    }
+
+    // ======== RESUMOS ========
+
+    // Total, orçamento e gastos por categoria de uma semana (índice, ver DateUtils)
+    public LiveData<ResumoSemana> carregarResumoSemana(int semana) {
+        return executar(() -> {
+            Map<Integer, Long> porCategoria = despesas().getTotaisPorCategoria(semana);
+            long total = 0;
+            for (long valor : porCategoria.values()) total += valor;
+            long budget = budgets().getBudgetPorSemana(semana);
+            return new ResumoSemana(semana, total, budget, porCategoria, despesas().getCategorias());
+        });
+    }
+
+    // Total e orçamento das últimas N semanas (da mais antiga para a atual), com uma consulta para os totais
+    public LiveData<List<ResumoSemana>> carregarUltimasSemanas(int n) {
+        return executar(() -> {
+            int primeira = DateUtils.semanaAtual() - (n - 1);
+            long[] gastos = new long[n];
+            long[] budgets = new long[n];
+            despesas().carregarSemanas(primeira, gastos);
+            budgets().carregarBudgets(primeira, budgets); // normalmente já em cache
+
+            List<ResumoSemana> semanas = new ArrayList<>(n);
+            Categorias categorias = despesas().getCategorias();
+            for (int i = 0; i < n; i++) {
+                semanas.add(new ResumoSemana(primeira + i, gastos[i], budgets[i],
+                        Collections.emptyMap(), categorias));
+            }
+            return semanas;
+        });
+    }
+
+    // ======== ORÇAMENTO ========
+
+    // Define o orçamento (em cêntimos) da semana
+    public LiveData<Boolean> setBudget(long valor, long inicioSemana) {
+        return executar(() -> {
+            budgets().setBudget(valor, inicioSemana);
+            return true;
+        });
+    }
+
+    /**
+     * Prepara a semana do instante indicado: garante que existe orçamento e gera as despesas
+     * recorrentes. Síncrono: é chamado pelo ManutencaoWorker, já numa thread de fundo.
+     */
+    public void prepararSemana(long agora) {
+        int semana = DateUtils.semanaDe(agora);
+        long inicioSemana = DateUtils.inicioSemana(semana);
+        budgets().getOrCreateBudgetAtual(semana);
+        despesas().gerarDespesasRecorrentes(agora);
+        // O orçamento não passa pelo DespesaDAO: o Dashboard é avisado aqui
+        reencaminharAlteracao(AlteracaoDados.lote(DBHelper.TABLE_BUDGET, inicioSemana, inicioSemana));
+    }
+
+    // ======== CÓPIA DE SEGURANÇA ========
+
+    /**
+     * Exporta todas as despesas e orçamentos para o documento indicado (ex: escolhido
+     * através do Storage Access Framework), em JSON ou CSV. Publica false se falhar.
+     */
+    public LiveData<Boolean> exportar(Uri destino, boolean json) {
+        return executar(() -> {
+            try (OutputStream out = context.getContentResolver().openOutputStream(destino, "wt")) {
+                if (out == null) throw new IOException("Não foi possível abrir " + destino);
+                CopiaSeguranca copia = copiaSeguranca();
+                if (json) copia.exportarJson(out); else copia.exportarCsv(out);
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Erro ao exportar", e);
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Importa uma cópia (JSON ou CSV) do documento indicado. Publica null se o ficheiro
+     * não puder ser lido ou for inválido; os blocos já importados ficam guardados.
+     */
+    public LiveData<CopiaSeguranca.Resultado> importar(Uri origem) {
+        return executar(() -> {
+            try (InputStream in = context.getContentResolver().openInputStream(origem)) {
+                if (in == null) throw new IOException("Não foi possível abrir " + origem);
+                CopiaSeguranca.Resultado r = copiaSeguranca().importar(in);
+                if (r.budgets > 0) {
+                    reencaminharAlteracao(AlteracaoDados.lote(DBHelper.TABLE_BUDGET, Long.MIN_VALUE, Long.MAX_VALUE));
+                }
+                return r;
+            } catch (IOException e) {
+                Log.e(TAG, "Erro ao importar", e);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Importa extratos bancários em CSV como despesas (ver ImportadorExtratos).
+     * Cada ficheiro é inserido na sua própria transação; um ficheiro ilegível é contado
+     * em {@code ficheirosComErro} e os restantes são importados na mesma.
+     */
+    public LiveData<ImportadorExtratos.Resultado> importarExtratos(List<Uri> extratos) {
+        return executar(() -> {
+            ImportadorExtratos importador = new ImportadorExtratos();
+            ImportadorExtratos.Resultado total = ImportadorExtratos.Resultado.VAZIO;
+            for (Uri extrato : extratos) {
+                try (InputStream in = context.getContentResolver().openInputStream(extrato)) {
+                    if (in == null) throw new IOException("Não foi possível abrir " + extrato);
+                    total = total.mais(importador.importar(in, despesas()));
+                } catch (IOException e) {
+                    Log.e(TAG, "Erro ao importar o extrato " + extrato, e);
+                    total = total.mais(ImportadorExtratos.Resultado.ERRO);
+                }
+            }
+            return total;
+        });
+    }
+
+    private synchronized CopiaSeguranca copiaSeguranca() {
+        if (copiaSeguranca == null) copiaSeguranca = new CopiaSeguranca(context, despesas(), budgets());
+        return copiaSeguranca;
+    }
+
+    // ======== SINCRONIZAÇÃO ========
+
+    /**
+     * Recebe as alterações remotas e envia as locais (ver MotorSync).
+     * Sem sessão iniciada no Firebase não faz nada e publica false; se o remoto falhar,
+     * as alterações ficam pendentes para a sincronização seguinte.
+     */
+    public LiveData<Boolean> sincronizar() {
+        MutableLiveData<Boolean> resultado = new MutableLiveData<>();
+        executorSync.execute(() -> {
+            FirebaseUser utilizador = FirebaseAuth.getInstance().getCurrentUser();
+            if (utilizador == null) {
+                resultado.postValue(false);
+                return;
+            }
+            try {
+                MotorSync.Resultado r = motorSync(utilizador.getUid()).sincronizar();
+                // Os orçamentos não passam pelo DespesaDAO: o lote é publicado aqui
+                if (r.budgetsRecebidos > 0) {
+                    reencaminharAlteracao(AlteracaoDados.lote(DBHelper.TABLE_BUDGET, Long.MIN_VALUE, Long.MAX_VALUE));
+                }
+                resultado.postValue(true);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Erro na sincronização", e);
+                resultado.postValue(false);
+            }
+        });
+        return resultado;
+    }
+
+    private synchronized MotorSync motorSync(String uidUtilizador) {
+        if (motorSync == null) {
+            motorSync = new MotorSync(context, despesas(), budgets(),
+                    new FirestoreSync(FirebaseFirestore.getInstance(), uidUtilizador));
+        }
+        return motorSync;
+    }
+
+    // ======== DIÁRIO DE REGISTO RÁPIDO ========
+
+    /*
+     * Uma passagem de cada vez na fila: as despesas registadas enquanto uma passagem espera
+     * ou corre entram na mesma (ou na seguinte) transação, em vez de uma transação cada.
+     */
+    private void agendarPassagemDiario() {
+        if (passagemAgendada.compareAndSet(false, true)) executor.execute(this::passarDiario);
+    }
+
+    // Grava no SQLite as despesas do diário e retira-as do diário
+    private void passarDiario() {
+        passagemAgendada.set(false); // o que for acrescentado a partir daqui agenda nova passagem
+        synchronized (passagem) {
+            try {
+                diario.abrir(); // na primeira passagem, para que registarRapido encontre o ficheiro aberto
+                List<Despesa> separadas;
+                while (!(separadas = diario.separar()).isEmpty()) {
+                    despesas().inserirDoDiario(separadas); // ignora as que já lá estão (uid)
+                    diario.descartar();
+                }
+            } catch (IOException | RuntimeException e) {
+                // Ficam no diário: nova tentativa no próximo registo ou arranque
+                Log.e(TAG, "Erro ao passar o diário para a base de dados", e);
+            }
+        }
+    }
+
+    // ======== EXECUÇÃO EM SEGUNDO PLANO ========
+
+    /*
+     * Os DAOs mantêm uma referência à ligação partilhada durante toda a vida do processo.
+     * São criados de forma preguiçosa para que a abertura (e eventual migração)
+     * da base de dados aconteça numa thread de fundo.
+     */
+    private synchronized DespesaDAO despesas() {
+        if (despesaDAO == null) {
+            despesaDAO = new DespesaDAO(context);
+            despesaDAO.adicionarObservador(this::reencaminharAlteracao);
+        }
+        return despesaDAO;
+    }
+
+    private synchronized BudgetDAO budgets() {
+        if (budgetDAO == null) budgetDAO = new BudgetDAO(context);
+        return budgetDAO;
+    }
+
+    private interface Tarefa<T> {
+        T executar();
+    }
+
+    /**
+     * Corre a tarefa numa thread de fundo e publica o resultado na thread principal.
+     * Se a operação falhar, o erro é registado e é publicado null.
+     */
+    private <T> LiveData<T> executar(Tarefa<T> tarefa) {
+        MutableLiveData<T> resultado = new MutableLiveData<>();
+        executor.execute(() -> {
+            try {
+                resultado.postValue(tarefa.executar());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Erro no acesso à base de dados", e);
+                resultado.postValue(null);
+            }
+        });
+        return resultado;
+    }
+}
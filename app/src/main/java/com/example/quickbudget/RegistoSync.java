@@ -0,0 +1,36 @@
+package com.example.quickbudget;
+
+/**
+ * RegistoSync
+ * ------------
+ * Estado de uma despesa ou de um orçamento tal como é trocado com o remoto:
+ * um documento por registo, com o valor mais recente (ou a indicação de que foi eliminado).
+ *
+ * Despesas: a chave é o uid da despesa e são usados todos os campos de dados.
+ * Orçamentos: a chave é o início da semana e só é usado {@link #valorCentimos}.
+ */
+public final class RegistoSync {
+
+    public String tabela;        // DBHelper.TABLE_DESPESAS ou DBHelper.TABLE_BUDGET
+    public String chave;
+    public boolean apagado;
+    public long alteradoEm;      // instante da alteração no dispositivo de origem
+    public String origem;        // id do dispositivo que fez a alteração
+
+    public String descricao;
+    public String categoria;     // nome da categoria (os ids são locais a cada dispositivo)
+    public long valorCentimos;
+    public long timestamp;
+    public String recorrencia;
+
+    public MarcaSync versao;     // posição no remoto (atribuída pelo remoto ao receber)
+
+    // Id do documento no remoto (ex: "despesas:3f2a…", "budget:1748815200000")
+    public String idDocumento() {
+        return tabela + ":" + chave;
+    }
+
+    public boolean eDespesa() {
+        return DBHelper.TABLE_DESPESAS.equals(tabela);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.quickbudget;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * RemotoSync
+ * -----------
+ * Armazenamento remoto usado pelo {@link MotorSync} (Firestore na aplicação,
+ * uma implementação em memória nos testes).
+ *
+ * O remoto guarda um documento por registo ({@link RegistoSync#idDocumento()}): cada envio
+ * substitui o documento e atribui-lhe uma versão nova, maior do que todas as anteriores.
+ */
+public interface RemotoSync {
+
+    // Número máximo de registos por envio e por página recebida
+    int TAMANHO_LOTE = 500;
+
+    /**
+     * Grava os registos numa só escrita atómica (no máximo {@link #TAMANHO_LOTE}).
+     */
+    void enviar(List<RegistoSync> registos) throws IOException;
+
+    /**
+     * Registos com versão posterior à marca, por ordem de versão (e id do documento),
+     * com {@link RegistoSync#versao} preenchida.
+     *
+     * @param depoisDe marca do último registo já recebido, ou null para receber tudo
+     * @param limite   número máximo de registos a devolver
+     */
+    List<RegistoSync> receber(MarcaSync depoisDe, int limite) throws IOException;
+}
@@ -0,0 +1,186 @@
+package com.example.quickbudget;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmarks da camada DAO sobre históricos sintéticos (10 mil a 1 milhão de despesas),
+ * executados na JVM com o SQLite nativo do Robolectric.
+ *
+ * Só corre quando a propriedade {@code quickbudget.benchmark.linhas} indica os tamanhos a medir
+ * (ver app/build.gradle.kts). Os resultados são gravados em JSON no ficheiro indicado por
+ * {@code quickbudget.benchmark.saida}, para comparar versões entre si.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class BenchmarkDAOTest {
+
+    private static final long SEMENTE = 20250602L;
+    private static final int TAMANHO_LOTE = 5_000;
+    private static final int AQUECIMENTO = 3;
+    private static final int ITERACOES = 10;
+
+    // Relatório gravado no fim (serializado diretamente pelo Gson)
+    private static final class Relatorio {
+        final long semente = SEMENTE;
+        final long geradoEm = System.currentTimeMillis();
+        final String java = System.getProperty("java.version");
+        final String so = System.getProperty("os.name") + " " + System.getProperty("os.arch");
+        final List<MedidorDesempenho.Resultado> resultados = new ArrayList<>();
+    }
+
+    private long sumidouro; // impede que os resultados das operações sejam descartados
+
+    @Test
+    public void medirDAOs() throws IOException {
+        int[] tamanhos = lerTamanhos(System.getProperty("quickbudget.benchmark.linhas", ""));
+        Assume.assumeTrue("Benchmarks desativados (quickbudget.benchmark.linhas vazio)", tamanhos.length > 0);
+
+        Context context = ApplicationProvider.getApplicationContext();
+        MedidorDesempenho medidor = new MedidorDesempenho(AQUECIMENTO, ITERACOES);
+        Relatorio relatorio = new Relatorio();
+
+        for (int linhas : tamanhos) {
+            context.deleteDatabase("quickbudget.db");
+            medirTamanho(context, medidor, linhas, relatorio.resultados);
+        }
+
+        File saida = new File(System.getProperty("quickbudget.benchmark.saida", "build/benchmarks/dao.json"));
+        File pasta = saida.getAbsoluteFile().getParentFile();
+        if (pasta != null) pasta.mkdirs();
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer writer = new FileWriter(saida)) {
+            gson.toJson(relatorio, writer);
+        }
+        System.out.println("Resultados gravados em " + saida.getAbsolutePath());
+    }
+
+    private void medirTamanho(Context context, MedidorDesempenho medidor, int linhas,
+                              List<MedidorDesempenho.Resultado> resultados) {
+        DatabaseManager dbManager = DatabaseManager.getInstance(context);
+        SQLiteDatabase db = dbManager.abrir();
+        DespesaDAO despesaDAO = new DespesaDAO(context);
+        BudgetDAO budgetDAO = new BudgetDAO(context);
+
+        try {
+            List<Despesa> despesas = new GeradorDespesas(SEMENTE).gerar(linhas);
+            for (int i = 0; i < despesas.size(); i += TAMANHO_LOTE) {
+                despesaDAO.inserirLote(despesas.subList(i, Math.min(i + TAMANHO_LOTE, despesas.size())));
+            }
+            inserirBudgets(db, GeradorDespesas.inicio(linhas));
+            assertEquals(linhas, despesaDAO.listarTodas().size());
+
+            int ultimaSemana = DateUtils.semanaDe(GeradorDespesas.FIM);
+            long inicioUltimoMes = GeradorDespesas.FIM - 30L * 24 * 60 * 60 * 1000;
+            int semanaAtual = DateUtils.semanaAtual();
+
+            resultados.add(imprimir(medidor.medir("listarTodas", linhas,
+                    () -> sumidouro += despesaDAO.listarTodas().size())));
+
+            resultados.add(imprimir(medidor.medir("listarSemana", linhas,
+                    () -> sumidouro += despesaDAO.listarSemana(ultimaSemana).size())));
+
+            resultados.add(imprimir(medidor.medir("getTotalPorIntervalo", linhas,
+                    () -> sumidouro += despesaDAO.getTotalPorIntervalo(inicioUltimoMes, GeradorDespesas.FIM))));
+
+            // Gasto de 4 e 52 semanas (uma consulta cada)
+            for (int semanas : new int[]{4, 52}) {
+                int primeira = ultimaSemana - (semanas - 1);
+                long[] gastos = new long[semanas];
+                resultados.add(imprimir(medidor.medir("carregarSemanas(" + semanas + ")", linhas, () -> {
+                    despesaDAO.carregarSemanas(primeira, gastos);
+                    sumidouro += gastos[semanas - 1];
+                })));
+            }
+
+            // Pesquisa por prefixo nas descrições (índice FTS)
+            resultados.add(imprimir(medidor.medir("pesquisar", linhas,
+                    () -> sumidouro += despesaDAO.pesquisar("farm", 50).size())));
+
+            // Mesmo agrupamento por categoria, lendo o último mês em formato colunar
+            long[] porCategoria = new long[despesaDAO.getCategorias().tamanho()];
+            resultados.add(imprimir(medidor.medir("carregarColunas+somarPorCategoria", linhas, () -> {
+                DespesasColunares colunas = despesaDAO.carregarColunas(inicioUltimoMes, GeradorDespesas.FIM + 1);
+                colunas.somarPorCategoria(inicioUltimoMes, GeradorDespesas.FIM + 1, porCategoria);
+                sumidouro += colunas.tamanho();
+            })));
+
+            // Todas as recorrências voltam a estar vencidas antes de cada iteração
+            resultados.add(imprimir(medidor.medir("gerarDespesasRecorrentes", linhas,
+                    () -> db.execSQL("UPDATE " + DBHelper.TABLE_RECORRENCIAS + " SET " + DBHelper.COLUMN_REC_PROXIMA + " = 0"),
+                    () -> sumidouro += despesaDAO.gerarDespesasRecorrentes(GeradorDespesas.FIM))));
+
+            // Mede o caminho de criação: o orçamento da semana atual é apagado antes de cada iteração
+            resultados.add(imprimir(medidor.medir("getOrCreateBudgetAtual", linhas,
+                    () -> {
+                        db.delete(DBHelper.TABLE_BUDGET, DBHelper.COLUMN_BUDGET_SEMANA + " = ?",
+                                new String[]{String.valueOf(semanaAtual)});
+                        budgetDAO.invalidarCache();
+                    },
+                    () -> sumidouro += budgetDAO.getOrCreateBudgetAtual(semanaAtual))));
+        } finally {
+            despesaDAO.fechar();
+            budgetDAO.fechar();
+            dbManager.libertar();
+        }
+    }
+
+    // Um orçamento a cada quatro semanas ao longo do histórico
+    private static void inserirBudgets(SQLiteDatabase db, long inicio) {
+        db.beginTransaction();
+        try {
+            int n = 0;
+            for (long semana = DateUtils.getWeekStartMillis(inicio); semana <= GeradorDespesas.FIM;
+                 semana = DateUtils.getNextWeekStartMillis(semana), n++) {
+                if (n % 4 != 0) continue;
+                ContentValues values = new ContentValues();
+                values.put(DBHelper.COLUMN_BUDGET_SEMANA, DateUtils.semanaDe(semana));
+                values.put(DBHelper.COLUMN_WEEK_START, semana);
+                values.put(DBHelper.COLUMN_BUDGET_CENTIMOS, 10_000 + (n % 13) * 1_000);
+                db.insert(DBHelper.TABLE_BUDGET, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static MedidorDesempenho.Resultado imprimir(MedidorDesempenho.Resultado r) {
+        System.out.println(r);
+        return r;
+    }
+
+    // Ex: "10000,100000,1000000"
+    private static int[] lerTamanhos(String valor) {
+        List<Integer> tamanhos = new ArrayList<>();
+        for (String parte : valor.split(",")) {
+            String t = parte.trim().replace("_", "");
+            if (!t.isEmpty() && Integer.parseInt(t) > 0) tamanhos.add(Integer.parseInt(t));
+        }
+        int[] resultado = new int[tamanhos.size()];
+        for (int i = 0; i < resultado.length; i++) resultado[i] = tamanhos.get(i);
+        return resultado;
+    }
+}
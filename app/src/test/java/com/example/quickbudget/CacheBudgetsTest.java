@@ -0,0 +1,69 @@
+package com.example.quickbudget;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes ao cache de orçamentos (sem base de dados).
+ */
+public class CacheBudgetsTest {
+
+    @Test
+    public void intervaloCarregadoCresceDeFormaContinua() {
+        CacheBudgets cache = new CacheBudgets();
+        assertFalse(cache.cobre(10, 10));
+        assertArrayEquals(new long[]{10, 20}, cache.intervaloAlargado(10, 20));
+
+        cache.juntar(10, 20, linhas(5, 100, 10, 200), cache.geracao());
+        assertTrue(cache.cobre(10, 20));
+        assertFalse(cache.cobre(10, 21));
+        assertArrayEquals(new long[]{10, 40}, cache.intervaloAlargado(30, 40));
+        assertArrayEquals(new long[]{0, 20}, cache.intervaloAlargado(0, 15));
+    }
+
+    @Test
+    public void transportaOrcamentoDaUltimaSemanaDefinida() {
+        CacheBudgets cache = new CacheBudgets();
+        cache.juntar(10, 30, linhas(5, 100, 20, 300), cache.geracao());
+
+        assertNull(cache.exato(10));
+        assertEquals(100, cache.comTransporte(10)); // vem da linha anterior ao intervalo
+        assertEquals(300, (long) cache.exato(20));
+        assertEquals(300, cache.comTransporte(30));
+    }
+
+    @Test
+    public void carregamentoLidoAntesDeUmaEscritaEDescartado() {
+        CacheBudgets cache = new CacheBudgets();
+        long geracao = cache.geracao();
+        cache.guardar(10, 500); // escrita confirmada durante a leitura
+
+        cache.juntar(10, 20, linhas(10, 100), geracao);
+        assertFalse(cache.cobre(10, 20));
+        assertEquals(500, (long) cache.exato(10));
+
+        cache.juntar(10, 20, linhas(10, 500), cache.geracao());
+        assertTrue(cache.cobre(10, 20));
+    }
+
+    @Test
+    public void invalidarEsqueceTudo() {
+        CacheBudgets cache = new CacheBudgets();
+        cache.juntar(10, 20, linhas(10, 100), cache.geracao());
+        cache.invalidar();
+
+        assertFalse(cache.cobre(10, 10));
+        assertNull(cache.exato(10));
+    }
+
+    // Pares semana, valor
+    private static Map<Long, Long> linhas(long... pares) {
+        Map<Long, Long> m = new HashMap<>();
+        for (int i = 0; i < pares.length; i += 2) m.put(pares[i], pares[i + 1]);
+        return m;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.quickbudget;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes de ida e volta da cópia de segurança (JSON e CSV) com a base de dados real
+ * (SQLite do Robolectric).
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class CopiaSegurancaTest {
+
+    private static final int DESPESAS = 2_500; // mais do que um bloco de importação
+    private static final long SEMANA = DateUtils.getWeekStartMillis(GeradorDespesas.FIM);
+    private static final int INDICE_SEMANA = DateUtils.semanaDe(GeradorDespesas.FIM);
+
+    private Context context;
+    private DespesaDAO despesaDAO;
+    private BudgetDAO budgetDAO;
+    private CopiaSeguranca copia;
+
+    @Before
+    public void abrir() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase("quickbudget.db");
+        ligar();
+    }
+
+    @After
+    public void fechar() {
+        copia.fechar();
+        despesaDAO.fechar();
+        budgetDAO.fechar();
+    }
+
+    @Test
+    public void jsonRestauraTudoSemDuplicar() throws IOException {
+        verificarIdaEVolta(true);
+    }
+
+    @Test
+    public void csvRestauraTudoSemDuplicar() throws IOException {
+        verificarIdaEVolta(false);
+    }
+
+    @Test(expected = IOException.class)
+    public void ficheiroInvalidoFalha() throws IOException {
+        copia.importar(new ByteArrayInputStream("{\"formato\": \"outro\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void verificarIdaEVolta(boolean json) throws IOException {
+        List<Despesa> originais = new GeradorDespesas(7).gerar(DESPESAS);
+        despesaDAO.inserirLote(originais);
+        budgetDAO.importarLote(new long[]{SEMANA}, new long[]{12_345}, 1);
+        long total = despesaDAO.getTotalPorIntervalo(0, Long.MAX_VALUE);
+        long totalSemana = despesaDAO.getTotalSemana(INDICE_SEMANA);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (json) copia.exportarJson(out); else copia.exportarCsv(out);
+        byte[] ficheiro = out.toByteArray();
+
+        // Base de dados nova: tudo é restaurado, incluindo os totais semanais
+        fechar();
+        context.deleteDatabase("quickbudget.db");
+        ligar();
+        CopiaSeguranca.Resultado r = copia.importar(new ByteArrayInputStream(ficheiro));
+        assertEquals(DESPESAS, r.despesasLidas);
+        assertEquals(DESPESAS, r.despesasInseridas);
+        assertEquals(1, r.budgets);
+        assertEquals(total, despesaDAO.getTotalPorIntervalo(0, Long.MAX_VALUE));
+        assertEquals(totalSemana, despesaDAO.getTotalSemana(INDICE_SEMANA));
+        assertEquals(12_345, budgetDAO.getBudgetPorSemana(INDICE_SEMANA));
+
+        // Importar outra vez não duplica (mesmos uids)
+        r = copia.importar(new ByteArrayInputStream(ficheiro));
+        assertEquals(0, r.despesasInseridas);
+        assertEquals(DESPESAS, despesaDAO.listarTodas().size());
+    }
+
+    private void ligar() {
+        despesaDAO = new DespesaDAO(context);
+        budgetDAO = new BudgetDAO(context);
+        copia = new CopiaSeguranca(context, despesaDAO, budgetDAO);
+    }
+}
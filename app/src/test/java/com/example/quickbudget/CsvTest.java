@@ -0,0 +1,51 @@
+package com.example.quickbudget;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes à leitura e escrita de CSV.
+ */
+public class CsvTest {
+
+    @Test
+    public void escritaELeituraDevolvemOsMesmosCampos() throws IOException {
+        StringWriter out = new StringWriter();
+        Csv.Escritor escritor = new Csv.Escritor(out, ',');
+        escritor.campo("simples").campo("com, vírgula").campo("com \"aspas\"").campo(-1205).fimLinha();
+        escritor.campo("duas\nlinhas").campo((String) null).campo("").fimLinha();
+
+        Csv.Leitor leitor = new Csv.Leitor(new StringReader(out.toString()), ',');
+        List<String> campos = new ArrayList<>();
+        assertTrue(leitor.proximo(campos));
+        assertEquals(Arrays.asList("simples", "com, vírgula", "com \"aspas\"", "-1205"), campos);
+        assertTrue(leitor.proximo(campos));
+        assertEquals(Arrays.asList("duas\nlinhas", "", ""), campos);
+        assertEquals(3, leitor.getLinha());
+        assertFalse(leitor.proximo(campos));
+    }
+
+    @Test
+    public void aceitaFinsDeLinhaUnixESemFimNaUltima() throws IOException {
+        Csv.Leitor leitor = new Csv.Leitor(new StringReader("a;b\n\"c\";d"), ';');
+        List<String> campos = new ArrayList<>();
+        assertTrue(leitor.proximo(campos));
+        assertEquals(Arrays.asList("a", "b"), campos);
+        assertTrue(leitor.proximo(campos));
+        assertEquals(Arrays.asList("c", "d"), campos);
+        assertFalse(leitor.proximo(campos));
+    }
+
+    @Test(expected = IOException.class)
+    public void aspasPorFecharFalham() throws IOException {
+        new Csv.Leitor(new StringReader("\"aberto,x"), ',').proximo(new ArrayList<>());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.quickbudget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes aos índices de dia e semana (fuso com hora de verão).
+ */
+public class DateUtilsTest {
+
+    private static final ZoneId LISBOA = ZoneId.of("Europe/Lisbon");
+
+    private TimeZone original;
+
+    @Before
+    public void setUp() {
+        original = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(LISBOA));
+        DateUtils.fusoAlterado();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(original);
+        DateUtils.fusoAlterado();
+    }
+
+    @Test
+    public void semanaComMudancaDeHoraTemSeteDias() {
+        // 2024-03-31: os relógios avançam uma hora; a semana de 25 a 31 de março tem 167 horas
+        int semana = DateUtils.semanaDe(millis(2024, 3, 27, 12, 0));
+        assertEquals(millis(2024, 3, 25, 0, 0), DateUtils.inicioSemana(semana));
+        assertEquals(millis(2024, 4, 1, 0, 0), DateUtils.inicioSemana(semana + 1));
+
+        assertEquals(semana, DateUtils.semanaDe(millis(2024, 3, 31, 23, 59)));
+        assertEquals(semana + 1, DateUtils.semanaDe(millis(2024, 4, 1, 0, 0)));
+        assertEquals(semana, DateUtils.semanaDe(DateUtils.inicioSemana(semana + 1) - 1));
+    }
+
+    @Test
+    public void diaSegueAHoraLocalDosDoisLadosDaMudanca() {
+        long antes = millis(2024, 10, 26, 23, 30);
+        long depois = millis(2024, 10, 27, 23, 30); // depois do recuo da hora
+        assertEquals(DateUtils.diaDe(antes) + 1, DateUtils.diaDe(depois));
+        assertEquals(DateUtils.diaDe(depois), DateUtils.diaDe(millis(2024, 10, 27, 0, 0)));
+        assertEquals(DateUtils.diaDe(depois) + 1, DateUtils.diaDe(millis(2024, 10, 28, 0, 0)));
+    }
+
+    @Test
+    public void semanasAntesDe1970() {
+        assertEquals(0, DateUtils.semanaDoDia(-3));  // segunda-feira, 1969-12-29
+        assertEquals(-1, DateUtils.semanaDoDia(-4)); // domingo, 1969-12-28
+        assertEquals(-3, DateUtils.primeiroDia(0));
+        assertEquals(-5, DateUtils.semanaDoDia(DateUtils.primeiroDia(-5)));
+    }
+
+    @Test
+    public void mudancaDeFusoDescartaCache() {
+        long instante = millis(2024, 6, 10, 23, 30);
+        int dia = DateUtils.diaDe(instante);
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+        DateUtils.fusoAlterado();
+        assertEquals(dia + 1, DateUtils.diaDe(instante));
+    }
+
+    private static long millis(int ano, int mes, int dia, int hora, int minuto) {
+        return LocalDateTime.of(ano, mes, dia, hora, minuto).atZone(LISBOA).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.quickbudget;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes ao DespesaDAO com a base de dados real (SQLite do Robolectric):
+ * totais semanais mantidos a cada alteração, lotes e paginação do histórico.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class DespesaDAOTest {
+
+    private static final long DIA = 24L * 60 * 60 * 1000;
+
+    private Context context;
+    private DatabaseManager dbManager;
+    private SQLiteDatabase db;
+    private DespesaDAO despesaDAO;
+
+    @Before
+    public void abrir() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase("quickbudget.db");
+        dbManager = DatabaseManager.getInstance(context);
+        db = dbManager.abrir();
+        despesaDAO = new DespesaDAO(context);
+    }
+
+    @After
+    public void fechar() {
+        despesaDAO.fechar();
+        dbManager.libertar();
+    }
+
+    // ======== TOTAIS SEMANAIS ========
+
+    @Test
+    public void totaisIncrementaisIguaisAReconstrucao() {
+        for (Despesa d : new GeradorDespesas(3).gerar(300)) despesaDAO.inserir(d);
+        List<Despesa> despesas = despesaDAO.listarPagina(null, 300);
+
+        for (int i = 0; i < despesas.size(); i += 7) {
+            Despesa d = despesas.get(i);
+            switch (i % 3) {
+                case 0: d.setTimestamp(d.getTimestamp() - 7 * DIA); break; // outra semana
+                case 1: d.setCategoria("Categoria nova"); break;            // outra categoria
+                default: d.setValorCentimos(d.getValorCentimos() + 999);
+            }
+            despesaDAO.atualizar(d);
+        }
+        for (int i = 3; i < despesas.size(); i += 11) despesaDAO.eliminar(despesas.get(i).getId());
+
+        Map<String, String> incrementais = totais();
+        despesaDAO.reconstruirTotaisSemanais();
+        assertEquals(totais(), incrementais);
+    }
+
+    @Test
+    public void linhaSemDespesasERemovida() {
+        long instante = GeradorDespesas.FIM;
+        despesaDAO.inserir(new Despesa("Farmácia", "Saúde", 1_000, instante, "Nenhuma"));
+        despesaDAO.inserir(new Despesa("Café", "Alimentação", 110, instante, "Nenhuma"));
+        Despesa farmacia = despesaDAO.listarPagina(null, 2).get(1);
+        assertEquals(2, totais().size());
+
+        // Mudar de categoria esvazia a linha de Saúde; eliminar esvazia a de Lazer
+        farmacia.setCategoria("Lazer");
+        despesaDAO.atualizar(farmacia);
+        assertFalse(totais().containsKey(chave(instante, "Saúde")));
+        assertEquals("1000/1", totais().get(chave(instante, "Lazer")));
+
+        despesaDAO.eliminar(farmacia.getId());
+        assertEquals(1, totais().size());
+        assertEquals("110/1", totais().get(chave(instante, "Alimentação")));
+    }
+
+    // ======== PAGINAÇÃO ========
+
+    @Test
+    public void paginasComTimestampsRepetidosNaoSaltamNemRepetemDespesas() {
+        long t = GeradorDespesas.FIM;
+        despesaDAO.inserir(new Despesa("Depois", "Lazer", 100, t + 1, "Nenhuma"));
+        for (int i = 0; i < 25; i++) despesaDAO.inserir(new Despesa("Igual " + i, "Lazer", 100, t, "Nenhuma"));
+        despesaDAO.inserir(new Despesa("Antes", "Lazer", 100, t - 1, "Nenhuma"));
+
+        // Páginas de 10: as fronteiras caem no meio das 25 despesas com o mesmo timestamp
+        List<Despesa> todas = new ArrayList<>();
+        Set<Integer> ids = new HashSet<>();
+        DespesaDAO.ChavePagina chave = null;
+        List<Despesa> pagina;
+        do {
+            pagina = despesaDAO.listarPagina(chave, 10);
+            for (Despesa d : pagina) assertTrue("repetida: " + d.getId(), ids.add(d.getId()));
+            todas.addAll(pagina);
+            if (!pagina.isEmpty()) chave = DespesaDAO.ChavePagina.depoisDe(pagina.get(pagina.size() - 1));
+        } while (pagina.size() == 10);
+
+        assertEquals(27, todas.size());
+        assertEquals("Depois", todas.get(0).getDescricao());
+        assertEquals("Antes", todas.get(26).getDescricao());
+        for (int i = 1; i < todas.size(); i++) {
+            // A ordem usada pelo histórico em memória é a mesma da consulta
+            assertTrue(DespesaDAO.ChavePagina.depoisDe(todas.get(i - 1)).antesDe(todas.get(i)));
+            assertFalse(DespesaDAO.ChavePagina.depoisDe(todas.get(i)).antesDe(todas.get(i - 1)));
+        }
+    }
+
+    // ======== LOTES ========
+
+    @Test
+    public void lotesIguaisAOperacoesIndividuais() {
+        Map<String, String> individuais = alterarHistorico(false);
+        fechar();
+        abrir();
+        Map<String, String> emLote = alterarHistorico(true);
+
+        assertEquals(individuais, emLote);
+        assertTrue(emLote.keySet().stream().anyMatch(k -> k.startsWith("agenda ")));
+    }
+
+    @Test
+    public void falhaNoLoteDesfazOLoteInteiro() {
+        List<Despesa> iniciais = new GeradorDespesas(5).gerar(20);
+        iniciais.get(0).setRecorrencia(DBHelper.RECORRENCIA_MENSAL);
+        despesaDAO.inserirLote(iniciais);
+        Map<String, String> antes = estado();
+
+        // A terceira despesa não tem descrição: bindString falha a meio do lote
+        List<Despesa> lote = new GeradorDespesas(6).gerar(3);
+        lote.get(0).setRecorrencia(DBHelper.RECORRENCIA_SEMANAL);
+        lote.get(2).setDescricao(null);
+        try {
+            despesaDAO.inserirLote(lote);
+            fail("o lote devia falhar");
+        } catch (IllegalArgumentException esperado) {
+            // as duas primeiras despesas não podem ter ficado gravadas
+        }
+        assertEquals(antes, estado());
+
+        List<Despesa> alteradas = despesaDAO.listarPagina(null, 3);
+        for (Despesa d : alteradas) {
+            d.setValorCentimos(d.getValorCentimos() + 500);
+            d.setRecorrencia(DBHelper.RECORRENCIA_SEMANAL);
+        }
+        alteradas.get(2).setDescricao(null);
+        try {
+            despesaDAO.atualizarLote(alteradas);
+            fail("o lote devia falhar");
+        } catch (IllegalArgumentException esperado) {
+            // as duas primeiras alterações não podem ter ficado gravadas
+        }
+        assertEquals(antes, estado());
+    }
+
+    // Insere, altera e elimina o mesmo histórico, uma despesa de cada vez ou em lote
+    private Map<String, String> alterarHistorico(boolean emLote) {
+        List<Despesa> despesas = new GeradorDespesas(11).gerar(200);
+        for (int i = 0; i < despesas.size(); i += 10) {
+            despesas.get(i).setRecorrencia(i % 20 == 0 ? DBHelper.RECORRENCIA_SEMANAL : DBHelper.RECORRENCIA_MENSAL);
+        }
+        if (emLote) despesaDAO.inserirLote(despesas);
+        else for (Despesa d : despesas) despesaDAO.inserir(d);
+
+        // A base de dados começa vazia nas duas passagens: os ids coincidem
+        List<Despesa> gravadas = despesaDAO.listarPagina(null, despesas.size());
+        List<Despesa> alteradas = new ArrayList<>();
+        for (int i = 0; i < gravadas.size(); i += 4) {
+            Despesa d = gravadas.get(i);
+            switch (i % 3) {
+                case 0: d.setTimestamp(d.getTimestamp() - 7 * DIA); break;
+                case 1: d.setCategoria("Categoria nova"); break;
+                default: d.setValorCentimos(d.getValorCentimos() + 999);
+            }
+            // Liga, desliga e troca recorrências (Semanal passa a Mensal)
+            d.setRecorrencia(DBHelper.eRecorrente(d.getRecorrencia()) && i % 8 == 0 ? null : DBHelper.RECORRENCIA_MENSAL);
+            alteradas.add(d);
+        }
+        if (emLote) despesaDAO.atualizarLote(alteradas);
+        else for (Despesa d : alteradas) despesaDAO.atualizar(d);
+
+        List<Integer> eliminadas = new ArrayList<>();
+        for (int i = 1; i < gravadas.size(); i += 9) eliminadas.add(gravadas.get(i).getId());
+        if (emLote) despesaDAO.eliminarLote(eliminadas);
+        else for (int id : eliminadas) despesaDAO.eliminar(id);
+
+        Map<String, String> estado = estado();
+        despesaDAO.reconstruirTotaisSemanais();
+        assertEquals(estado, estado());
+        return estado;
+    }
+
+    // Totais semanais, agenda de recorrências e número de despesas
+    private Map<String, String> estado() {
+        Map<String, String> estado = totais();
+        try (Cursor c = db.rawQuery("SELECT " + DBHelper.COLUMN_REC_DESPESA_ID + ", " +
+                DBHelper.COLUMN_REC_RECORRENCIA + ", " + DBHelper.COLUMN_REC_PROXIMA +
+                " FROM " + DBHelper.TABLE_RECORRENCIAS, null)) {
+            while (c.moveToNext()) estado.put("agenda " + c.getInt(0), c.getString(1) + "/" + c.getLong(2));
+        }
+        try (Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + DBHelper.TABLE_DESPESAS, null)) {
+            c.moveToFirst();
+            estado.put("despesas", String.valueOf(c.getInt(0)));
+        }
+        return estado;
+    }
+
+    // Linhas de weekly_category_totals: "semana/categoria" → "total/quantidade"
+    private Map<String, String> totais() {
+        Map<String, String> totais = new TreeMap<>();
+        try (Cursor c = db.rawQuery("SELECT " + DBHelper.COLUMN_TOTAL_SEMANA_INDICE + ", " +
+                DBHelper.COLUMN_TOTAL_CATEGORIA_ID + ", " + DBHelper.COLUMN_TOTAL_CENTIMOS + ", " +
+                DBHelper.COLUMN_TOTAL_QUANTIDADE + " FROM " + DBHelper.TABLE_TOTAIS_SEMANAIS, null)) {
+            while (c.moveToNext()) totais.put(c.getInt(0) + "/" + c.getInt(1), c.getLong(2) + "/" + c.getInt(3));
+        }
+        return totais;
+    }
+
+    private String chave(long instante, String categoria) {
+        return DateUtils.semanaDe(instante) + "/" + despesaDAO.getCategorias().idDe(categoria);
+    }
+}
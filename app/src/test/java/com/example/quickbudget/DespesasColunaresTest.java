@@ -0,0 +1,51 @@
+package com.example.quickbudget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes às agregações do DespesasColunares (sem base de dados).
+ */
+public class DespesasColunaresTest {
+
+    // Categorias: 1 = Alimentação, 2 = Transporte
+    private final DespesasColunares despesas = new DespesasColunares(
+            new int[]{1, 2, 3, 4, 5},
+            new long[]{10, 20, 20, 35, 50},
+            new long[]{100, 200, 400, 800, 1600},
+            new int[]{1, 2, 1, 1, 2},
+            new Categorias(new String[]{null, "Alimentação", "Transporte"}, new int[3]));
+
+    @Test
+    public void primeiraLinhaDesdeUsaLimiteInferior() {
+        assertEquals(0, despesas.primeiraLinhaDesde(0));
+        assertEquals(1, despesas.primeiraLinhaDesde(20));
+        assertEquals(3, despesas.primeiraLinhaDesde(21));
+        assertEquals(5, despesas.primeiraLinhaDesde(51));
+    }
+
+    @Test
+    public void somaPorIntervaloExcluiFim() {
+        assertEquals(3100, despesas.soma());
+        assertEquals(1400, despesas.soma(20, 50));
+        assertEquals(1200, despesas.somaCategoria(despesas.categoriaId("Alimentação"), 20, 50));
+    }
+
+    @Test
+    public void somarPorCategoriaEPorIntervalos() {
+        long[] porCategoria = new long[despesas.numCategorias()];
+        despesas.somarPorCategoria(0, 100, porCategoria);
+        assertArrayEquals(new long[]{0, 1300, 1800}, porCategoria);
+
+        long[] porIntervalo = new long[3];
+        despesas.somarPorIntervalos(new long[]{15, 30, 40, 50}, porIntervalo);
+        assertArrayEquals(new long[]{600, 800, 0}, porIntervalo);
+    }
+
+    @Test
+    public void filtros() {
+        assertEquals(2, despesas.contar((t, v, c) -> c == 2));
+        assertEquals(2400, despesas.somaSe((t, v, c) -> v > 500));
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.quickbudget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes ao diário de registo rápido (ficheiro temporário, sem base de dados).
+ */
+public class DiarioDespesasTest {
+
+    private File ficheiro;
+    private DiarioDespesas diario;
+
+    @Before
+    public void setUp() throws IOException {
+        ficheiro = File.createTempFile("diario", ".bin");
+        diario = new DiarioDespesas(ficheiro);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        diario.fechar();
+        ficheiro.delete();
+        segmento().delete();
+    }
+
+    @Test
+    public void separaAsDespesasPelaOrdemEmQueEntraram() throws IOException {
+        diario.acrescentar(despesa("Café ☕", 110, "Semanal"));
+        diario.acrescentar(despesa("Pão", 220, null));
+
+        List<Despesa> lidas = diario.separar();
+        assertEquals(2, lidas.size());
+        assertEquals("Café ☕", lidas.get(0).getDescricao());
+        assertEquals("Semanal", lidas.get(0).getRecorrencia());
+        assertEquals(110, lidas.get(0).getValorCentimos());
+        assertNull(lidas.get(1).getRecorrencia());
+        assertEquals(32, lidas.get(0).getUid().length());
+        assertNotEquals(lidas.get(0).getUid(), lidas.get(1).getUid());
+    }
+
+    @Test
+    public void acrescentarDuranteAPassagemFicaParaAPassagemSeguinte() throws IOException {
+        diario.acrescentar(despesa("Café", 110, null));
+        assertEquals(1, diario.separar().size());
+        assertEquals(0, ficheiro.length()); // o diário novo está vazio
+        diario.acrescentar(despesa("Pão", 220, null));
+
+        diario.descartar();
+        List<Despesa> lidas = diario.separar();
+        assertEquals(1, lidas.size());
+        assertEquals("Pão", lidas.get(0).getDescricao());
+
+        diario.descartar();
+        assertTrue(diario.separar().isEmpty());
+        assertFalse(segmento().exists());
+    }
+
+    @Test
+    public void segmentoDeUmaPassagemInterrompidaPassaPrimeiro() throws IOException {
+        diario.acrescentar(despesa("Café", 110, null));
+        diario.separar(); // o processo morre antes de descartar()
+        diario.acrescentar(despesa("Pão", 220, null));
+        diario.fechar();
+
+        DiarioDespesas reaberto = new DiarioDespesas(ficheiro);
+        reaberto.abrir();
+        assertEquals("Café", reaberto.separar().get(0).getDescricao());
+        assertEquals("Café", reaberto.separar().get(0).getDescricao()); // até ser descartado
+        reaberto.descartar();
+        assertEquals("Pão", reaberto.separar().get(0).getDescricao());
+        reaberto.descartar();
+        reaberto.fechar();
+    }
+
+    @Test
+    public void registoCortadoAMeioEDescartado() throws IOException {
+        diario.acrescentar(despesa("Café", 110, null));
+        long primeiro = ficheiro.length();
+        diario.acrescentar(despesa("Pão", 220, null));
+        long tamanho = ficheiro.length();
+        diario.fechar();
+        try (RandomAccessFile f = new RandomAccessFile(ficheiro, "rw")) {
+            f.setLength(tamanho - 3); // o processo morreu a meio da segunda escrita
+        }
+
+        diario.abrir();
+        assertEquals(primeiro, ficheiro.length());
+        assertEquals(1, diario.separar().size());
+    }
+
+    @Test
+    public void acrescentarDepoisDeUmaCaudaCortadaNaoPerdeORegisto() throws IOException {
+        diario.acrescentar(despesa("Café", 110, null));
+        diario.acrescentar(despesa("Pão", 220, null));
+        long tamanho = ficheiro.length();
+        diario.fechar();
+        try (RandomAccessFile f = new RandomAccessFile(ficheiro, "rw")) {
+            f.setLength(tamanho - 3);
+        }
+
+        // Sem abrir() nem separar() antes: o registo novo entra logo a seguir ao último válido
+        DiarioDespesas reaberto = new DiarioDespesas(ficheiro);
+        reaberto.acrescentar(despesa("Jantar", 900, null));
+        reaberto.acrescentar(despesa("Cinema", 700, null));
+        List<Despesa> lidas = reaberto.separar();
+        reaberto.descartar();
+        reaberto.fechar();
+
+        assertEquals(3, lidas.size());
+        assertEquals("Café", lidas.get(0).getDescricao());
+        assertEquals("Jantar", lidas.get(1).getDescricao());
+        assertEquals("Cinema", lidas.get(2).getDescricao());
+    }
+
+    @Test
+    public void crcErradoTerminaALeitura() throws IOException {
+        diario.acrescentar(despesa("Café", 110, null));
+        long primeiro = ficheiro.length();
+        diario.acrescentar(despesa("Pão", 220, null));
+        diario.fechar();
+        try (RandomAccessFile f = new RandomAccessFile(ficheiro, "rw")) {
+            f.seek(primeiro + 12); // dentro dos dados do segundo registo
+            f.write(0x7F);
+        }
+
+        assertEquals(1, diario.separar().size());
+    }
+
+    private File segmento() {
+        return new File(ficheiro.getPath() + ".a_passar");
+    }
+
+    private static Despesa despesa(String descricao, long valor, String recorrencia) {
+        return new Despesa(descricao, "Alimentação", valor, 1700000000000L, recorrencia);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.quickbudget;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes à conversão de valores monetários de e para cêntimos.
+ */
+public class DinheiroTest {
+
+    @Test
+    public void parseAceitaVirgulaEPonto() {
+        assertEquals(1250, Dinheiro.parse("12,5"));
+        assertEquals(1250, Dinheiro.parse(" 12.50 "));
+        assertEquals(300, Dinheiro.parse("3"));
+        assertEquals(1, Dinheiro.parse("0.005"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseRejeitaTextoInvalido() {
+        Dinheiro.parse("12,3,4");
+    }
+
+    @Test
+    public void somaDeCentimosEExata() {
+        long total = 0;
+        for (int i = 0; i < 10; i++) total += Dinheiro.parse("0.10");
+        assertEquals(100, total);
+    }
+
+    @Test
+    public void formatarUsaDuasCasas() {
+        Locale anterior = Locale.getDefault();
+        Locale.setDefault(Locale.UK);
+        try {
+            assertEquals("€12.05", Dinheiro.formatar(1205));
+            assertEquals("-€0.50", Dinheiro.formatar(-50));
+            assertEquals("12.05", Dinheiro.paraEdicao(1205));
+        } finally {
+            Locale.setDefault(anterior);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.quickbudget;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes à formatação sem alocações usada nas listas.
+ */
+public class FormatadorTest {
+
+    private final Formatador formatador = new Formatador(Locale.UK, TimeZone.getTimeZone("Europe/Lisbon"));
+
+    @Test
+    public void moedaIgualADinheiroFormatar() {
+        Locale anterior = Locale.getDefault();
+        Locale.setDefault(Locale.UK);
+        try {
+            char[] buffer = new char[Formatador.TAMANHO_MOEDA];
+            for (long centimos : new long[]{0, 5, 1205, -50, 100_000_00, Long.MAX_VALUE}) {
+                int fim = formatador.moeda(centimos, buffer, 0);
+                assertEquals(Dinheiro.formatar(centimos), new String(buffer, 0, fim));
+            }
+        } finally {
+            Locale.setDefault(anterior);
+        }
+    }
+
+    @Test
+    public void diaReutilizaORotuloDoMesmoDia() {
+        long manha = 1748851200000L;               // 2 jun 2025, 09:00 em Lisboa
+        long noite = manha + 14L * 60 * 60 * 1000; // 2 jun 2025, 23:00 em Lisboa
+
+        String rotulo = formatador.dia(manha);
+        assertEquals("02 Jun 2025", rotulo);
+        assertSame(rotulo, formatador.dia(noite));
+        assertEquals("03 Jun 2025", formatador.dia(noite + 2L * 60 * 60 * 1000));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.quickbudget;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * GeradorDespesas
+ * ----------------
+ * Gera históricos de despesas sintéticos e determinísticos para os benchmarks:
+ * a mesma semente e a mesma quantidade produzem sempre as mesmas despesas.
+ *
+ * As despesas ficam distribuídas por ordem cronológica até ao instante {@link #FIM},
+ * com uma média de {@link #DESPESAS_POR_DIA} por dia e uma pequena fração recorrente.
+ */
+final class GeradorDespesas {
+
+    // Fim fixo do histórico (segunda-feira, 2 de junho de 2025, 12:00 UTC)
+    static final long FIM = 1748865600000L;
+    static final int DESPESAS_POR_DIA = 10;
+
+    private static final long DIA = 24L * 60 * 60 * 1000;
+    private static final double FRACAO_RECORRENTES = 0.002;
+
+    private static final String[] CATEGORIAS = {
+            "Alimentação", "Transporte", "Lazer", "Saúde", "Casa",
+            "Educação", "Supermercado", "Subscrição", "Outro"
+    };
+    private static final String[] DESCRICOES = {
+            "Café", "Almoço", "Jantar", "Autocarro", "Combustível", "Cinema", "Farmácia",
+            "Renda", "Eletricidade", "Livros", "Compras", "Streaming", "Ginásio", "Diversos"
+    };
+
+    private final long semente;
+
+    GeradorDespesas(long semente) {
+        this.semente = semente;
+    }
+
+    long getSemente() {
+        return semente;
+    }
+
+    // Início do histórico gerado para a quantidade indicada
+    static long inicio(int quantidade) {
+        return FIM - dias(quantidade) * DIA;
+    }
+
+    private static long dias(int quantidade) {
+        return Math.max(1, quantidade / DESPESAS_POR_DIA);
+    }
+
+    /**
+     * Gera {@code quantidade} despesas, da mais antiga para a mais recente.
+     */
+    List<Despesa> gerar(int quantidade) {
+        Random random = new Random(semente);
+        List<Despesa> despesas = new ArrayList<>(quantidade);
+
+        long inicio = inicio(quantidade);
+        long passoMedio = (FIM - inicio) / quantidade;
+        long timestamp = inicio;
+
+        for (int i = 0; i < quantidade; i++) {
+            timestamp += 1 + (long) (random.nextDouble() * 2 * passoMedio);
+            if (timestamp > FIM) timestamp = FIM;
+
+            String categoria = CATEGORIAS[random.nextInt(CATEGORIAS.length)];
+            String descricao = DESCRICOES[random.nextInt(DESCRICOES.length)];
+            long valor = 50 + (long) (random.nextDouble() * random.nextDouble() * 15_000); // cêntimos
+
+            String recorrencia = "Nenhuma";
+            if (random.nextDouble() < FRACAO_RECORRENTES) {
+                recorrencia = random.nextBoolean() ? DBHelper.RECORRENCIA_SEMANAL : DBHelper.RECORRENCIA_MENSAL;
+            }
+
+            despesas.add(new Despesa(descricao, categoria, valor, timestamp, recorrencia));
+        }
+        return despesas;
+    }
+}
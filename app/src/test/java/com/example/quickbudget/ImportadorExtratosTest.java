@@ -0,0 +1,106 @@
+package com.example.quickbudget;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes à análise de extratos bancários (sem base de dados).
+ */
+public class ImportadorExtratosTest {
+
+    @Test
+    public void converteValoresEmVariosFormatos() {
+        assertEquals(123456, ImportadorExtratos.centimos("1.234,56"));
+        assertEquals(123456, ImportadorExtratos.centimos("1,234.56"));
+        assertEquals(-1230, ImportadorExtratos.centimos("-12,3"));
+        assertEquals(-500, ImportadorExtratos.centimos("\u22125 €"));
+        assertEquals(-1099, ImportadorExtratos.centimos("10,99-"));
+        assertEquals(120000, ImportadorExtratos.centimos("1.200"));
+        assertEquals(4200, ImportadorExtratos.centimos("EUR 42"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void valorSemNumeroFalha() {
+        ImportadorExtratos.centimos("n/d");
+    }
+
+    @Test
+    public void ignoraLinhasAntesDoCabecalhoECreditos() throws IOException {
+        String extrato = "\uFEFFConta;PT50 0000 0000\n" +
+                "Período;01/03/2024 a 31/03/2024\n" +
+                "\n" +
+                "Data Mov.;Data Valor;Descrição;Montante;Saldo\n" +
+                "02/03/2024;02/03/2024;COMPRA CONTINENTE LISBOA;-45,30;954,70\n" +
+                "03/03/2024;03/03/2024;TRF RECEBIDA;1.000,00;1.954,70\n" +
+                "xx/03/2024;04/03/2024;LINHA ESTRAGADA;-1,00;1.953,70\n" +
+                "05/03/2024;05/03/2024;\"NETFLIX; SUBSCRIÇÃO\";-7,99;1.945,71\n";
+
+        ImportadorExtratos.Analise a = analisar(extrato);
+        assertEquals(4, a.movimentos);
+        assertEquals(1, a.creditos);
+        assertEquals(1, a.invalidas);
+        assertEquals(2, a.despesas.size());
+        assertEquals("COMPRA CONTINENTE LISBOA", a.despesas.get(0).getDescricao());
+        assertEquals("Supermercado", a.despesas.get(0).getCategoria());
+        assertEquals(4530, a.despesas.get(0).getValorCentimos());
+        assertEquals("Subscrição", a.despesas.get(1).getCategoria());
+    }
+
+    @Test
+    public void colunasDeDebitoECreditoSeparadas() throws IOException {
+        String extrato = "Date,Description,Debit,Credit\n" +
+                "2024-03-02,Uber trip,\"1,234.50\",\n" +
+                "2024-03-03,Salary,,2500.00\n";
+
+        ImportadorExtratos.Analise a = analisar(extrato);
+        assertEquals(1, a.despesas.size());
+        assertEquals(123450, a.despesas.get(0).getValorCentimos());
+        assertEquals("Transporte", a.despesas.get(0).getCategoria());
+        assertEquals(1, a.creditos);
+    }
+
+    @Test
+    public void movimentosIguaisNoMesmoDiaTemHashesDiferentesMasEstaveis() throws IOException {
+        String extrato = "Data;Descrição;Valor\n" +
+                "01/03/2024;Café  Central;-0,80\n" +
+                "01/03/2024;CAFÉ CENTRAL;-0,80\n" +
+                "02/03/2024;Café Central;-0,80\n";
+
+        ImportadorExtratos.Analise a = analisar(extrato);
+        assertEquals(3, a.hashes.size());
+        assertEquals(a.hashes.get(0) + "#2", a.hashes.get(1));
+        assertNotEquals(a.hashes.get(0), a.hashes.get(2));
+
+        // O mesmo extrato, analisado outra vez (e em paralelo), dá os mesmos hashes
+        assertEquals(a.hashes, new ImportadorExtratos(4).analisar(bytes(extrato)).hashes);
+    }
+
+    @Test
+    public void blocosParalelosMantemAOrdemDoFicheiro() throws IOException {
+        int linhas = ImportadorExtratos.TAMANHO_BLOCO * 5 + 7;
+        StringBuilder extrato = new StringBuilder("Data;Descrição;Valor\n");
+        for (int i = 1; i <= linhas; i++) extrato.append("01/03/2024;Compra ").append(i).append(";-").append(i).append(",00\n");
+
+        ImportadorExtratos.Analise a = new ImportadorExtratos(3).analisar(bytes(extrato.toString()));
+        assertEquals(linhas, a.despesas.size());
+        for (int i = 0; i < linhas; i++) assertEquals((i + 1) * 100L, a.despesas.get(i).getValorCentimos());
+    }
+
+    @Test(expected = IOException.class)
+    public void ficheiroSemCabecalhoFalha() throws IOException {
+        analisar("isto;não;é\num;extrato;bancário\n");
+    }
+
+    private static ImportadorExtratos.Analise analisar(String extrato) throws IOException {
+        return new ImportadorExtratos(1).analisar(bytes(extrato));
+    }
+
+    private static ByteArrayInputStream bytes(String texto) {
+        return new ByteArrayInputStream(texto.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.quickbudget;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes à decisão de correr (ou saltar) a manutenção semanal.
+ */
+public class ManutencaoWorkerTest {
+
+    private static final long DIA = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void primeiraExecucaoCorreSempre() {
+        assertTrue(ManutencaoWorker.precisaManutencao(-1, 0, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void saltaNaMesmaSemanaECorreNaSeguinte() {
+        long execucao = dia(2024, Calendar.MARCH, 12); // terça
+        int semana = DateUtils.semanaDe(execucao);
+
+        assertFalse(ManutencaoWorker.precisaManutencao(semana, execucao, execucao + DIA));
+        assertTrue(ManutencaoWorker.precisaManutencao(semana, execucao, DateUtils.getNextWeekStartMillis(execucao)));
+    }
+
+    @Test
+    public void correNoInicioDoMesMesmoAMeioDaSemana() {
+        long execucao = dia(2024, Calendar.APRIL, 29); // segunda
+        int semana = DateUtils.semanaDe(execucao);
+
+        assertFalse(ManutencaoWorker.precisaManutencao(semana, execucao, execucao + DIA));
+        assertTrue(ManutencaoWorker.precisaManutencao(semana, execucao, dia(2024, Calendar.MAY, 1)));
+    }
+
+    private static long dia(int ano, int mes, int dia) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(ano, mes, dia, 10, 0);
+        return cal.getTimeInMillis();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.quickbudget;
+
+import java.util.Arrays;
+
+/**
+ * MedidorDesempenho
+ * ------------------
+ * Mede o tempo de uma operação: executa algumas iterações de aquecimento (para o JIT)
+ * e depois um número fixo de iterações cronometradas, uma a uma.
+ * A preparação de cada iteração (ex: repor dados) não entra na medição.
+ */
+final class MedidorDesempenho {
+
+    interface Operacao {
+        void executar();
+    }
+
+    /**
+     * Resultado de um benchmark, serializado tal como está para o relatório JSON.
+     * Todos os tempos estão em nanossegundos por operação.
+     */
+    static final class Resultado {
+        final String operacao;
+        final int linhas;
+        final int iteracoes;
+        final long mediaNs;
+        final long p50Ns;
+        final long p95Ns;
+        final long minNs;
+        final long maxNs;
+
+        Resultado(String operacao, int linhas, long[] tempos) {
+            long[] ordenados = tempos.clone();
+            Arrays.sort(ordenados);
+            long soma = 0;
+            for (long t : ordenados) soma += t;
+
+            this.operacao = operacao;
+            this.linhas = linhas;
+            this.iteracoes = ordenados.length;
+            this.mediaNs = soma / ordenados.length;
+            this.p50Ns = percentil(ordenados, 0.50);
+            this.p95Ns = percentil(ordenados, 0.95);
+            this.minNs = ordenados[0];
+            this.maxNs = ordenados[ordenados.length - 1];
+        }
+
+        private static long percentil(long[] ordenados, double p) {
+            int i = (int) Math.ceil(p * ordenados.length) - 1;
+            return ordenados[Math.max(0, Math.min(i, ordenados.length - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %9d linhas  média %10.3f ms  p95 %10.3f ms",
+                    operacao, linhas, mediaNs / 1e6, p95Ns / 1e6);
+        }
+    }
+
+    private final int aquecimento;
+    private final int iteracoes;
+
+    MedidorDesempenho(int aquecimento, int iteracoes) {
+        this.aquecimento = aquecimento;
+        this.iteracoes = iteracoes;
+    }
+
+    Resultado medir(String nome, int linhas, Operacao operacao) {
+        return medir(nome, linhas, null, operacao);
+    }
+
+    /**
+     * @param preparar executado antes de cada iteração, fora da medição (pode ser null)
+     */
+    Resultado medir(String nome, int linhas, Operacao preparar, Operacao operacao) {
+        for (int i = 0; i < aquecimento; i++) {
+            if (preparar != null) preparar.executar();
+            operacao.executar();
+        }
+
+        long[] tempos = new long[iteracoes];
+        for (int i = 0; i < iteracoes; i++) {
+            if (preparar != null) preparar.executar();
+            long inicio = System.nanoTime();
+            operacao.executar();
+            tempos[i] = System.nanoTime() - inicio;
+        }
+        return new Resultado(nome, linhas, tempos);
+    }
+}
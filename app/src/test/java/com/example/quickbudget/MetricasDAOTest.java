@@ -0,0 +1,69 @@
+package com.example.quickbudget;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes aos histogramas e ao registo de consultas lentas das métricas dos DAOs.
+ */
+public class MetricasDAOTest {
+
+    @After
+    public void limpar() {
+        MetricasDAO.ativar(false);
+        MetricasDAO.limpar();
+    }
+
+    @Test
+    public void desativadasNaoRegistamNada() {
+        MetricasDAO.ativar(false);
+        long t0 = MetricasDAO.inicio();
+        assertEquals(0, t0);
+        MetricasDAO.registar("Teste.op", t0, 1, "SELECT 1", null);
+        assertTrue(MetricasDAO.operacoes().isEmpty());
+    }
+
+    @Test
+    public void baldesCobremOValorComErroLimitado() {
+        for (long us = 1; us < 10_000_000; us = us * 3 / 2 + 1) {
+            long ns = us * 1000;
+            int balde = MetricasDAO.balde(ns);
+            long limite = MetricasDAO.limiteSuperior(balde);
+            assertTrue(ns <= limite);
+            assertTrue("erro demasiado grande para " + us + " µs", limite <= ns * 1.125 + 1000);
+            if (balde > 0) assertTrue(ns > MetricasDAO.limiteSuperior(balde - 1));
+        }
+    }
+
+    @Test
+    public void percentisSeguemADistribuicao() {
+        MetricasDAO.Operacao op = new MetricasDAO.Operacao("Teste.op");
+        for (int i = 1; i <= 100; i++) op.registar(i * 1_000_000L, 1); // 1..100 ms
+
+        assertEquals(100, op.chamadas.sum());
+        assertEquals(50_000_000L, op.percentil(0.50), 50_000_000L * 0.125);
+        assertEquals(95_000_000L, op.percentil(0.95), 95_000_000L * 0.125);
+        assertEquals(100_000_000L, op.percentil(0.99), 100_000_000L * 0.125);
+        assertTrue(op.percentil(0.99) <= op.maximo.get());
+    }
+
+    @Test
+    public void consultasLentasFicamNumRegistoLimitado() {
+        MetricasDAO.ativar(true);
+        long lenta = System.nanoTime() - 2 * MetricasDAO.LIMITE_LENTA_NS;
+        for (int i = 0; i < MetricasDAO.MAX_LENTAS + 10; i++) {
+            MetricasDAO.registar("Teste.lenta", lenta, i, "SELECT ?", new String[]{String.valueOf(i)});
+        }
+        MetricasDAO.registar("Teste.rapida", MetricasDAO.inicio(), 1, "SELECT 1", null);
+
+        List<MetricasDAO.ConsultaLenta> lentas = MetricasDAO.consultasLentas();
+        assertEquals(MetricasDAO.MAX_LENTAS, lentas.size());
+        assertEquals(10, lentas.get(0).linhas); // as mais antigas foram substituídas
+        assertEquals("[" + (MetricasDAO.MAX_LENTAS + 9) + "]", lentas.get(lentas.size() - 1).args);
+        assertEquals(2, MetricasDAO.operacoes().size());
+    }
+}
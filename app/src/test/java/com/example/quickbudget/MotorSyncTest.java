@@ -0,0 +1,161 @@
+package com.example.quickbudget;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testes ao MotorSync com a base de dados real (SQLite do Robolectric)
+ * e um remoto em memória.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class MotorSyncTest {
+
+    private static final long SEMANA = DateUtils.getWeekStartMillis(GeradorDespesas.FIM);
+    private static final int INDICE_SEMANA = DateUtils.semanaDe(GeradorDespesas.FIM);
+
+    private Context context;
+    private DatabaseManager dbManager;
+    private SQLiteDatabase db;
+    private DespesaDAO despesaDAO;
+    private BudgetDAO budgetDAO;
+    private RemotoSyncEmMemoria remoto;
+    private MotorSync motor;
+
+    @Before
+    public void abrir() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase("quickbudget.db");
+        dbManager = DatabaseManager.getInstance(context);
+        db = dbManager.abrir();
+        despesaDAO = new DespesaDAO(context);
+        budgetDAO = new BudgetDAO(context);
+        remoto = new RemotoSyncEmMemoria();
+        motor = new MotorSync(context, despesaDAO, budgetDAO, remoto);
+    }
+
+    @After
+    public void fechar() {
+        motor.fechar();
+        despesaDAO.fechar();
+        budgetDAO.fechar();
+        dbManager.libertar();
+    }
+
+    @Test
+    public void enviaSoAsAlteracoesDesdeAUltimaSincronizacao() throws IOException {
+        despesaDAO.inserirLote(new GeradorDespesas(1).gerar(1_200));
+        assertEquals(1_200, motor.sincronizar().enviados);
+        assertEquals(Arrays.asList(500, 500, 200), remoto.envios);
+        assertEquals(0, pendentes());
+
+        // Nova sincronização sem alterações: nada é enviado
+        assertEquals(0, motor.sincronizar().enviados);
+
+        Despesa d = despesaDAO.listarPagina(null, 1).get(0);
+        d.setDescricao("Editada");
+        despesaDAO.atualizar(d);
+        despesaDAO.atualizar(d); // duas alterações ao mesmo registo: um só envio
+        remoto.envios.clear();
+        assertEquals(1, motor.sincronizar().enviados);
+        assertEquals("Editada", remoto.obter(DBHelper.TABLE_DESPESAS, uid(d.getId())).descricao);
+    }
+
+    @Test
+    public void aplicaAlteracoesRemotasSemAsVoltarAEnviar() throws IOException {
+        remoto.gravar(despesaRemota("abc", "Jantar", 2_500));
+        RegistoSync budget = new RegistoSync();
+        budget.tabela = DBHelper.TABLE_BUDGET;
+        budget.chave = String.valueOf(SEMANA);
+        budget.origem = "outro";
+        budget.valorCentimos = 10_000;
+        remoto.gravar(budget);
+
+        MotorSync.Resultado r = motor.sincronizar();
+        assertEquals(2, r.recebidos);
+        assertEquals(1, r.budgetsRecebidos);
+        assertEquals(0, r.enviados);
+        assertEquals(2_500, despesaDAO.getTotalSemana(INDICE_SEMANA));
+        assertEquals(10_000, budgetDAO.getBudgetPorSemana(INDICE_SEMANA));
+
+        // Eliminação remota: a despesa e o total semanal desaparecem
+        RegistoSync apagada = despesaRemota("abc", null, 0);
+        apagada.apagado = true;
+        remoto.gravar(apagada);
+        assertEquals(1, motor.sincronizar().recebidos);
+        assertEquals(0, despesaDAO.getTotalSemana(INDICE_SEMANA));
+        assertEquals(0, pendentes());
+    }
+
+    @Test
+    public void alteracaoLocalPendentePrevaleceSobreARemota() throws IOException {
+        long id = despesaDAO.inserir(new Despesa("Café", "Alimentação", 120, GeradorDespesas.FIM, "Nenhuma"));
+        motor.sincronizar();
+        String uid = uid((int) id);
+
+        remoto.gravar(despesaRemota(uid, "Remota", 999));
+        Despesa local = despesaDAO.obterPorId((int) id);
+        local.setDescricao("Local");
+        despesaDAO.atualizar(local);
+
+        motor.sincronizar();
+        assertEquals("Local", despesaDAO.obterPorId((int) id).getDescricao());
+        assertEquals("Local", remoto.obter(DBHelper.TABLE_DESPESAS, uid).descricao);
+    }
+
+    @Test
+    public void ignoraOsPropriosRegistosNaRececao() throws IOException {
+        List<Despesa> despesas = new ArrayList<>(new GeradorDespesas(2).gerar(10));
+        despesaDAO.inserirLote(despesas);
+        motor.sincronizar();
+
+        // Os registos enviados voltam na receção seguinte, mas não são aplicados
+        MotorSync.Resultado r = motor.sincronizar();
+        assertEquals(0, r.recebidos);
+        assertEquals(10, despesaDAO.listarTodas().size());
+        assertEquals(10, remoto.tamanho());
+    }
+
+    private RegistoSync despesaRemota(String uid, String descricao, long valor) {
+        RegistoSync r = new RegistoSync();
+        r.tabela = DBHelper.TABLE_DESPESAS;
+        r.chave = uid;
+        r.origem = "outro";
+        r.descricao = descricao;
+        r.categoria = "Alimentação";
+        r.valorCentimos = valor;
+        r.timestamp = GeradorDespesas.FIM;
+        r.recorrencia = "Nenhuma";
+        return r;
+    }
+
+    private String uid(int id) {
+        try (Cursor c = db.rawQuery("SELECT " + DBHelper.COLUMN_UID + " FROM " + DBHelper.TABLE_DESPESAS +
+                " WHERE " + DBHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)})) {
+            assertTrue(c.moveToFirst());
+            return c.getString(0);
+        }
+    }
+
+    private long pendentes() {
+        return DatabaseUtils.queryNumEntries(db, DBHelper.TABLE_CHANGE_LOG);
+    }
+}
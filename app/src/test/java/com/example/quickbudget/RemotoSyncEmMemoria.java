@@ -0,0 +1,62 @@
+package com.example.quickbudget;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * RemotoSyncEmMemoria
+ * --------------------
+ * {@link RemotoSync} em memória para os testes: guarda o último estado de cada documento
+ * e atribui versões crescentes a cada escrita, como o Firestore com serverTimestamp.
+ * Regista também o tamanho de cada envio.
+ */
+final class RemotoSyncEmMemoria implements RemotoSync {
+
+    private final TreeMap<MarcaSync, RegistoSync> porVersao = new TreeMap<>();
+    private final Map<String, MarcaSync> versaoDe = new HashMap<>();
+    private long relogio = 0;
+
+    final List<Integer> envios = new ArrayList<>();
+    int registosLidos = 0;
+
+    @Override
+    public synchronized void enviar(List<RegistoSync> registos) {
+        if (registos.size() > TAMANHO_LOTE) throw new IllegalArgumentException("Lote grande demais: " + registos.size());
+        envios.add(registos.size());
+        for (RegistoSync r : registos) gravar(r);
+    }
+
+    @Override
+    public synchronized List<RegistoSync> receber(MarcaSync depoisDe, int limite) {
+        List<RegistoSync> lista = new ArrayList<>();
+        for (RegistoSync r : (depoisDe == null ? porVersao : porVersao.tailMap(depoisDe, false)).values()) {
+            if (lista.size() == limite) break;
+            lista.add(r);
+        }
+        registosLidos += lista.size();
+        return lista;
+    }
+
+    // Grava um registo como se viesse de outro dispositivo
+    synchronized void gravar(RegistoSync r) {
+        String id = r.idDocumento();
+        MarcaSync anterior = versaoDe.remove(id);
+        if (anterior != null) porVersao.remove(anterior);
+
+        r.versao = new MarcaSync(++relogio, id);
+        versaoDe.put(id, r.versao);
+        porVersao.put(r.versao, r);
+    }
+
+    synchronized RegistoSync obter(String tabela, String chave) {
+        MarcaSync versao = versaoDe.get(tabela + ":" + chave);
+        return versao != null ? porVersao.get(versao) : null;
+    }
+
+    synchronized int tamanho() {
+        return porVersao.size();
+    }
+}